@@ -0,0 +1,177 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量创建文件、文件夹
+ * <p>
+ * 把所有路径按层级整理成一棵前缀树，共同的上级目录只解析（或创建）一次；
+ * 已存在的目录下需要解析多个子项时只做一次列表查询，新创建的目录下的子项直接创建，不再查询
+ */
+final class BatchCreator {
+    private static final String TAG = BatchCreator.class.getSimpleName();
+
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final DocumentCache documentCache;
+
+    private final Node root = new Node("");
+
+    BatchCreator(SAFUtil safUtil, Context context, DocumentCache documentCache) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.documentCache = documentCache;
+    }
+
+    /**
+     * 批量创建
+     *
+     * @param paths 文件或文件夹的完整路径，以/结尾的路径视为文件夹
+     * @return 路径 => DocumentFile对象，创建失败或不属于权限目录的路径不包含在内
+     */
+    Map<String, DocumentFile> create(Collection<String> paths) {
+        // 整理成前缀树
+        for (String path : paths) {
+            String relativePath = safUtil.getRelativePath(path);
+            if (relativePath == null) {
+                Log.e(TAG, "create: " + path + " not in permission directory");
+                continue;
+            }
+            insert(relativePath, !path.endsWith("/"), path);
+        }
+
+        Map<String, DocumentFile> result = new LinkedHashMap<>();
+        DocumentFile rootFile = safUtil.getDocumentFile();
+        if (rootFile == null) return result;
+
+        root.documentFile = rootFile;
+        resolveChildren(root, false);
+        collect(root, result);
+        return result;
+    }
+
+    /**
+     * 将相对路径插入前缀树
+     */
+    private void insert(String relativePath, boolean isFile, String originalPath) {
+        Node node = root;
+        if (!relativePath.isEmpty()) {
+            for (String name : relativePath.split("/")) {
+                if (name.isEmpty()) continue;
+                Node child = node.children.get(name);
+                if (child == null) {
+                    child = new Node(node.path.isEmpty() ? name : node.path + "/" + name);
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+        }
+        node.isFile = isFile;
+        node.originalPaths.add(originalPath);
+    }
+
+    /**
+     * 解析或创建某个目录下的所有子项，再逐层向下
+     *
+     * @param node    已解析的目录节点
+     * @param created 该目录是否是刚创建的，刚创建的目录是空的，子项无需查询直接创建
+     */
+    private void resolveChildren(Node node, boolean created) {
+        if (node.children.isEmpty()) return;
+
+        // 已存在的目录下有多个子项需要解析时，只做一次列表查询
+        // 列表查询失败时退回逐个解析
+        Map<String, Uri> existing = null;
+        if (!created && node.children.size() > 1) {
+            List<DocumentEntry> entries = safUtil.list(node.documentFile);
+            if (entries != null) {
+                existing = new HashMap<>();
+                for (DocumentEntry entry : entries) {
+                    existing.put(entry.getName(), entry.getUri());
+                }
+            }
+        }
+
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            String name = entry.getKey();
+            Node child = entry.getValue();
+            // 有子项的节点一定是文件夹
+            boolean isFile = child.isFile && child.children.isEmpty();
+            boolean childCreated = false;
+
+            Uri cachedUri = created ? null : documentCache.get(child.path);
+            if (cachedUri != null) {
+                child.documentFile = DocumentFile.fromTreeUri(context, cachedUri);
+            } else if (created) {
+                child.documentFile = createChild(node.documentFile, name, isFile);
+                childCreated = true;
+            } else if (existing != null) {
+                Uri uri = existing.get(name);
+                if (uri != null) {
+                    child.documentFile = DocumentFile.fromTreeUri(context, uri);
+                } else {
+                    child.documentFile = createChild(node.documentFile, name, isFile);
+                    childCreated = true;
+                }
+            } else {
+                child.documentFile = safUtil.resolveChild(node.documentFile, name, isFile);
+            }
+
+            if (child.documentFile == null) {
+                Log.e(TAG, "create: " + child.path + " failed");
+                continue;
+            }
+            documentCache.put(child.path, child.documentFile.getUri());
+            resolveChildren(child, childCreated);
+        }
+    }
+
+    /**
+     * 直接创建子文件或子文件夹
+     */
+    private DocumentFile createChild(DocumentFile parent, String name, boolean isFile) {
+        SAFMetrics metrics = safUtil.getMetrics();
+        if (metrics != null) metrics.onCreate();
+        return isFile ? parent.createFile("", name) : parent.createDirectory(name);
+    }
+
+    /**
+     * 收集结果
+     */
+    private void collect(Node node, Map<String, DocumentFile> result) {
+        if (node.documentFile != null) {
+            for (String originalPath : node.originalPaths) {
+                result.put(originalPath, node.documentFile);
+            }
+        }
+        for (Node child : node.children.values()) {
+            collect(child, result);
+        }
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node {
+        final String path;                                              // 相对于权限目录的路径
+        final Map<String, Node> children = new LinkedHashMap<>();       // 文件名 => 子节点
+        final List<String> originalPaths = new ArrayList<>(1);          // 传入的原始路径
+        boolean isFile;                                                 // 是否是文件
+        DocumentFile documentFile;                                      // 解析或创建得到的DocumentFile对象
+
+        Node(String path) {
+            this.path = path;
+        }
+    }
+}
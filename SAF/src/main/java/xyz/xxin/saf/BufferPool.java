@@ -0,0 +1,63 @@
+package xyz.xxin.saf;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 可复用的字节缓冲区池，多线程共享
+ * <p>
+ * 复制文件时从池中借出缓冲区，用完归还，避免每次复制都重新分配缓冲区；
+ * 池中没有空闲缓冲区时临时分配一个，归还时池已满则直接丢弃
+ */
+public final class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;    // 默认缓冲区大小 64KiB
+    public static final int DEFAULT_MAX_POOLED = 8;             // 默认最多保留的空闲缓冲区数量
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+    private final int bufferSize;                       // 缓冲区大小
+    private final ArrayBlockingQueue<byte[]> buffers;   // 空闲缓冲区，存取都不会产生新对象
+
+    /**
+     * @param bufferSize 缓冲区大小，单位字节
+     * @param maxPooled  最多保留的空闲缓冲区数量
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+        if (maxPooled <= 0) throw new IllegalArgumentException("maxPooled must be positive");
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * 默认缓冲区池，所有SAFUtil对象默认共用
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 缓冲区大小
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 借出一个缓冲区，用完后必须调用release归还
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * 归还缓冲区，大小不符的缓冲区不会放入池中
+     *
+     * @param buffer 借出的缓冲区
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 增量扫描目录的变化
+ * <p>
+ * 每次扫描后在内存中保留一份精简的快照（每个文件只记录document id、大小、修改时间），
+ * 下次扫描时与快照对比，只返回新增、删除、修改的文件。首次扫描时所有文件都视为新增
+ * <p>
+ * 默认启用跳过未变化目录：目录的修改时间与快照相同时，不再列出该目录，直接沿用快照中的子项，只对其子目录做单行查询。
+ * 目录的修改时间只在其直接子项新增、删除、重命名时变化，原地修改文件内容不会改变目录的修改时间，
+ * 因此启用时无法发现未变化目录下的文件修改；需要发现所有修改时请调用setSkipUnchangedDirs(false)
+ */
+public final class ChangeScanner {
+    private static final String TAG = ChangeScanner.class.getSimpleName();
+
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final String dirPath;           // 扫描的目录
+
+    private boolean skipUnchangedDirs = true;   // 是否跳过修改时间未变化的目录
+    private Uri treeUri;                        // 构建子文件Uri地址时使用
+    private Dir snapshot;                       // 上一次扫描的快照，尚未扫描时为null
+
+    ChangeScanner(SAFUtil safUtil, Context context, String dirPath) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.dirPath = dirPath;
+    }
+
+    /**
+     * 设置是否跳过修改时间未变化的目录（默认启用）
+     */
+    public synchronized void setSkipUnchangedDirs(boolean skipUnchangedDirs) {
+        this.skipUnchangedDirs = skipUnchangedDirs;
+    }
+
+    /**
+     * 丢弃快照，下次扫描时所有文件都视为新增
+     */
+    public synchronized void reset() {
+        snapshot = null;
+    }
+
+    /**
+     * 扫描目录，与上一次扫描的快照对比，快照在扫描成功后才会更新
+     *
+     * @return 与上一次扫描相比的变化，扫描目录不存在或无法列出时返回null，此时快照保持不变；
+     * 列出中途失败的目录只返回已读出部分的变化，其余部分留到下次扫描
+     */
+    public synchronized ChangeSet scan() {
+        long start = safUtil.startTiming();
+        try {
+            // 只查询已存在的目录，不存在时不能创建空目录，否则快照中的所有文件都会被误报为删除
+            DocumentEntry dirEntry = safUtil.queryExisting(dirPath);
+            if (dirEntry == null || !dirEntry.isDirectory()) {
+                Log.e(TAG, "scan: " + dirPath + " not exists or not a directory");
+                return null;
+            }
+            treeUri = dirEntry.getUri();
+
+            ChangeSet changes = new ChangeSet();
+            // 查询目录时已经得到修改时间，无需再次查询
+            Dir dir = scanDir(treeUri, "", snapshot, dirEntry.lastModified(), changes);
+            if (dir == null) return null;
+            snapshot = dir;
+            return changes;
+        } finally {
+            safUtil.endTiming("scan", start);
+        }
+    }
+
+    /**
+     * 扫描单个目录
+     *
+     * @param uri          目录的Uri地址
+     * @param path         目录相对于扫描目录的路径
+     * @param old          该目录的快照，新目录为null
+     * @param lastModified 列出上级目录时得到的修改时间，未知时为-1
+     * @param changes      变化
+     * @return 该目录的新快照，无法列出时返回null；中途失败时返回已读出的部分，并标记为下次重新列出
+     */
+    private Dir scanDir(Uri uri, String path, Dir old, long lastModified, ChangeSet changes) {
+        // 修改时间要在列出目录之前读取，列出期间发生的变化留到下次扫描
+        if (skipUnchangedDirs && lastModified < 0) lastModified = queryLastModified(uri);
+
+        if (skipUnchangedDirs && old != null && old.lastModified > 0 && old.lastModified == lastModified) {
+            // 直接子项没有变化，沿用快照，只检查子目录
+            Dir dir = new Dir(old.lastModified);
+            for (Map.Entry<String, Item> entry : old.children.entrySet()) {
+                Item oldItem = entry.getValue();
+                Item item = new Item(oldItem.documentId, oldItem.size, oldItem.lastModified);
+                if (oldItem.dir != null) {
+                    item.dir = scanDir(buildUri(oldItem.documentId), childPath(path, entry.getKey()), oldItem.dir, -1, changes);
+                    if (item.dir == null) item.dir = oldItem.dir;
+                }
+                dir.children.put(entry.getKey(), item);
+            }
+            return dir;
+        }
+
+        DocumentIterator iterator = safUtil.iterate(DocumentFile.fromTreeUri(context, uri));
+        if (iterator == null) {
+            Log.e(TAG, "scan: list " + childPath(dirPath, path) + " failed");
+            return null;
+        }
+
+        Dir dir = new Dir(lastModified);
+        boolean interrupted = false;
+        try {
+            while (iterator.hasNext()) {
+                DocumentEntry entry = iterator.next();
+                String name = entry.getName();
+                if (name == null) continue;
+                String childPath = childPath(path, name);
+                Item oldItem = old == null ? null : old.children.get(name);
+
+                // 同名但id或类型不同，视为先删除再新增
+                if (oldItem != null && (!oldItem.documentId.equals(entry.getDocumentId())
+                        || (oldItem.dir != null) != entry.isDirectory())) {
+                    removed(childPath, oldItem, changes);
+                    oldItem = null;
+                }
+
+                Item item = new Item(entry.getDocumentId(), entry.length(), entry.lastModified());
+                if (oldItem == null) {
+                    changes.onAdded(toChange(childPath, entry.getUri(), item, entry.isDirectory()));
+                } else if (!entry.isDirectory() && (oldItem.size != item.size || oldItem.lastModified != item.lastModified)) {
+                    changes.onModified(toChange(childPath, entry.getUri(), item, false));
+                }
+
+                if (entry.isDirectory()) {
+                    Dir oldDir = oldItem == null ? null : oldItem.dir;
+                    item.dir = scanDir(entry.getUri(), childPath, oldDir, entry.lastModified(), changes);
+                    // 子目录无法列出时保留原快照，新目录则记为空目录，下次扫描时重新列出
+                    if (item.dir == null) item.dir = oldDir != null ? oldDir : new Dir(0);
+                }
+                dir.children.put(name, item);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "scan: list " + childPath(dirPath, path) + " interrupted", e);
+            interrupted = true;
+        } finally {
+            iterator.close();
+        }
+
+        if (interrupted) {
+            // 已读出的子项及其变化已经记录，必须写入快照，否则下次扫描会再次视为新增；
+            // 未读到的子项无法判断是否已删除，沿用原快照；修改时间记为未知，下次扫描时重新列出
+            Dir partial = new Dir(0);
+            if (old != null) partial.children.putAll(old.children);
+            partial.children.putAll(dir.children);
+            return partial;
+        }
+
+        // 快照中有而本次没有列出的就是已删除的
+        if (old != null) {
+            for (Map.Entry<String, Item> entry : old.children.entrySet()) {
+                if (dir.children.containsKey(entry.getKey())) continue;
+                removed(childPath(path, entry.getKey()), entry.getValue(), changes);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * 记录删除，已删除的目录下的所有子项也一并记录
+     */
+    private void removed(String path, Item item, ChangeSet changes) {
+        changes.onRemoved(toChange(path, buildUri(item.documentId), item, item.dir != null));
+        if (item.dir == null) return;
+        for (Map.Entry<String, Item> entry : item.dir.children.entrySet()) {
+            removed(childPath(path, entry.getKey()), entry.getValue(), changes);
+        }
+    }
+
+    /**
+     * 单行查询目录的修改时间
+     *
+     * @return 查询失败时返回0
+     */
+    private long queryLastModified(Uri uri) {
+        SAFMetrics metrics = safUtil.getMetrics();
+        if (metrics != null) metrics.onQuery(1);
+        DocumentEntry entry = DocumentQuery.query(context.getContentResolver(), uri);
+        return entry == null ? 0 : entry.lastModified();
+    }
+
+    private Uri buildUri(String documentId) {
+        return DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+    }
+
+    private static ChangeSet.Change toChange(String path, Uri uri, Item item, boolean directory) {
+        return new ChangeSet.Change(path, uri, item.documentId, directory, item.size, item.lastModified);
+    }
+
+    private static String childPath(String parentPath, String name) {
+        return parentPath.isEmpty() ? name : parentPath + "/" + name;
+    }
+
+    /**
+     * 目录的快照
+     */
+    private static final class Dir {
+        final long lastModified;                                // 列出该目录前读取的修改时间，未知时小于等于0
+        final Map<String, Item> children = new HashMap<>();     // 文件名 => 子项
+
+        Dir(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * 文件或目录的快照
+     */
+    private static final class Item {
+        final String documentId;    // 文档id
+        final long size;            // 文件大小
+        final long lastModified;    // 最后修改时间
+        Dir dir;                    // 是目录时不为null
+
+        Item(String documentId, long size, long lastModified) {
+            this.documentId = documentId;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
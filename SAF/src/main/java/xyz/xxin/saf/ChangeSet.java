@@ -0,0 +1,125 @@
+package xyz.xxin.saf;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 两次扫描之间目录的变化
+ * <p>
+ * 新增或删除的目录，其下的所有子文件、子目录也会逐一列出，父目录在前
+ */
+public final class ChangeSet {
+    private final List<Change> added = new ArrayList<>();
+    private final List<Change> removed = new ArrayList<>();
+    private final List<Change> modified = new ArrayList<>();
+
+    ChangeSet() {
+    }
+
+    void onAdded(Change change) {
+        added.add(change);
+    }
+
+    void onRemoved(Change change) {
+        removed.add(change);
+    }
+
+    void onModified(Change change) {
+        modified.add(change);
+    }
+
+    /**
+     * 新增的文件和目录
+     */
+    public List<Change> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * 删除的文件和目录
+     */
+    public List<Change> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * 大小或修改时间发生变化的文件
+     */
+    public List<Change> getModified() {
+        return Collections.unmodifiableList(modified);
+    }
+
+    /**
+     * 是否没有任何变化
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "added=" + added.size() +
+                ", removed=" + removed.size() +
+                ", modified=" + modified.size() +
+                '}';
+    }
+
+    /**
+     * 单个文件或目录的变化
+     */
+    public static final class Change {
+        private final String path;          // 相对于扫描目录的路径
+        private final Uri uri;              // 文档的Uri地址，已删除的文档不可再读写
+        private final String documentId;    // 文档id
+        private final boolean directory;    // 是否是目录
+        private final long size;            // 文件大小，删除时为删除前记录的大小
+        private final long lastModified;    // 最后修改时间，删除时为删除前记录的时间
+
+        Change(String path, Uri uri, String documentId, boolean directory, long size, long lastModified) {
+            this.path = path;
+            this.uri = uri;
+            this.documentId = documentId;
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Uri getUri() {
+            return uri;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long length() {
+            return size;
+        }
+
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return "Change{" +
+                    "path='" + path + '\'' +
+                    ", directory=" + directory +
+                    ", size=" + size +
+                    ", lastModified=" + lastModified +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package xyz.xxin.saf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大文件的分块并行复制
+ * <p>
+ * 先把目标文件调整为源文件的大小，再把文件分成固定大小的块，多个线程各自领取块，
+ * 通过FileChannel按位置读取、按位置写入，互不影响文件指针；复制完成后检查各线程实际写入的字节数
+ */
+final class ChunkedCopy {
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;     // 默认块大小 4MiB
+
+    private final FileChannel inChannel;
+    private final FileChannel outChannel;
+    private final long size;                // 源文件大小
+    private final int chunkSize;            // 块大小
+    private final BufferPool bufferPool;    // 读写时使用的缓冲区池
+
+    private final AtomicLong nextChunk = new AtomicLong();          // 下一个待领取的块
+    private final AtomicBoolean failed = new AtomicBoolean();       // 任意线程失败后其他线程停止领取
+    private final AtomicLong written = new AtomicLong();            // 所有线程实际写入的字节数
+
+    ChunkedCopy(FileChannel inChannel, FileChannel outChannel, int chunkSize, BufferPool bufferPool) throws IOException {
+        this.inChannel = inChannel;
+        this.outChannel = outChannel;
+        this.size = inChannel.size();
+        this.chunkSize = Math.max(chunkSize, bufferPool.getBufferSize());
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 执行复制，不负责关闭两端的FileChannel
+     *
+     * @param threads 并行的线程数
+     * @return 复制的字节数
+     */
+    long run(int threads) throws IOException {
+        // 调整目标文件的大小：截掉多余的部分，写入最后一个字节以预先扩展
+        outChannel.truncate(size);
+        if (size == 0) return 0;
+        outChannel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+
+        long chunks = (size + chunkSize - 1) / chunkSize;
+        int workers = (int) Math.max(1, Math.min(threads, chunks));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try {
+                            copyChunks();
+                            return null;
+                        } catch (Exception e) {
+                            // 包括撤销权限等导致的运行时异常，任意失败都让其他线程停止领取
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    throw new IOException(cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("chunked copy interrupted", e);
+        } finally {
+            // 不中断正在读写的线程，中断会导致FileChannel被关闭
+            executor.shutdown();
+        }
+
+        // 预先扩展已使目标文件达到源文件大小，只能通过实际写入的字节数判断是否有块缺失
+        if (written.get() != size) throw new IOException("chunked copy size mismatch: " + written.get() + "/" + size);
+        return size;
+    }
+
+    /**
+     * 循环领取块并复制，直到所有块都被领取
+     */
+    private void copyChunks() throws IOException {
+        byte[] array = bufferPool.acquire();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(array);
+            long chunk;
+            while (!failed.get() && (chunk = nextChunk.getAndIncrement()) * chunkSize < size) {
+                long position = chunk * chunkSize;
+                long end = Math.min(position + chunkSize, size);
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int count = inChannel.read(buffer, position);
+                    if (count < 0) throw new IOException("unexpected end of source at " + position + "/" + size);
+                    buffer.flip();
+                    long writePosition = position;
+                    while (buffer.hasRemaining()) {
+                        writePosition += outChannel.write(buffer, writePosition);
+                    }
+                    written.addAndGet(count);
+                    position += count;
+                }
+            }
+        } finally {
+            bufferPool.release(array);
+        }
+    }
+}
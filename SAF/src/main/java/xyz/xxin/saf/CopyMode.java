@@ -0,0 +1,23 @@
+package xyz.xxin.saf;
+
+/**
+ * 复制文件时实际使用的复制方式
+ */
+public enum CopyMode {
+    /**
+     * 两端都是普通文件，通过FileChannel由内核直接传输
+     */
+    CHANNEL,
+    /**
+     * 两端都是普通文件且文件足够大，分块后由多个线程按位置并行读写
+     */
+    CHUNKED,
+    /**
+     * 两端都是普通文件，按位置顺序复制并定期保存检查点，中断后可以从检查点继续
+     */
+    RESUMABLE,
+    /**
+     * 至少一端是管道等不可随机访问的文档，通过缓冲区逐块复制
+     */
+    STREAM
+}
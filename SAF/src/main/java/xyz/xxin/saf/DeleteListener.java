@@ -0,0 +1,20 @@
+package xyz.xxin.saf;
+
+/**
+ * 目录删除的进度回调
+ * <p>
+ * 在执行删除的工作线程中回调，多个线程的回调不会同时进行，但回调中不要执行耗时操作，也不要直接更新UI
+ */
+public interface DeleteListener {
+    /**
+     * 每删除一项（文件、整个子目录或已清空的目录，无论成功还是失败）后回调
+     *
+     * @param path         刚删除的项相对于操作目录的路径
+     * @param error        失败原因，成功时为null
+     * @param deletedFiles 已删除的文件数
+     * @param totalFiles   需要删除的文件总数
+     * @param deletedBytes 已删除的字节数
+     * @param totalBytes   需要删除的总字节数
+     */
+    void onProgress(String path, Exception error, int deletedFiles, int totalFiles, long deletedBytes, long totalBytes);
+}
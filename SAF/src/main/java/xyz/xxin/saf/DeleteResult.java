@@ -0,0 +1,104 @@
+package xyz.xxin.saf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 目录删除的结果，部分失败时记录每一项失败的原因
+ */
+public final class DeleteResult {
+    private final int deletedFiles;         // 已删除的文件数
+    private final int totalFiles;           // 需要删除的文件总数
+    private final long deletedBytes;        // 已删除的字节数
+    private final long totalBytes;          // 需要删除的总字节数
+    private final List<Failure> failed;     // 删除失败的项
+    private final boolean cancelled;        // 是否被取消
+
+    DeleteResult(int deletedFiles, int totalFiles, long deletedBytes, long totalBytes, List<Failure> failed, boolean cancelled) {
+        this.deletedFiles = deletedFiles;
+        this.totalFiles = totalFiles;
+        this.deletedBytes = deletedBytes;
+        this.totalBytes = totalBytes;
+        this.failed = Collections.unmodifiableList(new ArrayList<>(failed));
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * 已删除的文件数，一次删除整个目录（未遍历目录）时为0
+     */
+    public int getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    /**
+     * 需要删除的文件总数，一次删除整个目录（未遍历目录）时为0
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * 已删除的字节数，一次删除整个目录（未遍历目录）时为0
+     */
+    public long getDeletedBytes() {
+        return deletedBytes;
+    }
+
+    /**
+     * 需要删除的总字节数，一次删除整个目录（未遍历目录）时为0
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 删除失败的项，包括无法列出的目录
+     */
+    public List<Failure> getFailed() {
+        return failed;
+    }
+
+    /**
+     * 是否被取消
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 是否全部成功
+     */
+    public boolean isSuccess() {
+        return !cancelled && failed.isEmpty();
+    }
+
+    /**
+     * 删除失败的一项
+     */
+    public static final class Failure {
+        private final String path;          // 相对于操作目录的路径
+        private final Exception error;      // 失败原因
+
+        Failure(String path, Exception error) {
+            this.path = path;
+            this.error = error;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "path='" + path + '\'' +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+}
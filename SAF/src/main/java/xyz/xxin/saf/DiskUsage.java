@@ -0,0 +1,101 @@
+package xyz.xxin.saf;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 目录的占用空间统计，包括其下所有层级的文件
+ */
+public final class DiskUsage {
+    private final String path;              // 相对于统计目录的路径，统计目录本身为空字符串
+    private final String name;              // 目录名
+    private final String documentId;        // 文档id
+    private final long size;                // 所有文件的大小之和
+    private final int fileCount;            // 文件数
+    private final int dirCount;             // 子目录数（不包括自身）
+    private final boolean complete;         // 所有子目录是否都成功列出
+    private final List<DiskUsage> children; // 直接子目录的统计
+
+    DiskUsage(String path, String name, String documentId, long size, int fileCount, int dirCount,
+              boolean complete, List<DiskUsage> children) {
+        this.path = path;
+        this.name = name;
+        this.documentId = documentId;
+        this.size = size;
+        this.fileCount = fileCount;
+        this.dirCount = dirCount;
+        this.complete = complete;
+        this.children = children;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * 目录下所有层级的文件大小之和，单位字节
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 目录下所有层级的文件数
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * 目录下所有层级的子目录数，不包括自身
+     */
+    public int getDirCount() {
+        return dirCount;
+    }
+
+    /**
+     * 是否所有子目录都成功列出，为false时统计结果偏小
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * 直接子目录的统计
+     */
+    public List<DiskUsage> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * 获取直接子目录的统计
+     *
+     * @param name 子目录名
+     * @return 不存在时返回null
+     */
+    public DiskUsage getChild(String name) {
+        for (DiskUsage child : children) {
+            if (child.name.equals(name)) return child;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "DiskUsage{" +
+                "path='" + path + '\'' +
+                ", size=" + size +
+                ", fileCount=" + fileCount +
+                ", dirCount=" + dirCount +
+                ", complete=" + complete +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+package xyz.xxin.saf;
+
+import android.net.Uri;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 路径到DocumentFile Uri地址的LRU缓存
+ * <p>
+ * 每个权限目录（tree）共用一个缓存实例，键为权限目录下的相对路径（头尾不带斜杠，如：test/1.txt），
+ * 值为该路径解析得到的document Uri地址，命中缓存时无需再次逐级遍历目录
+ */
+final class DocumentCache {
+    private static final int DEFAULT_CAPACITY = 512;    // 默认缓存容量
+
+    private static final Map<String, DocumentCache> CACHES = new HashMap<>();   // 权限目录uri地址 => 缓存
+
+    private final LinkedHashMap<String, Uri> entries;   // 按访问顺序排列，最久未访问的在最前面
+    private int capacity;                               // 缓存容量
+
+    /**
+     * 获取权限目录对应的缓存，同一个权限目录的多个SAFUtil对象共用一个缓存
+     *
+     * @param treeUriStr 权限目录的uri地址
+     */
+    static DocumentCache forTree(String treeUriStr) {
+        synchronized (CACHES) {
+            DocumentCache cache = CACHES.get(treeUriStr);
+            if (cache == null) {
+                cache = new DocumentCache(DEFAULT_CAPACITY);
+                CACHES.put(treeUriStr, cache);
+            }
+            return cache;
+        }
+    }
+
+    private DocumentCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Uri>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Uri> eldest) {
+                return size() > DocumentCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的Uri地址，未命中时返回null
+     *
+     * @param relativePath 相对路径
+     */
+    synchronized Uri get(String relativePath) {
+        return entries.get(relativePath);
+    }
+
+    /**
+     * 缓存相对路径对应的Uri地址
+     *
+     * @param relativePath 相对路径
+     * @param uri          document Uri地址
+     */
+    synchronized void put(String relativePath, Uri uri) {
+        if (relativePath == null || uri == null) return;
+        entries.put(relativePath, uri);
+    }
+
+    /**
+     * 移除某路径及其所有子路径的缓存，删除、重命名文件夹时其子路径全部失效
+     *
+     * @param relativePath 相对路径
+     */
+    synchronized void remove(String relativePath) {
+        if (relativePath == null) return;
+        // 权限目录本身失效时，所有路径都失效
+        if (relativePath.isEmpty()) {
+            entries.clear();
+            return;
+        }
+        entries.remove(relativePath);
+
+        String prefix = relativePath + "/";
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) iterator.remove();
+        }
+    }
+
+    /**
+     * 修改缓存容量，超出部分按最久未访问的顺序移除
+     *
+     * @param capacity 缓存容量
+     */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (entries.size() > this.capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,128 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.documentfile.provider.DocumentFile;
+
+/**
+ * 目录列表中的一项，所有属性都在列出目录时由同一个游标一次性读出，之后读取属性不会再产生任何查询
+ * <p>
+ * 该对象不可变，属性反映的是列出目录时的状态
+ */
+public final class DocumentEntry {
+    // 列出目录时只查询以下几列，顺序与下方的列索引对应
+    static final String[] PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+            DocumentsContract.Document.COLUMN_FLAGS
+    };
+    static final int COLUMN_ID = 0;
+    static final int COLUMN_NAME = 1;
+    static final int COLUMN_MIME = 2;
+    static final int COLUMN_SIZE = 3;
+    static final int COLUMN_MODIFIED = 4;
+    static final int COLUMN_FLAGS = 5;
+
+    private final Uri uri;              // 文档的Uri地址，可直接用于读写
+    private final String documentId;    // 文档id
+    private final String name;          // 文件名
+    private final String mimeType;      // 文件类型，目录为DocumentsContract.Document.MIME_TYPE_DIR
+    private final long size;            // 文件大小，未知时为0
+    private final long lastModified;    // 最后修改时间，未知时为0
+    private final int flags;            // DocumentsContract.Document.FLAG_*
+
+    DocumentEntry(Uri uri, String documentId, String name, String mimeType, long size, long lastModified, int flags) {
+        this.uri = uri;
+        this.documentId = documentId;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.flags = flags;
+    }
+
+    /**
+     * 从以PROJECTION查询的游标的当前行读取
+     *
+     * @param treeUri 所属的tree Uri地址，用于构建文档的Uri地址
+     * @param cursor  游标
+     */
+    static DocumentEntry fromCursor(Uri treeUri, Cursor cursor) {
+        String documentId = cursor.getString(COLUMN_ID);
+        return new DocumentEntry(
+                DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId),
+                documentId,
+                cursor.getString(COLUMN_NAME),
+                cursor.getString(COLUMN_MIME),
+                cursor.isNull(COLUMN_SIZE) ? 0 : cursor.getLong(COLUMN_SIZE),
+                cursor.isNull(COLUMN_MODIFIED) ? 0 : cursor.getLong(COLUMN_MODIFIED),
+                cursor.isNull(COLUMN_FLAGS) ? 0 : cursor.getInt(COLUMN_FLAGS));
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long length() {
+        return size;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * 是否是目录
+     */
+    public boolean isDirectory() {
+        return DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+    }
+
+    /**
+     * 是否是文件
+     */
+    public boolean isFile() {
+        return mimeType != null && !isDirectory();
+    }
+
+    /**
+     * 转换为DocumentFile对象，需要对文件进行读写、创建子文件等操作时使用
+     *
+     * @param context 上下文
+     */
+    public DocumentFile toDocumentFile(Context context) {
+        return DocumentFile.fromTreeUri(context, uri);
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentEntry{" +
+                "name='" + name + '\'' +
+                ", mimeType='" + mimeType + '\'' +
+                ", size=" + size +
+                ", lastModified=" + lastModified +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package xyz.xxin.saf;
+
+/**
+ * 按列出目录时得到的属性筛选文件和目录，判断时不会产生任何查询
+ */
+public interface DocumentFilter {
+    /**
+     * @param path  相对于操作目录的路径（头尾不带斜杠，如：a/1.txt）
+     * @param entry 列出目录时得到的属性
+     * @return 是否选中
+     */
+    boolean accept(String path, DocumentEntry entry);
+}
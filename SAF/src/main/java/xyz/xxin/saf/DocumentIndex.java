@@ -0,0 +1,146 @@
+package xyz.xxin.saf;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.util.Map;
+
+/**
+ * 持久化的路径索引，保存在应用私有目录的SQLite数据库中
+ * <p>
+ * 记录权限目录下的相对路径到document id的映射，应用重启后内存缓存为空时，
+ * 可以直接从索引中取出document id，只需一次单行查询确认文档仍然存在，无需逐级遍历。
+ * 索引可能过时，使用前必须向提供者确认，确认失败的记录会被删除
+ */
+final class DocumentIndex extends SQLiteOpenHelper {
+    private static final String TAG = DocumentIndex.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "saf_document_index.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE = "documents";
+    private static final String COLUMN_TREE = "tree";               // 权限目录的uri地址
+    private static final String COLUMN_PATH = "path";               // 权限目录下的相对路径
+    private static final String COLUMN_DOCUMENT_ID = "document_id"; // 文档id
+    private static final String COLUMN_DIRECTORY = "directory";     // 是否是目录，1为目录
+
+    private static volatile DocumentIndex instance;
+
+    static DocumentIndex getInstance(Context context) {
+        if (instance == null) {
+            synchronized (DocumentIndex.class) {
+                if (instance == null) {
+                    instance = new DocumentIndex(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DocumentIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // 读取与写入互不阻塞，且每次提交无需等待同步到磁盘
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_TREE + " TEXT NOT NULL, "
+                + COLUMN_PATH + " TEXT NOT NULL, "
+                + COLUMN_DOCUMENT_ID + " TEXT NOT NULL, "
+                + COLUMN_DIRECTORY + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_TREE + ", " + COLUMN_PATH + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 索引可以随时重建，直接丢弃旧数据
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * 查找相对路径对应的document id
+     *
+     * @param tree      权限目录的uri地址
+     * @param path      相对路径
+     * @param directory 是否是目录，类型不符的记录视为不存在
+     * @return 未记录或读取失败时返回null
+     */
+    String get(String tree, String path, boolean directory) {
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE, new String[]{COLUMN_DOCUMENT_ID, COLUMN_DIRECTORY},
+                    COLUMN_TREE + " = ? AND " + COLUMN_PATH + " = ?", new String[]{tree, path},
+                    null, null, null);
+            if (cursor.moveToFirst() && (cursor.getInt(1) == 1) == directory) return cursor.getString(0);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "get: " + e.getMessage());
+        } finally {
+            DocumentQuery.closeQuietly(cursor);
+        }
+        return null;
+    }
+
+    /**
+     * 在一个事务中记录逐级解析得到的每一级
+     *
+     * @param tree   权限目录的uri地址
+     * @param levels 相对路径 => document Uri地址，除最后一级外都是目录
+     * @param isFile 最后一级是否是文件
+     */
+    void put(String tree, Map<String, Uri> levels, boolean isFile) {
+        if (levels.isEmpty()) return;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues(4);
+                int remaining = levels.size();
+                for (Map.Entry<String, Uri> level : levels.entrySet()) {
+                    boolean directory = --remaining > 0 || !isFile;
+                    values.put(COLUMN_TREE, tree);
+                    values.put(COLUMN_PATH, level.getKey());
+                    values.put(COLUMN_DOCUMENT_ID, DocumentsContract.getDocumentId(level.getValue()));
+                    values.put(COLUMN_DIRECTORY, directory ? 1 : 0);
+                    db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException | IllegalArgumentException e) {
+            Log.e(TAG, "put: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除相对路径及其所有子路径的记录
+     *
+     * @param tree 权限目录的uri地址
+     * @param path 相对路径，为空时删除整个权限目录的记录
+     */
+    void remove(String tree, String path) {
+        try {
+            if (path == null || path.isEmpty()) {
+                getWritableDatabase().delete(TABLE, COLUMN_TREE + " = ?", new String[]{tree});
+                return;
+            }
+            // 不用LIKE，避免路径中的%和_被当作通配符
+            String prefix = path + "/";
+            getWritableDatabase().delete(TABLE,
+                    COLUMN_TREE + " = ? AND (" + COLUMN_PATH + " = ? OR substr(" + COLUMN_PATH + ", 1, ?) = ?)",
+                    new String[]{tree, path, String.valueOf(prefix.length()), prefix});
+        } catch (SQLiteException e) {
+            Log.e(TAG, "remove: " + e.getMessage());
+        }
+    }
+}
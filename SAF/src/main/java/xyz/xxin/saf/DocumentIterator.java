@@ -0,0 +1,62 @@
+package xyz.xxin.saf;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐行读取目录子文件列表的迭代器
+ * <p>
+ * 每次调用next()时才从游标中读取一行，不会一次性把整个目录读入内存，适合子文件数量巨大的目录。
+ * 读完最后一行时会自动关闭游标；提前结束遍历时必须调用close()，建议配合try-with-resources使用
+ */
+public final class DocumentIterator implements Iterator<DocumentEntry>, Closeable {
+    private final Cursor cursor;        // 子文件列表游标
+    private final Uri treeUri;          // 构建子文件Uri地址时使用的tree Uri地址
+
+    private DocumentEntry next;         // 已经读出但还未返回的一行
+    private boolean closed;             // 游标是否已关闭
+
+    DocumentIterator(Cursor cursor, Uri treeUri) {
+        this.cursor = cursor;
+        this.treeUri = treeUri;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (closed) return false;
+
+        try {
+            if (cursor.moveToNext()) {
+                next = DocumentEntry.fromCursor(treeUri, cursor);
+                return true;
+            }
+        } catch (RuntimeException e) {
+            // 遍历途中游标失效（如提供者进程被杀），关闭游标后再抛出
+            close();
+            throw e;
+        }
+        // 已读完，自动关闭
+        close();
+        return false;
+    }
+
+    @Override
+    public DocumentEntry next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        DocumentEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        DocumentQuery.closeQuietly(cursor);
+    }
+}
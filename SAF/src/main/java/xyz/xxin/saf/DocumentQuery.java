@@ -0,0 +1,117 @@
+package xyz.xxin.saf;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+
+/**
+ * 直接通过DocumentsContract查询文档的工具方法
+ * <p>
+ * externalstorage提供者的document id是可以推算的（如：primary:Android/data），
+ * 因此子文件的Uri地址可以直接拼出来，只需一次单行查询即可确认是否存在，无需listFiles()遍历所有兄弟节点
+ */
+final class DocumentQuery {
+    static final String EXTERNAL_STORAGE_AUTHORITY = "com.android.externalstorage.documents";
+
+    // 判断文档是否存在时只查询id一列
+    private static final String[] EXISTS_PROJECTION = {DocumentsContract.Document.COLUMN_DOCUMENT_ID};
+
+    private DocumentQuery() {
+    }
+
+    /**
+     * 推算目录下某个子文件的document Uri地址，仅支持externalstorage提供者
+     *
+     * @param parentUri 父目录的document Uri地址（需由tree Uri构建）
+     * @param name      子文件名
+     * @return 不支持推算时返回null
+     */
+    static Uri buildChildUri(Uri parentUri, String name) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        if (!EXTERNAL_STORAGE_AUTHORITY.equals(parentUri.getAuthority())) return null;
+
+        String parentId;
+        try {
+            parentId = DocumentsContract.getDocumentId(parentUri);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (parentId == null) return null;
+
+        // 储存器根目录的id以冒号结尾，如：primary:
+        // 例1：primary:             + test => primary:test
+        // 例2：primary:Android/data + test => primary:Android/data/test
+        String childId = parentId.endsWith(":") ? parentId + name : parentId + "/" + name;
+        return DocumentsContract.buildDocumentUriUsingTree(parentUri, childId);
+    }
+
+    /**
+     * 构建目录的子文件列表Uri地址
+     *
+     * @param dirUri 目录的document Uri地址（需由tree Uri构建）
+     * @return 系统版本过低或不是document Uri地址时返回null
+     */
+    static Uri buildChildrenUri(Uri dirUri) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        try {
+            return DocumentsContract.buildChildDocumentsUriUsingTree(dirUri, DocumentsContract.getDocumentId(dirUri));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 通过单行查询判断文档是否存在
+     *
+     * @param contentResolver ContentResolver
+     * @param documentUri     文档的Uri地址
+     */
+    static boolean exists(ContentResolver contentResolver, Uri documentUri) {
+        Cursor cursor = null;
+        try {
+            cursor = contentResolver.query(documentUri, EXISTS_PROJECTION, null, null, null);
+            return cursor != null && cursor.moveToFirst();
+        } catch (Exception e) {
+            // 文档不存在时，部分提供者会直接抛出异常
+            return false;
+        } finally {
+            closeQuietly(cursor);
+        }
+    }
+
+    /**
+     * 通过单行查询读取文档的id、文件名、类型、大小、修改时间、flags
+     *
+     * @param contentResolver ContentResolver
+     * @param documentUri     文档的Uri地址（需由tree Uri构建）
+     * @return 文档不存在或查询失败时返回null
+     */
+    static DocumentEntry query(ContentResolver contentResolver, Uri documentUri) {
+        Cursor cursor = null;
+        try {
+            cursor = contentResolver.query(documentUri, DocumentEntry.PROJECTION, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) return DocumentEntry.fromCursor(documentUri, cursor);
+        } catch (Exception e) {
+            // 文档不存在时，部分提供者会直接抛出异常
+        } finally {
+            closeQuietly(cursor);
+        }
+        return null;
+    }
+
+    /**
+     * 关闭游标，忽略异常
+     *
+     * @param cursor 游标
+     */
+    static void closeQuietly(Cursor cursor) {
+        if (cursor != null) {
+            try {
+                cursor.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+}
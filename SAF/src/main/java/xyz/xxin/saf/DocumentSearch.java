@@ -0,0 +1,156 @@
+package xyz.xxin.saf;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 搜索结果迭代器
+ * <p>
+ * 每次调用hasNext()时才继续读取游标、按需列出下一个目录，不会一次性读出整个目录树。
+ * 读取每一行时先只读文件名和类型，按通配符和文件类型判断，再读大小和修改时间，全部符合才创建DocumentEntry；
+ * 子目录只记录document id，轮到时才列出。搜索完成时自动关闭游标；提前结束时必须调用close()
+ */
+public final class DocumentSearch implements Iterator<SearchResult>, Closeable {
+    private static final String TAG = DocumentSearch.class.getSimpleName();
+    private static final String[] ROOT_SEGMENTS = new String[0];
+
+    private final SAFUtil safUtil;
+    private final Uri treeUri;                                  // 构建子文件Uri地址时使用
+    private final SearchQuery query;
+    private final ArrayDeque<Dir> pending = new ArrayDeque<>(); // 待列出的目录
+
+    private Dir current;            // 正在读取的目录
+    private Cursor cursor;          // 正在读取的目录的游标
+    private SearchResult next;      // 已经找到但还未返回的一项
+    private boolean closed;
+
+    DocumentSearch(SAFUtil safUtil, Uri dirUri, String dirId, SearchQuery query) {
+        this.safUtil = safUtil;
+        this.treeUri = dirUri;
+        this.query = query;
+        pending.push(new Dir(dirId, ROOT_SEGMENTS));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (closed) return false;
+
+        while (true) {
+            if (cursor == null && !openNext()) {
+                close();
+                return false;
+            }
+            if (!cursor.moveToNext()) {
+                DocumentQuery.closeQuietly(cursor);
+                cursor = null;
+                continue;
+            }
+            next = readRow();
+            if (next != null) return true;
+        }
+    }
+
+    @Override
+    public SearchResult next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        SearchResult result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        DocumentQuery.closeQuietly(cursor);
+        cursor = null;
+        pending.clear();
+    }
+
+    /**
+     * 列出下一个待列出的目录，无法列出的目录会被跳过
+     *
+     * @return 没有待列出的目录时返回false
+     */
+    private boolean openNext() {
+        while (!pending.isEmpty()) {
+            current = pending.pop();
+            long start = safUtil.startTiming();
+            try {
+                cursor = safUtil.queryChildren(DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, current.documentId));
+                if (cursor != null) return true;
+                Log.e(TAG, "search: list " + current.path() + " failed");
+            } catch (Exception e) {
+                Log.e(TAG, "search: list " + current.path() + " failed: " + e.getMessage());
+            } finally {
+                safUtil.endTiming("search", start);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取游标的当前行，不符合条件时返回null
+     */
+    private SearchResult readRow() {
+        String name = cursor.getString(DocumentEntry.COLUMN_NAME);
+        if (name == null) return null;
+        String mimeType = cursor.getString(DocumentEntry.COLUMN_MIME);
+        boolean directory = DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+
+        if (directory) {
+            String[] segments = append(current.segments, name);
+            if (query.shouldDescend(segments)) {
+                pending.push(new Dir(cursor.getString(DocumentEntry.COLUMN_ID), segments));
+            }
+            if (!query.includeDirectories || !query.acceptName(current.segments, name)) return null;
+        } else {
+            if (!query.acceptMimeType(mimeType) || !query.acceptName(current.segments, name)) return null;
+            long size = cursor.isNull(DocumentEntry.COLUMN_SIZE) ? 0 : cursor.getLong(DocumentEntry.COLUMN_SIZE);
+            if (!query.acceptSize(size)) return null;
+        }
+        long lastModified = cursor.isNull(DocumentEntry.COLUMN_MODIFIED) ? 0 : cursor.getLong(DocumentEntry.COLUMN_MODIFIED);
+        if (!query.acceptModified(lastModified)) return null;
+
+        String path = current.segments.length == 0 ? name : current.path() + "/" + name;
+        return new SearchResult(path, DocumentEntry.fromCursor(treeUri, cursor));
+    }
+
+    private static String[] append(String[] segments, String name) {
+        String[] result = new String[segments.length + 1];
+        System.arraycopy(segments, 0, result, 0, segments.length);
+        result[segments.length] = name;
+        return result;
+    }
+
+    /**
+     * 待列出的目录
+     */
+    private static final class Dir {
+        final String documentId;
+        final String[] segments;    // 相对于搜索目录的路径分段
+        private String path;
+
+        Dir(String documentId, String[] segments) {
+            this.documentId = documentId;
+            this.segments = segments;
+        }
+
+        /**
+         * 相对于搜索目录的路径，搜索目录本身为空字符串
+         */
+        String path() {
+            if (path == null) path = TextUtils.join("/", segments);
+            return path;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 查找内容相同的文件，可以跨多个权限目录（如内部储存和扩展储存卡）
+ * <p>
+ * 分三步逐步缩小范围：先从列出目录的结果中按大小分组，大小唯一的文件不会被打开；
+ * 再对同大小的文件计算头部和尾部各partialSize字节的哈希；只有头尾哈希也相同的文件才读取完整内容计算SHA-256。
+ * 文件的读取在多个线程中并行执行，缓冲区从SAFUtil的缓冲区池中借出；计算结果按document id、大小、修改时间缓存在内存中，
+ * 文件未变化时再次查找不会重新读取
+ */
+public final class DuplicateFinder {
+    private static final String TAG = DuplicateFinder.class.getSimpleName();
+    private static final int DEFAULT_PARTIAL_SIZE = 16 * 1024;  // 默认头部、尾部哈希各读取16KiB
+
+    private static final int SIZE = 0;      // 按大小分组
+    private static final int PARTIAL = 1;   // 按大小和头尾哈希分组
+    private static final int FULL = 2;      // 按大小和完整内容哈希分组
+
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final BufferPool bufferPool;
+    private final List<Source> sources = new ArrayList<>();
+
+    private int threads = 4;                            // 列出目录、读取文件的线程数
+    private int partialSize = DEFAULT_PARTIAL_SIZE;     // 头部、尾部哈希各读取的字节数
+    private long minSize = 1;                           // 小于该大小的文件不参与查找，默认跳过空文件
+
+    DuplicateFinder(SAFUtil safUtil, Context context, BufferPool bufferPool) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 添加当前权限目录下的目录
+     *
+     * @param dirPath 目录路径
+     */
+    public DuplicateFinder addDirectory(String dirPath) {
+        return addDirectory(safUtil, dirPath);
+    }
+
+    /**
+     * 添加其他权限目录下的目录
+     *
+     * @param owner   目录所属权限目录的SAFUtil对象
+     * @param dirPath 目录路径
+     */
+    public DuplicateFinder addDirectory(SAFUtil owner, String dirPath) {
+        while (dirPath.length() > 1 && dirPath.endsWith("/")) dirPath = dirPath.substring(0, dirPath.length() - 1);
+        sources.add(new Source(owner, dirPath));
+        return this;
+    }
+
+    /**
+     * 设置列出目录、读取文件的线程数，默认4
+     */
+    public DuplicateFinder setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+        return this;
+    }
+
+    /**
+     * 设置头部、尾部哈希各读取的字节数，默认16KiB
+     */
+    public DuplicateFinder setPartialSize(int partialSize) {
+        this.partialSize = Math.max(partialSize, 1);
+        return this;
+    }
+
+    /**
+     * 设置参与查找的最小文件大小，默认1（跳过空文件）
+     */
+    public DuplicateFinder setMinSize(long minSize) {
+        this.minSize = Math.max(minSize, 0);
+        return this;
+    }
+
+    /**
+     * 查找内容相同的文件，阻塞直到完成或被取消，请勿在主线程调用
+     * <p>
+     * 无法读取的文件会被跳过
+     *
+     * @param signal 取消信号，可为null
+     * @return 按可释放的空间从大到小排列的重复文件组；有目录不存在或被取消时返回null
+     */
+    public List<DuplicateGroup> find(CancellationSignal signal) {
+        long start = safUtil.startTiming();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // 按大小分组，大小唯一的文件不可能重复
+            List<Candidate> candidates = new ArrayList<>();
+            for (List<Candidate> group : groupBy(list(signal), SIZE).values()) {
+                if (group.size() > 1) candidates.addAll(group);
+            }
+            if (isCancelled(signal)) return null;
+
+            // 头部和尾部的哈希，小文件和无法随机访问的文件同时得到完整内容的哈希
+            hashAll(executor, candidates, false, signal);
+            if (isCancelled(signal)) return null;
+
+            List<Candidate> collisions = new ArrayList<>();
+            for (List<Candidate> group : groupBy(candidates, PARTIAL).values()) {
+                if (group.size() > 1) collisions.addAll(group);
+            }
+
+            // 只有头尾哈希也相同的文件才读取完整内容
+            List<Candidate> pending = new ArrayList<>();
+            for (Candidate candidate : collisions) {
+                if (candidate.fullHash == null) pending.add(candidate);
+            }
+            hashAll(executor, pending, true, signal);
+            if (isCancelled(signal)) return null;
+
+            List<DuplicateGroup> result = new ArrayList<>();
+            for (List<Candidate> group : groupBy(collisions, FULL).values()) {
+                if (group.size() < 2) continue;
+                List<String> paths = new ArrayList<>(group.size());
+                List<DocumentEntry> entries = new ArrayList<>(group.size());
+                for (Candidate candidate : group) {
+                    paths.add(candidate.path);
+                    entries.add(candidate.entry);
+                }
+                result.add(new DuplicateGroup(group.get(0).entry.length(), group.get(0).fullHash, paths, entries));
+            }
+            Collections.sort(result, new Comparator<DuplicateGroup>() {
+                @Override
+                public int compare(DuplicateGroup o1, DuplicateGroup o2) {
+                    return Long.compare(o2.getWastedSize(), o1.getWastedSize());
+                }
+            });
+            return result;
+        } catch (IOException e) {
+            Log.e(TAG, "find: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            if (signal != null) signal.cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            executor.shutdown();
+            safUtil.endTiming("findDuplicates", start);
+        }
+    }
+
+    /**
+     * 并行列出所有目录下的文件，同一文档只保留一次
+     */
+    private List<Candidate> list(CancellationSignal signal) throws IOException {
+        final List<Candidate> files = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        for (final Source source : sources) {
+            boolean completed = source.owner.treeWalker(source.dirPath).setThreads(threads).setMaxQueries(threads)
+                    .walk(new TreeVisitor() {
+                        @Override
+                        public VisitResult preVisitDirectory(String path, DocumentEntry dir) {
+                            return VisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public VisitResult visitFile(String path, DocumentEntry file) {
+                            if (file.length() >= minSize && seen.add(cacheKey(file))) {
+                                files.add(new Candidate(source.owner, source.dirPath + "/" + path, file));
+                            }
+                            return VisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public VisitResult postVisitDirectory(String path, DocumentEntry dir, IOException error) {
+                            if (error != null) Log.e(TAG, "find: list " + path + " failed: " + error.getMessage());
+                            return VisitResult.CONTINUE;
+                        }
+                    }, signal);
+            if (!completed && !isCancelled(signal)) throw new IOException("walk " + source.dirPath + " failed");
+        }
+        return files;
+    }
+
+    /**
+     * 并行计算哈希，失败的文件从列表中移除
+     *
+     * @param full 为true时计算完整内容的哈希，否则计算头部和尾部的哈希
+     */
+    private void hashAll(ExecutorService executor, List<Candidate> candidates, final boolean full,
+                         final CancellationSignal signal) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(candidates.size());
+        for (final Candidate candidate : candidates) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCancelled(signal)) return;
+                    try {
+                        hash(candidate, full, signal);
+                    } catch (Exception e) {
+                        // 权限被撤销、URI失效时提供者抛出的是运行时异常，同样视为读取失败
+                        candidate.failed = true;
+                        if (!isCancelled(signal)) Log.e(TAG, "find: read " + candidate.path + " failed: " + e);
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                candidates.get(i).failed = true;
+                Log.e(TAG, "find: read " + candidates.get(i).path + " failed: " + e.getCause());
+            }
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            if (candidates.get(i).failed) candidates.remove(i);
+        }
+    }
+
+    /**
+     * 计算单个文件的哈希，优先使用缓存
+     */
+    private void hash(Candidate candidate, boolean full, CancellationSignal signal) throws IOException {
+        DocumentEntry entry = candidate.entry;
+        String key = cacheKey(entry);
+        long size = entry.length();
+        HashCache.Entry cached = HashCache.getInstance().get(key, size, entry.lastModified());
+        if (cached != null) {
+            if (cached.fullHash != null) {
+                candidate.fullHash = cached.fullHash;
+                if (cached.partialSize == partialSize) candidate.partialHash = cached.partialHash;
+            } else if (!full && cached.partialSize == partialSize) {
+                candidate.partialHash = cached.partialHash;
+            }
+            if (full ? candidate.fullHash != null : candidate.partialHash != null) return;
+        }
+
+        RandomAccessDocument document = candidate.owner.openRandomAccess(DocumentFile.fromSingleUri(context, entry.getUri()));
+        if (document == null) throw new IOException("open failed");
+        byte[] buffer = bufferPool.acquire();
+        try {
+            long headEnd = Math.min(partialSize, size);
+            long tailStart = Math.max(headEnd, size - partialSize);
+            MessageDigest partialDigest = candidate.partialHash == null ? newDigest() : null;
+            if (full || !document.isSeekable() || tailStart == headEnd) {
+                // 读取完整内容，同时得到头尾哈希；小文件的头尾就是完整内容，管道跳到尾部也要读完整个文件
+                MessageDigest fullDigest = newDigest();
+                read(document, 0, size, buffer, fullDigest, partialDigest, headEnd, tailStart, signal);
+                candidate.fullHash = toHex(fullDigest.digest());
+            } else {
+                read(document, 0, headEnd, buffer, null, partialDigest, headEnd, tailStart, signal);
+                read(document, tailStart, size, buffer, null, partialDigest, headEnd, tailStart, signal);
+            }
+            if (partialDigest != null) candidate.partialHash = toHex(partialDigest.digest());
+        } finally {
+            bufferPool.release(buffer);
+            try {
+                document.close();
+            } catch (IOException ignored) {
+            }
+        }
+        HashCache.getInstance().put(key, new HashCache.Entry(size, entry.lastModified(), partialSize,
+                candidate.partialHash, candidate.fullHash));
+    }
+
+    /**
+     * 顺序读取[position, end)，full接收所有字节，partial只接收位于头部[0, headEnd)和尾部[tailStart, 文件末尾)的字节
+     */
+    private static void read(RandomAccessDocument document, long position, long end, byte[] buffer,
+                             MessageDigest full, MessageDigest partial, long headEnd, long tailStart,
+                             CancellationSignal signal) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        while (position < end) {
+            if (isCancelled(signal)) throw new InterruptedIOException("cancelled");
+            byteBuffer.clear();
+            byteBuffer.limit((int) Math.min(buffer.length, end - position));
+            int count = document.read(position, byteBuffer);
+            if (count < 0) throw new EOFException("unexpected end of file at " + position);
+            if (full != null) full.update(buffer, 0, count);
+            if (partial != null) {
+                long chunkEnd = position + count;
+                if (position < headEnd) partial.update(buffer, 0, (int) (Math.min(chunkEnd, headEnd) - position));
+                long from = Math.max(position, tailStart);
+                if (from < chunkEnd) partial.update(buffer, (int) (from - position), (int) (chunkEnd - from));
+            }
+            position += count;
+        }
+    }
+
+    /**
+     * 文档的唯一标识，同一文档经由不同权限目录访问时也相同
+     */
+    private static String cacheKey(DocumentEntry entry) {
+        return entry.getUri().getAuthority() + "\n" + entry.getDocumentId();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有Android版本都支持SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static boolean isCancelled(CancellationSignal signal) {
+        return signal != null && signal.isCanceled();
+    }
+
+    /**
+     * 按键分组，保持原有顺序，读取失败或该阶段没有得到哈希的文件不参与分组
+     */
+    private static Map<String, List<Candidate>> groupBy(List<Candidate> candidates, int key) {
+        Map<String, List<Candidate>> groups = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.failed) continue;
+            String size = String.valueOf(candidate.entry.length());
+            String groupKey = size;
+            if (key != SIZE) {
+                String hash = key == PARTIAL ? candidate.partialHash : candidate.fullHash;
+                if (hash == null) continue;
+                groupKey = size + hash;
+            }
+            List<Candidate> group = groups.get(groupKey);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(groupKey, group);
+            }
+            group.add(candidate);
+        }
+        return groups;
+    }
+
+    /**
+     * 查找的目录
+     */
+    private static final class Source {
+        final SAFUtil owner;
+        final String dirPath;
+
+        Source(SAFUtil owner, String dirPath) {
+            this.owner = owner;
+            this.dirPath = dirPath;
+        }
+    }
+
+    /**
+     * 可能重复的文件
+     */
+    private static final class Candidate {
+        final SAFUtil owner;            // 所属权限目录的SAFUtil对象，用于打开文件
+        final String path;              // 文件路径
+        final DocumentEntry entry;      // 列出目录时得到的属性
+        volatile String partialHash;    // 头部和尾部的哈希
+        volatile String fullHash;       // 完整内容的哈希
+        volatile boolean failed;        // 是否读取失败
+
+        Candidate(SAFUtil owner, String path, DocumentEntry entry) {
+            this.owner = owner;
+            this.path = path;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package xyz.xxin.saf;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一组内容相同的文件
+ */
+public final class DuplicateGroup {
+    private final long size;                    // 每个文件的大小
+    private final String hash;                  // 内容的SHA-256，十六进制小写
+    private final List<String> paths;           // 文件路径
+    private final List<DocumentEntry> entries;  // 文件属性，与paths一一对应
+
+    DuplicateGroup(long size, String hash, List<String> paths, List<DocumentEntry> entries) {
+        this.size = size;
+        this.hash = hash;
+        this.paths = paths;
+        this.entries = entries;
+    }
+
+    /**
+     * 每个文件的大小，单位字节
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 内容的SHA-256，十六进制小写
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * 文件路径
+     */
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * 文件属性，与getPaths()一一对应
+     */
+    public List<DocumentEntry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * 只保留一份时可以释放的空间，单位字节
+     */
+    public long getWastedSize() {
+        return size * (paths.size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateGroup{" +
+                "size=" + size +
+                ", hash='" + hash + '\'' +
+                ", paths=" + paths +
+                '}';
+    }
+}
@@ -0,0 +1,104 @@
+package xyz.xxin.saf;
+
+/**
+ * 文件名、路径的通配符匹配
+ * <p>
+ * 支持*（任意个字符，不跨越/）、?（一个字符）、**（任意层目录，只能单独作为一段）。
+ * 不含/的模式只匹配文件名，可以出现在任意层；含/的模式匹配相对路径，可以据此跳过不可能匹配的目录
+ */
+final class Glob {
+    private static final String ANY_DIRS = "**";
+
+    private final String[] segments;    // 路径模式按/分段，文件名模式为null
+    private final String namePattern;   // 最后一段，不为**时可以先只比较文件名
+
+    Glob(String pattern) {
+        String trimmed = pattern;
+        while (trimmed.startsWith("/")) trimmed = trimmed.substring(1);
+        if (trimmed.indexOf('/') < 0) {
+            segments = null;
+            namePattern = trimmed;
+        } else {
+            segments = trimmed.split("/+");
+            String last = segments[segments.length - 1];
+            namePattern = ANY_DIRS.equals(last) ? null : last;
+        }
+    }
+
+    /**
+     * 是否是只匹配文件名的模式
+     */
+    boolean isNamePattern() {
+        return segments == null;
+    }
+
+    /**
+     * 判断一项是否匹配
+     *
+     * @param dirSegments 所在目录相对于搜索目录的路径分段
+     * @param name        文件名
+     */
+    boolean matches(String[] dirSegments, String name) {
+        if (namePattern != null && !matchSegment(namePattern, name)) return false;
+        if (segments == null) return true;
+        return matchPath(0, dirSegments, 0, name);
+    }
+
+    /**
+     * 目录下是否可能有匹配的项，不可能时可以不列出该目录
+     *
+     * @param dirSegments 目录相对于搜索目录的路径分段
+     */
+    boolean canMatchUnder(String[] dirSegments) {
+        if (segments == null) return true;
+        return canMatchUnder(0, dirSegments, 0);
+    }
+
+    private boolean matchPath(int pi, String[] dir, int si, String name) {
+        int length = dir.length + 1;
+        if (pi == segments.length) return si == length;
+        if (ANY_DIRS.equals(segments[pi])) {
+            for (int k = si; k <= length; k++) {
+                if (matchPath(pi + 1, dir, k, name)) return true;
+            }
+            return false;
+        }
+        if (si == length) return false;
+        String segment = si < dir.length ? dir[si] : name;
+        return matchSegment(segments[pi], segment) && matchPath(pi + 1, dir, si + 1, name);
+    }
+
+    private boolean canMatchUnder(int pi, String[] dir, int si) {
+        // 目录本身已匹配完，模式还需要至少一段来匹配其下的项
+        if (si == dir.length) return pi < segments.length;
+        if (pi == segments.length) return false;
+        if (ANY_DIRS.equals(segments[pi])) return true;
+        return matchSegment(segments[pi], dir[si]) && canMatchUnder(pi + 1, dir, si + 1);
+    }
+
+    /**
+     * 匹配一段，*可以回溯
+     */
+    static boolean matchSegment(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int star = -1;      // 最近一个*在模式中的位置
+        int mark = 0;       // 该*开始匹配的文本位置
+        while (t < text.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') p++;
+        return p == pattern.length();
+    }
+}
@@ -0,0 +1,80 @@
+package xyz.xxin.saf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文件内容哈希的LRU缓存，进程内共用
+ * <p>
+ * 键为提供者authority和document id，大小或修改时间与缓存时不同的记录视为已过期
+ */
+final class HashCache {
+    private static final int DEFAULT_CAPACITY = 16384;  // 默认缓存的文件数
+
+    private static final HashCache INSTANCE = new HashCache();
+
+    private final LinkedHashMap<String, Entry> entries; // 按访问顺序排列，最久未访问的在最前面
+
+    static HashCache getInstance() {
+        return INSTANCE;
+    }
+
+    private HashCache() {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > DEFAULT_CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * 获取未过期的记录，未命中时返回null
+     *
+     * @param key          authority与document id拼接的键
+     * @param size         文件当前的大小
+     * @param lastModified 文件当前的修改时间
+     */
+    synchronized Entry get(String key, long size, long lastModified) {
+        Entry entry = entries.get(key);
+        if (entry == null || lastModified <= 0 || entry.size != size || entry.lastModified != lastModified) return null;
+        return entry;
+    }
+
+    /**
+     * 缓存记录，修改时间未知时不缓存
+     *
+     * @param key   authority与document id拼接的键
+     * @param entry 记录
+     */
+    synchronized void put(String key, Entry entry) {
+        if (entry.lastModified <= 0) return;
+        entries.put(key, entry);
+    }
+
+    /**
+     * 清空缓存
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 单个文件的哈希
+     */
+    static final class Entry {
+        final long size;            // 计算时的文件大小
+        final long lastModified;    // 计算时的修改时间
+        final int partialSize;      // 头部、尾部哈希各读取的字节数
+        final String partialHash;   // 头部和尾部的哈希，未计算时为null
+        final String fullHash;      // 完整内容的哈希，未计算时为null
+
+        Entry(long size, long lastModified, int partialSize, String partialHash, String fullHash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.partialSize = partialSize;
+            this.partialHash = partialHash;
+            this.fullHash = fullHash;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package xyz.xxin.saf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图，按微秒数以2的幂分桶：第i个桶记录[2^(i-1), 2^i)微秒的次数，第0个桶记录不足1微秒的次数
+ * <p>
+ * 记录时只做原子加法，不加锁、不分配对象
+ */
+final class LatencyHistogram {
+    static final int BUCKET_COUNT = 40;     // 2^39微秒约6天，足够覆盖所有操作
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，单位纳秒
+     */
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        long micros = nanos / 1000;
+        int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max, nanos)) break;
+        }
+    }
+
+    MetricsSnapshot.Latency snapshot() {
+        long[] values = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            values[i] = buckets.get(i);
+        }
+        return new MetricsSnapshot.Latency(count.get(), totalNanos.get(), maxNanos.get(), values);
+    }
+}
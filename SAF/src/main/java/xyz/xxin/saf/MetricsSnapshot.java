@@ -0,0 +1,167 @@
+package xyz.xxin.saf;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * SAFMetrics某一时刻的统计数据，不可变
+ */
+public final class MetricsSnapshot {
+    private final long queryCount;              // ContentResolver查询次数
+    private final long createCount;             // 创建文件、文件夹的次数
+    private final long walkCount;               // 逐级解析路径的次数（未命中缓存）
+    private final long walkLevels;              // 逐级解析路径时经过的总层级数
+    private final int maxWalkDepth;             // 单次逐级解析经过的最大层级数
+    private final long bytesCopied;             // 复制的字节数
+    private final long cacheHits;               // 路径缓存命中次数
+    private final long cacheMisses;             // 路径缓存未命中次数
+    private final Map<String, Latency> latencies;   // 方法名 => 耗时统计
+
+    MetricsSnapshot(long queryCount, long createCount, long walkCount, long walkLevels, int maxWalkDepth,
+                    long bytesCopied, long cacheHits, long cacheMisses, Map<String, Latency> latencies) {
+        this.queryCount = queryCount;
+        this.createCount = createCount;
+        this.walkCount = walkCount;
+        this.walkLevels = walkLevels;
+        this.maxWalkDepth = maxWalkDepth;
+        this.bytesCopied = bytesCopied;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.latencies = Collections.unmodifiableMap(latencies);
+    }
+
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    public long getCreateCount() {
+        return createCount;
+    }
+
+    public long getWalkCount() {
+        return walkCount;
+    }
+
+    public long getWalkLevels() {
+        return walkLevels;
+    }
+
+    public int getMaxWalkDepth() {
+        return maxWalkDepth;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * 路径缓存命中率，没有访问过时为0
+     */
+    public double getCacheHitRate() {
+        long total = cacheHits + cacheMisses;
+        return total == 0 ? 0 : (double) cacheHits / total;
+    }
+
+    /**
+     * 各方法的耗时统计
+     */
+    public Map<String, Latency> getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "queryCount=" + queryCount +
+                ", createCount=" + createCount +
+                ", walkCount=" + walkCount +
+                ", walkLevels=" + walkLevels +
+                ", maxWalkDepth=" + maxWalkDepth +
+                ", bytesCopied=" + bytesCopied +
+                ", cacheHits=" + cacheHits +
+                ", cacheMisses=" + cacheMisses +
+                ", latencies=" + latencies +
+                '}';
+    }
+
+    /**
+     * 单个方法的耗时统计
+     */
+    public static final class Latency {
+        private final long count;           // 调用次数
+        private final long totalNanos;      // 总耗时
+        private final long maxNanos;        // 最大耗时
+        private final long[] buckets;       // 按微秒数以2的幂分桶的次数
+
+        Latency(long count, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * 平均耗时，单位纳秒
+         */
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * 估算百分位耗时，返回所在桶的上限，单位纳秒
+         *
+         * @param percentile 百分位，0~100，如50、99
+         */
+        public long getPercentileNanos(double percentile) {
+            if (count == 0) return 0;
+            long target = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(target, 1)) {
+                    // 第i个桶的上限是2^i微秒
+                    return Math.min((1L << i) * 1000, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * 按微秒数以2的幂分桶的次数，第i个桶记录[2^(i-1), 2^i)微秒的次数
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Latency{" +
+                    "count=" + count +
+                    ", meanMicros=" + getMeanNanos() / 1000 +
+                    ", p50Micros=" + getPercentileNanos(50) / 1000 +
+                    ", p99Micros=" + getPercentileNanos(99) / 1000 +
+                    ", maxMicros=" + maxNanos / 1000 +
+                    '}';
+        }
+    }
+}
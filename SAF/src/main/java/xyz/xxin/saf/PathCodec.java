@@ -0,0 +1,234 @@
+package xyz.xxin.saf;
+
+/**
+ * 文件路径与externalstorage提供者tree Uri地址之间的相互转换
+ * <p>
+ * 只遍历一次字符串，在复用的StringBuilder中完成编码、解码，除了最终结果外不产生其他对象；
+ * 编码规则与Uri.encode一致，除字母、数字和_-!.~'()*以外的字符都按UTF-8编码为%XX，解码时识别所有%XX
+ */
+final class PathCodec {
+    static final String URI_HEAD = "content://" + DocumentQuery.EXTERNAL_STORAGE_AUTHORITY + "/tree/";
+
+    private static final String PRIMARY_ID = "primary";         // 主储存器的id
+    private static final String COLON = "%3A";                  // 编码后的冒号
+    private static final String DOCUMENT_SEGMENT = "/document/";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // 每个线程复用一个StringBuilder
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private final String primaryStorage;    // 主储存目录，如：/storage/emulated/0
+    private final String storageHead;       // 储存器的上级目录，如：/storage/
+    private final String storageName;       // 不带斜杠的储存器上级目录名，如：storage/
+    private final String primaryPath;       // 主储存目录在储存器上级目录下的路径，如：emulated/0
+
+    /**
+     * @param primaryStorage 主储存目录，如：/storage/emulated/0
+     */
+    PathCodec(String primaryStorage) {
+        this.primaryStorage = primaryStorage;
+        // 例：/storage/emulated/0 => /storage/
+        this.storageHead = primaryStorage.substring(0, primaryStorage.indexOf("/", 1) + 1);
+        this.storageName = storageHead.substring(1);
+        // 例：/storage/emulated/0 => emulated/0
+        this.primaryPath = primaryStorage.substring(storageHead.length());
+    }
+
+    /**
+     * 将目录地址转换为tree Uri地址，头尾的斜杠可有可无
+     * <p>
+     * 例1：/storage/emulated/0/Android/data => content://.../tree/primary%3AAndroid%2Fdata
+     * 例2：/storage/6238-3332/              => content://.../tree/6238-3332%3A
+     *
+     * @param path 完整的绝对路径
+     * @return 路径不在储存器下时返回null
+     */
+    String pathToUri(String path) {
+        // 去除头尾的斜杠，只记录位置不截取
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') start++;
+        while (end > start && path.charAt(end - 1) == '/') end--;
+
+        // 路径必须在储存器的上级目录下，如：/storage/
+        if (!path.startsWith(storageName, start)) return null;
+        int pos = start + storageName.length();
+        if (pos >= end) return null;
+
+        StringBuilder builder = builder();
+        builder.append(URI_HEAD);
+
+        // 储存器id，主储存目录替换为primary
+        int primaryEnd = pos + primaryPath.length();
+        if (path.startsWith(primaryPath, pos) && (primaryEnd == end || path.charAt(primaryEnd) == '/')) {
+            builder.append(PRIMARY_ID);
+            pos = primaryEnd;
+        } else {
+            int slash = path.indexOf('/', pos);
+            int volumeEnd = slash < 0 || slash > end ? end : slash;
+            encode(path, pos, volumeEnd, builder);
+            pos = volumeEnd;
+        }
+        builder.append(COLON);
+
+        // 储存器下的路径，斜杠编码为%2F
+        if (pos < end) encode(path, pos + 1, end, builder);
+        return builder.toString();
+    }
+
+    /**
+     * 将tree Uri地址或由tree Uri构建的document Uri地址转换为文件路径
+     * <p>
+     * 例1：content://.../tree/primary%3AAndroid                              => /storage/emulated/0/Android
+     * 例2：content://.../tree/primary%3AAndroid/document/primary%3AAndroid%2Fa => /storage/emulated/0/Android/a
+     *
+     * @param uriStr uri地址
+     * @return 格式不正确时返回null
+     */
+    String uriToPath(String uriStr) {
+        if (!uriStr.startsWith(URI_HEAD)) return null;
+
+        int volumeStart = URI_HEAD.length();
+        int colon = uriStr.indexOf(COLON, volumeStart);
+        if (colon < 0) return null;
+        int volumeEnd = colon;
+
+        // document Uri地址取document部分，否则取tree部分
+        // 例：tree/primary%3AAndroid/document/primary%3AAndroid%2Fa => Android%2Fa
+        int branchStart = colon + COLON.length();
+        int branchEnd = uriStr.length();
+        int document = uriStr.indexOf(DOCUMENT_SEGMENT, branchStart);
+        if (document >= 0) {
+            int documentVolume = document + DOCUMENT_SEGMENT.length();
+            int volumeLength = volumeEnd - volumeStart;
+            if (uriStr.regionMatches(documentVolume, uriStr, volumeStart, volumeLength)
+                    && uriStr.startsWith(COLON, documentVolume + volumeLength)) {
+                branchStart = documentVolume + volumeLength + COLON.length();
+            } else {
+                branchEnd = document;
+            }
+        }
+
+        StringBuilder builder = builder();
+        if (uriStr.regionMatches(volumeStart, PRIMARY_ID, 0, PRIMARY_ID.length())
+                && volumeEnd - volumeStart == PRIMARY_ID.length()) {
+            builder.append(primaryStorage);
+        } else {
+            builder.append(storageHead);
+            decode(uriStr, volumeStart, volumeEnd, builder);
+        }
+        builder.append('/');
+        decode(uriStr, branchStart, branchEnd, builder);
+        return builder.toString();
+    }
+
+    private static StringBuilder builder() {
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * 按Uri.encode的规则编码，直接写入builder
+     */
+    static void encode(String s, int start, int end, StringBuilder builder) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (isAllowed(c)) {
+                builder.append(c);
+                continue;
+            }
+
+            // 按UTF-8编码
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, s.charAt(++i));
+            }
+            if (codePoint < 0x80) {
+                appendEscaped(codePoint, builder);
+            } else if (codePoint < 0x800) {
+                appendEscaped(0xC0 | (codePoint >> 6), builder);
+                appendEscaped(0x80 | (codePoint & 0x3F), builder);
+            } else if (codePoint < 0x10000) {
+                appendEscaped(0xE0 | (codePoint >> 12), builder);
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), builder);
+                appendEscaped(0x80 | (codePoint & 0x3F), builder);
+            } else {
+                appendEscaped(0xF0 | (codePoint >> 18), builder);
+                appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), builder);
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), builder);
+                appendEscaped(0x80 | (codePoint & 0x3F), builder);
+            }
+        }
+    }
+
+    /**
+     * 解码所有%XX，多字节的UTF-8序列合并为一个字符，格式不正确的部分原样保留
+     */
+    static void decode(String s, int start, int end, StringBuilder builder) {
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            int b = c == '%' ? hexByte(s, i, end) : -1;
+            if (b < 0) {
+                builder.append(c);
+                i++;
+                continue;
+            }
+            if (b < 0x80) {
+                builder.append((char) b);
+                i += 3;
+                continue;
+            }
+
+            // 多字节序列，根据首字节确定长度
+            int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 0;
+            int codePoint = length == 4 ? b & 0x07 : length == 3 ? b & 0x0F : b & 0x1F;
+            int next = i + 3;
+            for (int k = 1; k < length; k++) {
+                int continuation = next < end && s.charAt(next) == '%' ? hexByte(s, next, end) : -1;
+                if ((continuation & 0xC0) != 0x80) {
+                    length = 0;
+                    break;
+                }
+                codePoint = (codePoint << 6) | (continuation & 0x3F);
+                next += 3;
+            }
+            if (length == 0) {
+                // 不是合法的UTF-8，保留原始的%XX
+                builder.append(s, i, i + 3);
+                i += 3;
+            } else {
+                builder.appendCodePoint(codePoint);
+                i = next;
+            }
+        }
+    }
+
+    private static boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '!' || c == '.' || c == '~' || c == '\'' || c == '(' || c == ')' || c == '*';
+    }
+
+    private static void appendEscaped(int b, StringBuilder builder) {
+        builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    /**
+     * 读取位于index的%XX
+     *
+     * @return 不是合法的%XX时返回-1
+     */
+    private static int hexByte(String s, int index, int end) {
+        if (index + 2 >= end) return -1;
+        int high = Character.digit(s.charAt(index + 1), 16);
+        int low = Character.digit(s.charAt(index + 2), 16);
+        if (high < 0 || low < 0) return -1;
+        return (high << 4) | low;
+    }
+}
@@ -0,0 +1,179 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 随机读取文档，适合只需要读取大文件中某一部分的场景（如zip、obb末尾的索引）
+ * <p>
+ * 文档背后是普通文件时，通过FileChannel按位置读取，并支持只读内存映射，多线程可以同时读取；
+ * 提供者返回的是管道时无法随机访问，退回顺序读取：向后读取时跳过中间的数据，向前读取时需要重新打开，
+ * 此时isSeekable()返回false，map()会抛出异常。使用完毕后必须调用close()
+ */
+public final class RandomAccessDocument implements Closeable {
+    private final Context context;
+    private final Uri uri;
+
+    // 可随机访问时
+    private final FileInputStream fileInputStream;
+    private final FileChannel channel;
+
+    // 管道时
+    private final long pipeSize;            // 查询得到的文件大小，未知时为0
+    private final BufferPool bufferPool;    // 借出pipeBuffer的缓冲区池
+    private InputStream pipeStream;         // 当前打开的顺序输入流
+    private long pipePosition;              // 顺序输入流当前的位置
+    private byte[] pipeBuffer;              // 读取、跳过时使用的缓冲区，首次读取时借出，close()时归还
+
+    private volatile boolean closed;
+
+    /**
+     * 以可随机访问的文件描述创建
+     */
+    RandomAccessDocument(Context context, Uri uri, ParcelFileDescriptor descriptor) {
+        this.context = context;
+        this.uri = uri;
+        this.fileInputStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        this.channel = fileInputStream.getChannel();
+        this.pipeSize = 0;
+        this.bufferPool = null;
+    }
+
+    /**
+     * 以顺序输入流创建
+     */
+    RandomAccessDocument(Context context, Uri uri, InputStream inputStream, long size, BufferPool bufferPool) {
+        this.context = context;
+        this.uri = uri;
+        this.fileInputStream = null;
+        this.channel = null;
+        this.pipeStream = inputStream;
+        this.pipeSize = size;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 是否支持随机访问，不支持时按位置读取需要顺序跳过数据，且不支持内存映射
+     */
+    public boolean isSeekable() {
+        return channel != null;
+    }
+
+    /**
+     * 文件大小，不支持随机访问且提供者未提供大小时返回0
+     */
+    public long size() throws IOException {
+        ensureOpen();
+        return channel != null ? channel.size() : pipeSize;
+    }
+
+    /**
+     * 从指定位置读取数据到dst，不改变其他读取的位置，可多线程同时调用
+     *
+     * @param position 文件中的位置
+     * @param dst      目标缓冲区，从其当前位置写入，最多写满
+     * @return 读取的字节数，已到文件末尾时返回-1
+     */
+    public int read(long position, ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position < 0) throw new IllegalArgumentException("position < 0");
+        if (channel != null) return channel.read(dst, position);
+        return readPipe(position, dst);
+    }
+
+    /**
+     * 从指定位置读取数据直到写满dst
+     *
+     * @param position 文件中的位置
+     * @param dst      目标缓冲区
+     * @throws EOFException 文件剩余的数据不足以写满dst
+     */
+    public void readFully(long position, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            int count = read(position, dst);
+            if (count < 0) throw new EOFException("end of document at " + position);
+            position += count;
+        }
+    }
+
+    /**
+     * 只读内存映射文件的一部分，映射在close()之后仍然有效
+     *
+     * @param position 文件中的位置
+     * @param size     映射的大小
+     * @throws IOException 不支持随机访问（管道）时抛出
+     */
+    public MappedByteBuffer map(long position, long size) throws IOException {
+        ensureOpen();
+        if (channel == null) throw new IOException("document is a pipe and cannot be mapped: " + uri);
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * 获取FileChannel，不支持随机访问时返回null
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (fileInputStream != null) fileInputStream.close();
+        synchronized (this) {
+            if (pipeBuffer != null) bufferPool.release(pipeBuffer);
+            pipeBuffer = null;
+            if (pipeStream != null) pipeStream.close();
+            pipeStream = null;
+        }
+    }
+
+    /**
+     * 管道只能顺序读取，向前读取时重新打开
+     */
+    private synchronized int readPipe(long position, ByteBuffer dst) throws IOException {
+        // 与close()互斥，关闭后不能再借出缓冲区或重新打开
+        ensureOpen();
+        if (pipeBuffer == null) pipeBuffer = bufferPool.acquire();
+
+        if (pipeStream == null || position < pipePosition) {
+            if (pipeStream != null) pipeStream.close();
+            // 重新打开失败时不保留已关闭的流，下次读取时再次尝试打开
+            pipeStream = null;
+            pipePosition = 0;
+            InputStream inputStream = context.getContentResolver().openInputStream(uri);
+            if (inputStream == null) throw new FileNotFoundException("open input stream failed: " + uri);
+            pipeStream = inputStream;
+        }
+
+        // 跳过中间的数据，部分流的skip()不可靠，直接读取丢弃
+        while (pipePosition < position) {
+            int count = pipeStream.read(pipeBuffer, 0, (int) Math.min(pipeBuffer.length, position - pipePosition));
+            if (count < 0) return -1;
+            pipePosition += count;
+        }
+
+        if (!dst.hasRemaining()) return 0;
+        int count = pipeStream.read(pipeBuffer, 0, Math.min(pipeBuffer.length, dst.remaining()));
+        if (count < 0) return -1;
+        dst.put(pipeBuffer, 0, count);
+        pipePosition += count;
+        return count;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("document closed: " + uri);
+    }
+}
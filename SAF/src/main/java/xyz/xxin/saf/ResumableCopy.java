@@ -0,0 +1,174 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 可断点续传的文件复制
+ * <p>
+ * 按位置顺序复制，每复制CHECKPOINT_INTERVAL字节，先把目标文件同步到储存设备，再在应用私有目录写入检查点，
+ * 记录源文件、目标文件、源文件大小和修改时间、已复制的字节数，以及已复制部分末尾一段数据的CRC32。
+ * 下次复制同一对文件时，源文件的大小和修改时间不变、且两端末尾数据的CRC32都与检查点一致，才从检查点继续，
+ * 否则从头复制。复制完成后删除检查点
+ */
+final class ResumableCopy {
+    private static final String TAG = ResumableCopy.class.getSimpleName();
+
+    static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;    // 保存检查点的间隔 4MiB
+    private static final int TAIL_SIZE = 64 * 1024;             // 校验的末尾数据大小
+    private static final int VERSION = 1;                       // 检查点文件的格式版本
+    private static final String DIR_NAME = "saf_checkpoints";   // 检查点所在的目录
+
+    private final File checkpointFile;
+    private final String sourceKey;         // 源文件的uri地址或绝对路径
+    private final String targetKey;         // 目标文件的uri地址或绝对路径
+    private final long lastModified;        // 源文件的修改时间，为0时视为未知，不续传
+    private final BufferPool bufferPool;
+
+    ResumableCopy(Context context, String sourceKey, String targetKey, long lastModified, BufferPool bufferPool) {
+        this.checkpointFile = new File(getCheckpointDir(context),
+                Integer.toHexString(sourceKey.hashCode()) + "_" + Integer.toHexString(targetKey.hashCode()));
+        this.sourceKey = sourceKey;
+        this.targetKey = targetKey;
+        this.lastModified = lastModified;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 检查点所在的目录
+     */
+    static File getCheckpointDir(Context context) {
+        return new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    /**
+     * 执行复制，不负责关闭FileChannel
+     *
+     * @param in        源文件
+     * @param out       目标文件，需支持按位置写入和调整大小
+     * @param outReader 读取目标文件的FileChannel，可以与out相同
+     * @param signal    取消信号，可为null，取消时保存检查点后抛出InterruptedIOException
+     * @return 本次复制的字节数
+     */
+    long run(FileChannel in, FileChannel out, FileChannel outReader, CancellationSignal signal) throws IOException {
+        long size = in.size();
+        byte[] array = bufferPool.acquire();
+        try {
+            long position = resumePosition(in, outReader, size, array);
+            long resumed = position;
+            if (position == 0) checkpointFile.delete();
+
+            ByteBuffer buffer = ByteBuffer.wrap(array);
+            long nextCheckpoint = position + CHECKPOINT_INTERVAL;
+            while (position < size) {
+                if (signal != null && signal.isCanceled()) {
+                    saveCheckpoint(in, out, size, position, array);
+                    throw new InterruptedIOException("resumable copy canceled at " + position + "/" + size);
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                int count = in.read(buffer, position);
+                if (count < 0) throw new IOException("unexpected end of source at " + position + "/" + size);
+                buffer.flip();
+                long writePosition = position;
+                while (buffer.hasRemaining()) {
+                    writePosition += out.write(buffer, writePosition);
+                }
+                position += count;
+
+                if (position >= nextCheckpoint && position < size) {
+                    saveCheckpoint(in, out, size, position, array);
+                    nextCheckpoint = position + CHECKPOINT_INTERVAL;
+                }
+            }
+
+            // 目标文件以rw模式打开，截掉原文件多余的部分
+            out.truncate(size);
+            if (out.size() != size) throw new IOException("resumable copy size mismatch: " + out.size() + "/" + size);
+            checkpointFile.delete();
+            return size - resumed;
+        } finally {
+            bufferPool.release(array);
+        }
+    }
+
+    /**
+     * 读取检查点，确认可以续传时返回续传的位置，否则返回0
+     */
+    private long resumePosition(FileChannel in, FileChannel outReader, long size, byte[] buffer) {
+        if (lastModified == 0 || !checkpointFile.isFile()) return 0;
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(checkpointFile))) {
+            if (inputStream.readInt() != VERSION) return 0;
+            if (!sourceKey.equals(inputStream.readUTF()) || !targetKey.equals(inputStream.readUTF())) return 0;
+            if (inputStream.readLong() != size || inputStream.readLong() != lastModified) return 0;
+            long position = inputStream.readLong();
+            long crc = inputStream.readLong();
+            if (position <= 0 || position > size || outReader.size() < position) return 0;
+
+            // 源文件的末尾数据确认源文件未被修改，目标文件的末尾数据确认已复制的部分确实写入了
+            if (crc(in, position, buffer) != crc || crc(outReader, position, buffer) != crc) return 0;
+            return position;
+        } catch (IOException e) {
+            Log.e(TAG, "resumePosition: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 把目标文件同步到储存设备后保存检查点，先写入临时文件再重命名，避免检查点本身只写了一半
+     */
+    private void saveCheckpoint(FileChannel in, FileChannel out, long size, long position, byte[] buffer) throws IOException {
+        if (lastModified == 0) return;
+        out.force(false);
+
+        File dir = checkpointFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "saveCheckpoint: create " + dir + " failed");
+            return;
+        }
+        File tempFile = new File(checkpointFile.getPath() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(tempFile))) {
+            outputStream.writeInt(VERSION);
+            outputStream.writeUTF(sourceKey);
+            outputStream.writeUTF(targetKey);
+            outputStream.writeLong(size);
+            outputStream.writeLong(lastModified);
+            outputStream.writeLong(position);
+            outputStream.writeLong(crc(in, position, buffer));
+        }
+        if (!tempFile.renameTo(checkpointFile)) {
+            Log.e(TAG, "saveCheckpoint: rename " + tempFile + " failed");
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * 计算end之前TAIL_SIZE字节的CRC32
+     */
+    private static long crc(FileChannel channel, long end, byte[] array) throws IOException {
+        long position = Math.max(0, end - TAIL_SIZE);
+        CRC32 crc32 = new CRC32();
+        ByteBuffer buffer = ByteBuffer.wrap(array);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int count = channel.read(buffer, position);
+            if (count < 0) throw new IOException("unexpected end of file at " + position + "/" + end);
+            crc32.update(array, 0, count);
+            position += count;
+        }
+        return crc32.getValue();
+    }
+}
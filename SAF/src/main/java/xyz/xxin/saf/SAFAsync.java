@@ -0,0 +1,449 @@
+package xyz.xxin.saf;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SAFUtil的异步版本，所有操作都在I/O线程池中执行，结果通过SAFCallback回调到指定线程（默认主线程）
+ * <p>
+ * 返回的Future可用于取消尚未开始的操作或阻塞等待结果
+ */
+public final class SAFAsync {
+    private static final int DEFAULT_IO_THREADS = 4;    // 默认I/O线程数
+
+    private static volatile ExecutorService defaultIoExecutor;
+
+    private final SAFUtil safUtil;
+    private final ExecutorService ioExecutor;       // 执行操作的线程池
+    private final Executor callbackExecutor;        // 执行回调的线程
+
+    /**
+     * 使用默认I/O线程池，在主线程回调
+     *
+     * @param safUtil SAFUtil对象
+     */
+    public static SAFAsync create(SAFUtil safUtil) {
+        return new SAFAsync(safUtil, getDefaultIoExecutor(), mainThreadExecutor());
+    }
+
+    /**
+     * @param safUtil          SAFUtil对象
+     * @param ioExecutor       执行操作的线程池
+     * @param callbackExecutor 执行回调的线程，为null时在I/O线程直接回调
+     */
+    public static SAFAsync create(SAFUtil safUtil, ExecutorService ioExecutor, Executor callbackExecutor) {
+        return new SAFAsync(safUtil, ioExecutor, callbackExecutor);
+    }
+
+    private SAFAsync(SAFUtil safUtil, ExecutorService ioExecutor, Executor callbackExecutor) {
+        this.safUtil = safUtil;
+        this.ioExecutor = ioExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 所有SAFAsync默认共用的I/O线程池
+     */
+    private static ExecutorService getDefaultIoExecutor() {
+        if (defaultIoExecutor == null) {
+            synchronized (SAFAsync.class) {
+                if (defaultIoExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_IO_THREADS, DEFAULT_IO_THREADS,
+                            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "SAFUtil-io-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    executor.allowCoreThreadTimeOut(true);
+                    defaultIoExecutor = executor;
+                }
+            }
+        }
+        return defaultIoExecutor;
+    }
+
+    private static Executor mainThreadExecutor() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * 异步获取某文件或者目录的DocumentFile对象，不存在时自动创建
+     *
+     * @param filePath 目录或者文件路径
+     * @param isFile   目标是否是文件类型
+     * @param callback 结果回调，可为null
+     */
+    public Future<DocumentFile> getDocumentFile(final String filePath, final boolean isFile, SAFCallback<DocumentFile> callback) {
+        return submit(new Callable<DocumentFile>() {
+            @Override
+            public DocumentFile call() throws Exception {
+                return requireNonNull(safUtil.getDocumentFile(filePath, isFile), filePath);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步列出目录下的所有直接子文件和子目录
+     *
+     * @param dirPath  目录路径
+     * @param callback 结果回调，可为null
+     */
+    public Future<List<DocumentEntry>> list(final String dirPath, SAFCallback<List<DocumentEntry>> callback) {
+        return submit(new Callable<List<DocumentEntry>>() {
+            @Override
+            public List<DocumentEntry> call() throws Exception {
+                return requireNonNull(safUtil.list(dirPath), dirPath);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步创建文件夹
+     *
+     * @param folderPath 文件夹路径
+     * @param callback   结果回调，可为null
+     */
+    public Future<DocumentFile> createFolder(String folderPath, SAFCallback<DocumentFile> callback) {
+        return getDocumentFile(folderPath, false, callback);
+    }
+
+    /**
+     * 异步创建文件
+     *
+     * @param filePath 文件路径
+     * @param callback 结果回调，可为null
+     */
+    public Future<DocumentFile> createFile(String filePath, SAFCallback<DocumentFile> callback) {
+        return getDocumentFile(filePath, true, callback);
+    }
+
+    /**
+     * 异步批量创建文件、文件夹
+     *
+     * @param paths    文件或文件夹的完整路径，以/结尾的路径视为文件夹
+     * @param callback 结果回调，可为null
+     */
+    public Future<Map<String, DocumentFile>> createAll(final Collection<String> paths, SAFCallback<Map<String, DocumentFile>> callback) {
+        return submit(new Callable<Map<String, DocumentFile>>() {
+            @Override
+            public Map<String, DocumentFile> call() {
+                return safUtil.createAll(paths);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步删除文件或文件夹
+     *
+     * @param filePath 文件/文件夹路径
+     * @param isFile   是否是文件
+     * @param callback 结果回调，可为null
+     */
+    public Future<Boolean> deleteFile(final String filePath, final boolean isFile, SAFCallback<Boolean> callback) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return safUtil.deleteFile(filePath, isFile);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步重命名文件、文件夹
+     *
+     * @param filePath 文件/文件夹路径
+     * @param isFile   是否是文件类型
+     * @param newName  新文件名
+     * @param callback 结果回调，可为null
+     */
+    public Future<Boolean> renameFile(final String filePath, final boolean isFile, final String newName, SAFCallback<Boolean> callback) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return safUtil.renameFile(filePath, isFile, newName);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将DocumentFile文件复制到File
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @param callback 结果回调，可为null
+     */
+    public Future<CopyMode> copyFile(final DocumentFile fromFile, final File toFile, SAFCallback<CopyMode> callback) {
+        return submit(new Callable<CopyMode>() {
+            @Override
+            public CopyMode call() throws Exception {
+                return safUtil.copyFileOrThrow(fromFile, toFile);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将File复制到DocumentFile
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @param callback 结果回调，可为null
+     */
+    public Future<CopyMode> copyFile(final File fromFile, final DocumentFile toFile, SAFCallback<CopyMode> callback) {
+        return submit(new Callable<CopyMode>() {
+            @Override
+            public CopyMode call() throws Exception {
+                return safUtil.copyFileOrThrow(fromFile, toFile);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将DocumentFile复制到DocumentFile
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @param callback 结果回调，可为null
+     */
+    public Future<CopyMode> copyFile(final DocumentFile fromFile, final DocumentFile toFile, SAFCallback<CopyMode> callback) {
+        return submit(new Callable<CopyMode>() {
+            @Override
+            public CopyMode call() throws Exception {
+                return safUtil.copyFileOrThrow(fromFile, toFile);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将File目录复制到DocumentFile目录，进度回调在I/O线程中执行
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @param callback 结果回调，可为null
+     */
+    public Future<TransferResult> copyTree(final File fromDir, final DocumentFile toDir, final TransferListener listener,
+                                           final CancellationSignal signal, SAFCallback<TransferResult> callback) {
+        return submit(new Callable<TransferResult>() {
+            @Override
+            public TransferResult call() {
+                return safUtil.copyTree(fromDir, toDir, listener, signal);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将DocumentFile目录复制到File目录，进度回调在I/O线程中执行
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @param callback 结果回调，可为null
+     */
+    public Future<TransferResult> copyTree(final DocumentFile fromDir, final File toDir, final TransferListener listener,
+                                           final CancellationSignal signal, SAFCallback<TransferResult> callback) {
+        return submit(new Callable<TransferResult>() {
+            @Override
+            public TransferResult call() {
+                return safUtil.copyTree(fromDir, toDir, listener, signal);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将DocumentFile目录复制到DocumentFile目录，进度回调在I/O线程中执行
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @param callback 结果回调，可为null
+     */
+    public Future<TransferResult> copyTree(final DocumentFile fromDir, final DocumentFile toDir, final TransferListener listener,
+                                           final CancellationSignal signal, SAFCallback<TransferResult> callback) {
+        return submit(new Callable<TransferResult>() {
+            @Override
+            public TransferResult call() {
+                return safUtil.copyTree(fromDir, toDir, listener, signal);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将File目录移动到DocumentFile目录，进度回调在I/O线程中执行
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @param callback 结果回调，可为null
+     */
+    public Future<TransferResult> moveTree(final File fromDir, final DocumentFile toDir, final TransferListener listener,
+                                           final CancellationSignal signal, SAFCallback<TransferResult> callback) {
+        return submit(new Callable<TransferResult>() {
+            @Override
+            public TransferResult call() {
+                return safUtil.moveTree(fromDir, toDir, listener, signal);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将DocumentFile目录移动到File目录，进度回调在I/O线程中执行
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @param callback 结果回调，可为null
+     */
+    public Future<TransferResult> moveTree(final DocumentFile fromDir, final File toDir, final TransferListener listener,
+                                           final CancellationSignal signal, SAFCallback<TransferResult> callback) {
+        return submit(new Callable<TransferResult>() {
+            @Override
+            public TransferResult call() {
+                return safUtil.moveTree(fromDir, toDir, listener, signal);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步将DocumentFile目录移动到DocumentFile目录，进度回调在I/O线程中执行
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @param callback 结果回调，可为null
+     */
+    public Future<TransferResult> moveTree(final DocumentFile fromDir, final DocumentFile toDir, final TransferListener listener,
+                                           final CancellationSignal signal, SAFCallback<TransferResult> callback) {
+        return submit(new Callable<TransferResult>() {
+            @Override
+            public TransferResult call() {
+                return safUtil.moveTree(fromDir, toDir, listener, signal);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步打开输入流，文件不存在时自动创建
+     *
+     * @param filePath 文件路径
+     * @param callback 结果回调，可为null
+     */
+    public Future<InputStream> getInputStream(final String filePath, SAFCallback<InputStream> callback) {
+        return submit(new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws Exception {
+                return requireNonNull(safUtil.getInputStream(filePath), filePath);
+            }
+        }, callback);
+    }
+
+    /**
+     * 异步打开输出流，文件不存在时自动创建
+     *
+     * @param filePath 文件路径
+     * @param callback 结果回调，可为null
+     */
+    public Future<OutputStream> getOutputStream(final String filePath, SAFCallback<OutputStream> callback) {
+        return submit(new Callable<OutputStream>() {
+            @Override
+            public OutputStream call() throws Exception {
+                return requireNonNull(safUtil.getOutputStream(filePath), filePath);
+            }
+        }, callback);
+    }
+
+    /**
+     * 提交操作，完成后在回调线程中回调结果
+     * <p>
+     * 只有操作本身的异常会回调onFailure；在I/O线程直接回调时onSuccess抛出的异常由Future抛出，不会再回调onFailure
+     */
+    private <T> Future<T> submit(final Callable<T> callable, final SAFCallback<T> callback) {
+        return ioExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T result;
+                try {
+                    result = callable.call();
+                } catch (Exception e) {
+                    deliverFailure(callback, e);
+                    throw e;
+                }
+                deliverSuccess(callback, result);
+                return result;
+            }
+        });
+    }
+
+    private <T> void deliverSuccess(final SAFCallback<T> callback, final T result) {
+        if (callback == null) return;
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSuccess(result);
+            }
+        });
+    }
+
+    private <T> void deliverFailure(final SAFCallback<T> callback, final Exception e) {
+        if (callback == null) return;
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                callback.onFailure(e);
+            }
+        });
+    }
+
+    private void deliver(Runnable runnable) {
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    /**
+     * SAFUtil的同步方法失败时返回null，转换为异常
+     */
+    private static <T> T requireNonNull(T result, String path) throws IOException {
+        if (result == null) throw new FileNotFoundException("operation failed: " + path);
+        return result;
+    }
+}
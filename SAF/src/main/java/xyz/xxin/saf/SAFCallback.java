@@ -0,0 +1,22 @@
+package xyz.xxin.saf;
+
+/**
+ * 异步操作的结果回调，在创建SAFAsync时指定的回调线程中执行（默认主线程）
+ *
+ * @param <T> 结果类型
+ */
+public interface SAFCallback<T> {
+    /**
+     * 操作成功
+     *
+     * @param result 操作结果
+     */
+    void onSuccess(T result);
+
+    /**
+     * 操作失败
+     *
+     * @param e 失败原因
+     */
+    void onFailure(Exception e);
+}
@@ -0,0 +1,125 @@
+package xyz.xxin.saf;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SAFUtil的性能统计，默认不开启，通过SAFUtil.setMetrics(SAFMetrics)开启
+ * <p>
+ * 统计ContentResolver查询次数、逐级解析的层级数、复制的字节数、路径缓存命中次数，以及各方法的耗时分布。
+ * 同一个SAFMetrics对象可以同时设置给多个SAFUtil对象，线程安全
+ */
+public final class SAFMetrics {
+    private static final String TAG = SAFMetrics.class.getSimpleName();
+
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong createCount = new AtomicLong();
+    private final AtomicLong walkCount = new AtomicLong();
+    private final AtomicLong walkLevels = new AtomicLong();
+    private final AtomicInteger maxWalkDepth = new AtomicInteger();
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 每个方法执行完成后的回调，在执行方法的线程中回调，不要执行耗时操作
+     */
+    public interface Listener {
+        /**
+         * @param operation     方法名
+         * @param durationNanos 耗时，单位纳秒
+         */
+        void onOperation(String operation, long durationNanos);
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null) listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 获取当前的统计数据
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.Latency> latencySnapshots = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            latencySnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new MetricsSnapshot(queryCount.get(), createCount.get(), walkCount.get(), walkLevels.get(),
+                maxWalkDepth.get(), bytesCopied.get(), cacheHits.get(), cacheMisses.get(), latencySnapshots);
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        queryCount.set(0);
+        createCount.set(0);
+        walkCount.set(0);
+        walkLevels.set(0);
+        maxWalkDepth.set(0);
+        bytesCopied.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        latencies.clear();
+    }
+
+    void onQuery(int count) {
+        queryCount.addAndGet(count);
+    }
+
+    void onCreate() {
+        createCount.incrementAndGet();
+    }
+
+    void onWalk(int depth) {
+        walkCount.incrementAndGet();
+        walkLevels.addAndGet(depth);
+        int max;
+        while (depth > (max = maxWalkDepth.get())) {
+            if (maxWalkDepth.compareAndSet(max, depth)) break;
+        }
+    }
+
+    void onBytesCopied(long bytes) {
+        bytesCopied.addAndGet(bytes);
+    }
+
+    void onCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    void onCacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    void onOperation(String operation, long durationNanos) {
+        LatencyHistogram histogram = latencies.get(operation);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = latencies.putIfAbsent(operation, created);
+            if (histogram == null) histogram = created;
+        }
+        histogram.record(durationNanos);
+
+        for (Listener listener : listeners) {
+            // 在SAFUtil方法的finally中回调，回调抛出的异常不能覆盖方法本身的返回值或异常
+            try {
+                listener.onOperation(operation, durationNanos);
+            } catch (Exception e) {
+                Log.e(TAG, "onOperation: listener failed for " + operation, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.content.UriPermission;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多个权限目录的管理
+ * <p>
+ * 首次使用时读取一次应用已持久化的所有目录权限，按路径逐级建立前缀树；
+ * 之后任意绝对路径只需按路径逐级查找前缀树，即可找到覆盖该路径的最深的权限目录及其SAFUtil对象，不再产生任何查询。
+ * 通过SAFUtil.savePermission保存新权限时自动加入，在SAFUtil以外授予或释放权限后请调用refresh()
+ */
+public final class SAFRegistry {
+    private static final String TAG = SAFRegistry.class.getSimpleName();
+
+    private static volatile SAFRegistry instance;
+
+    private final Context context;
+
+    private Node root;          // 前缀树的根节点，为null时表示尚未读取权限
+    private int grantCount;     // 权限目录的数量
+
+    /**
+     * 获取全局唯一的权限目录管理对象
+     *
+     * @param context 上下文
+     */
+    public static SAFRegistry getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SAFRegistry.class) {
+                if (instance == null) {
+                    instance = new SAFRegistry(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private SAFRegistry(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * 获取能操作该路径的SAFUtil对象，有多个权限目录覆盖该路径时取最深的一个
+     *
+     * @param path 文件或目录的完整路径
+     * @return 没有任何权限目录覆盖该路径时返回null
+     */
+    public synchronized SAFUtil route(String path) {
+        Grant grant = findGrant(path);
+        if (grant == null) return null;
+        if (grant.safUtil == null) {
+            grant.safUtil = SAFUtil.create(context, grant.path);
+        }
+        return grant.safUtil;
+    }
+
+    /**
+     * 获取覆盖该路径的权限目录
+     *
+     * @param path 文件或目录的完整路径
+     * @return 没有任何权限目录覆盖该路径时返回null
+     */
+    public synchronized String getPermissionDir(String path) {
+        Grant grant = findGrant(path);
+        return grant == null ? null : grant.path;
+    }
+
+    /**
+     * 是否拥有该路径的访问权限，只检查已持久化的权限，不产生查询
+     *
+     * @param path      文件或目录的完整路径
+     * @param needWrite 是否需要写权限
+     */
+    public synchronized boolean isPermission(String path, boolean needWrite) {
+        Grant grant = findGrant(path);
+        return grant != null && (needWrite ? grant.writable : grant.readable);
+    }
+
+    /**
+     * 获取所有权限目录的路径
+     */
+    public synchronized List<String> getPermissionDirs() {
+        ensureLoaded();
+        List<String> dirs = new ArrayList<>(grantCount);
+        collect(root, dirs);
+        return dirs;
+    }
+
+    /**
+     * 重新读取已持久化的目录权限，已创建的SAFUtil对象会被丢弃
+     */
+    public synchronized void refresh() {
+        root = null;
+        ensureLoaded();
+    }
+
+    /**
+     * 保存新权限后调用，只把新的权限目录加入前缀树；尚未读取过权限时无需处理，首次使用时会一并读取
+     */
+    static void onPermissionSaved(Uri treeUri, boolean writable) {
+        SAFRegistry registry = instance;
+        if (registry == null) return;
+        synchronized (registry) {
+            if (registry.root != null) registry.add(treeUri, true, writable);
+        }
+    }
+
+    /**
+     * 逐级查找前缀树，记录经过的最深的权限目录
+     */
+    private Grant findGrant(String path) {
+        ensureLoaded();
+        Node node = root;
+        Grant grant = node.grant;
+        int length = path.length();
+        int start = 0;
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = length;
+            if (end > start) {
+                node = node.children.get(path.substring(start, end));
+                if (node == null) break;
+                if (node.grant != null) grant = node.grant;
+            }
+            start = end + 1;
+        }
+        return grant;
+    }
+
+    /**
+     * 读取已持久化的目录权限
+     */
+    private void ensureLoaded() {
+        if (root != null) return;
+        root = new Node();
+        grantCount = 0;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return;
+
+        List<UriPermission> permissions = context.getContentResolver().getPersistedUriPermissions();
+        for (UriPermission permission : permissions) {
+            add(permission.getUri(), permission.isReadPermission(), permission.isWritePermission());
+        }
+    }
+
+    /**
+     * 将权限目录加入前缀树，只处理外部储存的tree Uri地址
+     */
+    private void add(Uri treeUri, boolean readable, boolean writable) {
+        if (!DocumentQuery.EXTERNAL_STORAGE_AUTHORITY.equals(treeUri.getAuthority())) return;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || !DocumentsContract.isTreeUri(treeUri)) return;
+
+        // 例：content://.../tree/primary%3AAndroid%2Fdata => /storage/emulated/0/Android/data
+        String path = SAFUtil.PATH_CODEC.uriToPath(treeUri.toString());
+        if (path == null) {
+            Log.e(TAG, "add: " + treeUri + " not a storage uri");
+            return;
+        }
+        if (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+
+        Node node = root;
+        for (String name : path.split("/")) {
+            if (name.isEmpty()) continue;
+            Node child = node.children.get(name);
+            if (child == null) {
+                child = new Node();
+                node.children.put(name, child);
+            }
+            node = child;
+        }
+        if (node.grant == null) {
+            node.grant = new Grant(path, readable, writable);
+            grantCount++;
+        } else {
+            node.grant.readable |= readable;
+            node.grant.writable |= writable;
+        }
+    }
+
+    private static void collect(Node node, List<String> dirs) {
+        if (node.grant != null) dirs.add(node.grant.path);
+        for (Node child : node.children.values()) {
+            collect(child, dirs);
+        }
+    }
+
+    /**
+     * 前缀树节点，每一级目录一个节点
+     */
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();     // 目录名 => 子节点
+        Grant grant;                                            // 该目录是权限目录时不为null
+    }
+
+    /**
+     * 权限目录
+     */
+    private static final class Grant {
+        final String path;      // 权限目录的完整路径
+        boolean readable;       // 是否有读权限
+        boolean writable;       // 是否有写权限
+        SAFUtil safUtil;        // 首次使用时创建
+
+        Grant(String path, boolean readable, boolean writable) {
+            this.path = path;
+            this.readable = readable;
+            this.writable = writable;
+        }
+    }
+}
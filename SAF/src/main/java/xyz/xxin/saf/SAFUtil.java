@@ -4,8 +4,10 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.os.Environment;
 import android.os.ParcelFileDescriptor;
 import android.provider.DocumentsContract;
@@ -17,6 +19,7 @@ import androidx.annotation.RequiresApi;
 import androidx.documentfile.provider.DocumentFile;
 import androidx.fragment.app.Fragment;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -24,6 +27,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SAFUtil {
     private static final String TAG = SAFUtil.class.getSimpleName();
@@ -32,19 +42,31 @@ public class SAFUtil {
 
     private final Context context;          // 上下文
 
-    private final String URI_HEAD;          // uri地址头，任何一个DocumentFile的Uri地址都包含这个地址头
-
     private final String permissionPath;    // 请求权限的目录地址（如：storage/sdcard/test）
     private final String permissionUriStr;  // 请求权限的目录的uri地址（该Uri地址仅用于申请权限，切勿直接操作）
 
+    private final DocumentCache documentCache;  // 相对路径到document Uri地址的缓存，同一权限目录共用
+    private final UsageCache usageCache;        // 目录占用空间统计的缓存，同一权限目录共用
+
+    private BufferPool bufferPool = BufferPool.getDefault();    // 复制文件时使用的缓冲区池
+
+    private int transferThreads = 4;        // 复制、移动、删除、同步目录时并行处理的线程数
+
+    private long chunkedCopyThreshold;      // 不小于该大小的文件分块并行复制，为0时不启用
+    private int chunkedCopyThreads = 4;     // 分块并行复制的线程数
+
+    private SAFMetrics metrics;             // 性能统计，为null时不统计
+
+    private boolean directLookup = true;        // 快速解析模式，直接推算子文件的document id查询，失败时再遍历
+
+    private DocumentIndex documentIndex;        // 持久化的路径索引，为null时不使用
+
     public final static String PRIMARY_STORAGE;     // 主储存目录:   /storage/emulated/0
     public final static String ANDROID_PATH;        // Android目录: /storage/emulated/0/Android
     public final static String ANDROID_DATA_PATH;   // data目录:    /storage/emulated/0/Android/data
     public final static String ANDROID_OBB_PATH;    // obb目录:     /storage/emulated/0/Android/obb
 
-    {
-        URI_HEAD = "content://com.android.externalstorage.documents/tree/";
-    }
+    final static PathCodec PATH_CODEC;              // 路径与Uri地址的转换，储存目录的前缀只计算一次
 
     static {
         // 一般来说主储存目录是/storage/emulated/0
@@ -52,6 +74,7 @@ public class SAFUtil {
         ANDROID_PATH = PRIMARY_STORAGE + "/Android";
         ANDROID_DATA_PATH = ANDROID_PATH + "/data";
         ANDROID_OBB_PATH = ANDROID_PATH + "/obb";
+        PATH_CODEC = new PathCodec(PRIMARY_STORAGE);
     }
 
     /**
@@ -70,12 +93,23 @@ public class SAFUtil {
         this.permissionPath = addSlash(permissionDir);
         this.permissionUriStr = pathToUri(permissionDir);
         this.context = context;
+        this.documentCache = DocumentCache.forTree(String.valueOf(permissionUriStr));
+        this.usageCache = UsageCache.forTree(String.valueOf(permissionUriStr));
 
         // 错误时提示
         if (this.permissionUriStr == null)
             Log.e(TAG, "DocumentFileUtils: root directory permissionDir field");
     }
 
+    /**
+     * 获取异步操作对象，操作在默认I/O线程池中执行，结果回调到主线程
+     * <p>
+     * 需要自定义线程池或回调线程时，使用SAFAsync.create(SAFUtil, ExecutorService, Executor)
+     */
+    public SAFAsync async() {
+        return SAFAsync.create(this);
+    }
+
     /**
      * 是否拥有所有文件访问权限，安卓11之前无需申请
      */
@@ -189,8 +223,10 @@ public class SAFUtil {
                 DocumentFile documentFile = DocumentFile.fromTreeUri(context, uri);
                 if (documentFile != null && documentFile.canWrite()) {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                        this.context.getContentResolver().takePersistableUriPermission(uri,
-                                intent.getFlags() & (Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION));
+                        int flags = intent.getFlags() & (Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+                        this.context.getContentResolver().takePersistableUriPermission(uri, flags);
+                        // 加入权限目录管理的前缀树
+                        SAFRegistry.onPermissionSaved(uri, (flags & Intent.FLAG_GRANT_WRITE_URI_PERMISSION) != 0);
                     } else {
                         Log.e(TAG, "savePermission: sdk version too low");
                     }
@@ -214,12 +250,23 @@ public class SAFUtil {
 
     /**
      * 获取某文件或者目录的DocumentFile对象
+     * <p>
+     * 解析结果会被缓存，再次获取同一路径时不会产生任何查询
      *
      * @param filePath 目录或者文件路径
      * @param isFile   目标是否是文件类型，如果是文件夹类型则传入false
      * @return DocumentFile对象
      */
     public DocumentFile getDocumentFile(String filePath, boolean isFile) {
+        long start = startTiming();
+        try {
+            return resolveDocumentFile(filePath, isFile);
+        } finally {
+            endTiming("getDocumentFile", start);
+        }
+    }
+
+    private DocumentFile resolveDocumentFile(String filePath, boolean isFile) {
         // 在地址头和地址尾添加斜杠
         filePath = addSlash(filePath);
 
@@ -236,8 +283,95 @@ public class SAFUtil {
         if (_uriPathStr.equals(permissionUriStr)) return documentFile;
 
         // 去除与权限目录一样的部分，仅保留权限目录下的文件或文件夹路径
-        String pathContent = filePath.substring(this.permissionPath.length());
-        return getDocumentFile(documentFile, pathContent, isFile);
+        String pathContent = removeSlash(filePath.substring(this.permissionPath.length()));
+
+        // 命中缓存时直接返回
+        Uri cachedUri = documentCache.get(pathContent);
+        if (metrics != null) {
+            if (cachedUri != null) metrics.onCacheHit();
+            else metrics.onCacheMiss();
+        }
+        if (cachedUri != null) return DocumentFile.fromTreeUri(context, cachedUri);
+
+        // 内存缓存未命中时查找持久化索引
+        DocumentFile indexedFile = lookupIndex(pathContent, isFile);
+        if (indexedFile != null) return indexedFile;
+
+        // 未命中时，从最近的已缓存（或已索引）的上级目录开始查找
+        // 例：缓存了test，查找test/a/1.txt => 从test开始查找a/1.txt
+        DocumentFile startFile = documentFile;
+        String startPath = "";
+        String parentPath = pathContent;
+        int index;
+        while ((index = parentPath.lastIndexOf('/')) > 0) {
+            parentPath = parentPath.substring(0, index);
+            Uri parentUri = documentCache.get(parentPath);
+            DocumentFile parentFile = parentUri != null
+                    ? DocumentFile.fromTreeUri(context, parentUri)
+                    : lookupIndex(parentPath, false);
+            if (parentFile != null) {
+                startFile = parentFile;
+                startPath = parentPath;
+                break;
+            }
+        }
+
+        String remainPath = startPath.isEmpty() ? pathContent : pathContent.substring(startPath.length() + 1);
+        if (metrics != null) metrics.onWalk(countLevels(remainPath));
+        DocumentFile result = getDocumentFile(startFile, startPath, remainPath, isFile);
+        if (result != null) recordIndex(startPath, pathContent, result, isFile);
+        return result;
+    }
+
+    /**
+     * 从持久化索引中取出document id，并通过一次单行查询确认文档仍然存在、文件名和类型都相符
+     *
+     * @param relativePath 权限目录下的相对路径
+     * @param isFile       是否是文件
+     * @return 未启用索引、未记录或已过时时返回null，过时的记录会被删除
+     */
+    private DocumentFile lookupIndex(String relativePath, boolean isFile) {
+        if (documentIndex == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+
+        String documentId = documentIndex.get(permissionUriStr, relativePath, !isFile);
+        if (documentId == null) return null;
+
+        Uri uri = DocumentsContract.buildDocumentUriUsingTree(Uri.parse(permissionUriStr), documentId);
+        if (metrics != null) metrics.onQuery(1);
+        DocumentEntry entry = DocumentQuery.query(context.getContentResolver(), uri);
+        String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+        if (entry == null || entry.isDirectory() == isFile || !name.equals(entry.getName())) {
+            documentIndex.remove(permissionUriStr, relativePath);
+            return null;
+        }
+
+        documentCache.put(relativePath, uri);
+        return DocumentFile.fromTreeUri(context, uri);
+    }
+
+    /**
+     * 将逐级解析途经的每一级写入持久化索引
+     *
+     * @param startPath    开始解析的上级目录的相对路径
+     * @param relativePath 解析的目标路径
+     * @param result       解析结果
+     * @param isFile       目标是否是文件
+     */
+    private void recordIndex(String startPath, String relativePath, DocumentFile result, boolean isFile) {
+        if (documentIndex == null) return;
+
+        // 例：从test开始解析test/a/b/1.txt => test/a、test/a/b、test/a/b/1.txt
+        Map<String, Uri> levels = new LinkedHashMap<>();
+        int from = startPath.isEmpty() ? 0 : startPath.length() + 1;
+        int slash;
+        while ((slash = relativePath.indexOf('/', from)) >= 0) {
+            String levelPath = relativePath.substring(0, slash);
+            Uri levelUri = documentCache.get(levelPath);
+            if (levelUri != null) levels.put(levelPath, levelUri);
+            from = slash + 1;
+        }
+        levels.put(relativePath, result.getUri());
+        documentIndex.put(permissionUriStr, levels, isFile);
     }
 
     /**
@@ -250,6 +384,19 @@ public class SAFUtil {
      * @param isFile       路径是否是文件类型，如果是文件夹类型则传入false，反之true
      */
     public DocumentFile getDocumentFile(DocumentFile documentFile, String filePath, boolean isFile) {
+        // 不知道documentFile在权限目录下的相对路径，不写入缓存
+        return getDocumentFile(documentFile, null, filePath, isFile);
+    }
+
+    /**
+     * 逐级查找目录DocumentFile对象下的目录或文件，不存在时自动创建，并将途经的每一级写入缓存
+     *
+     * @param documentFile DocumentFile对象
+     * @param parentPath   documentFile在权限目录下的相对路径，为null时不写入缓存
+     * @param filePath     DocumentFile对象下的目录或文件路径
+     * @param isFile       路径是否是文件类型，如果是文件夹类型则传入false，反之true
+     */
+    private DocumentFile getDocumentFile(DocumentFile documentFile, String parentPath, String filePath, boolean isFile) {
         // 如果documentFile有问题
         if (documentFile == null) return null;
 
@@ -262,358 +409,1358 @@ public class SAFUtil {
         // 根据层级分隔符，将路径分开
         String[] pathArr = filePath.split("/");
 
-        DocumentFile[] documentFiles = documentFile.listFiles();
         // 路径完整的情况下
         if (pathArr.length > 0) {
             // 从路径中去除掉pathArr[0]
             filePath = filePath.substring(pathArr[0].length());
-            for (DocumentFile _documentFile : documentFiles) {
-                if (_documentFile.getName() != null && _documentFile.getName().equals(pathArr[0])) {
-                    return getDocumentFile(_documentFile, filePath, isFile);
-                }
-            }
-            // 代码执行到这里表明文件夹中不存在指定的下一级文件夹/文件，需要我们创建一个
-            // 如果pathArr.length为1，说明只剩下最后一个文件夹或文件没有找到，反之则一定为文件夹，创建文件夹即可
-            // 如果指定的目标类型为文件，则创建文件，反之创建文件夹
-            if (pathArr.length == 1 && isFile) {
-                return documentFile.createFile("", pathArr[0]);
-            } else {
-                DocumentFile createDir = documentFile.createDirectory(pathArr[0]);
-                return getDocumentFile(createDir, filePath, isFile);
-            }
+            // pathArr[0]在权限目录下的相对路径
+            String childPath = parentPath == null ? null
+                    : parentPath.isEmpty() ? pathArr[0] : parentPath + "/" + pathArr[0];
+
+            // 如果pathArr.length为1，说明只剩下最后一个文件夹或文件，反之则一定为文件夹
+            DocumentFile childFile = resolveChild(documentFile, pathArr[0], pathArr.length == 1 && isFile);
+            if (childFile != null && childPath != null) documentCache.put(childPath, childFile.getUri());
+            return getDocumentFile(childFile, childPath, filePath, isFile);
         }
         return documentFile;
     }
 
     /**
-     * 创建文件夹
+     * 获取目录下指定名称的直接子文件或子目录，不存在时自动创建
      *
-     * @param folderPath 文件夹路径
+     * @param documentFile 目录DocumentFile对象
+     * @param name         子文件或子目录名
+     * @param isFile       不存在时创建文件还是文件夹
+     * @return 创建失败时返回null
      */
-    public DocumentFile createFolder(String folderPath) {
-        return getDocumentFile(folderPath, false);
+    DocumentFile resolveChild(DocumentFile documentFile, String name, boolean isFile) {
+        // 快速解析模式下先直接查询推算出的子文件，查询失败再遍历子文件列表
+        DocumentFile childFile = directLookup ? lookupChild(documentFile, name) : null;
+        if (childFile == null) childFile = findChild(documentFile, name);
+        if (childFile != null) return childFile;
+
+        // 代码执行到这里表明文件夹中不存在指定的文件夹/文件，需要我们创建一个
+        // 如果指定的目标类型为文件，则创建文件，反之创建文件夹
+        if (metrics != null) metrics.onCreate();
+        return isFile ? documentFile.createFile("", name) : documentFile.createDirectory(name);
     }
 
     /**
-     * 创建文件
+     * 获取已存在的文件或目录的属性，不存在时不会创建
+     * <p>
+     * 依次使用缓存的Uri地址、推算的document id，都不可用时逐级遍历子文件列表查找；最后通过一次单行查询确认并读取属性
      *
-     * @param filePath 文件路径
+     * @param path 文件或目录路径
+     * @return 不存在、不属于权限目录或查询失败时返回null
      */
-    public DocumentFile createFile(String filePath) {
-        return getDocumentFile(filePath, true);
+    DocumentEntry queryExisting(String path) {
+        String relativePath = getRelativePath(path);
+        if (relativePath == null) return null;
+        DocumentFile root = getDocumentFile();
+        if (root == null) return null;
+
+        Uri uri;
+        if (relativePath.isEmpty()) {
+            uri = root.getUri();
+        } else {
+            uri = documentCache.get(relativePath);
+            if (uri == null && directLookup) uri = DocumentQuery.buildChildUri(root.getUri(), relativePath);
+            if (uri == null) {
+                DocumentFile childFile = root;
+                for (String name : relativePath.split("/")) {
+                    childFile = findChild(childFile, name);
+                    if (childFile == null) return null;
+                }
+                uri = childFile.getUri();
+            }
+        }
+
+        if (metrics != null) metrics.onQuery(1);
+        DocumentEntry entry = DocumentQuery.query(context.getContentResolver(), uri);
+        if (relativePath.isEmpty()) return entry;
+        if (entry == null) {
+            // 缓存的记录可能已过时
+            invalidatePath(relativePath);
+            return null;
+        }
+        documentCache.put(relativePath, uri);
+        return entry;
     }
 
     /**
-     * 删除文件或文件夹
+     * 通过推算子文件的document id直接查询，仅需一次单行查询
      *
-     * @param filePath 文件/文件夹路径
-     * @param isFile   是否是文件
-     * @return 删除结果
+     * @param documentFile 目录DocumentFile对象
+     * @param name         子文件或子目录名
+     * @return 不存在或无法推算时返回null
      */
-    public boolean deleteFile(String filePath, boolean isFile) {
-        return getDocumentFile(filePath, isFile).delete();
+    private DocumentFile lookupChild(DocumentFile documentFile, String name) {
+        Uri childUri = DocumentQuery.buildChildUri(documentFile.getUri(), name);
+        if (childUri == null) return null;
+        if (metrics != null) metrics.onQuery(1);
+        if (!DocumentQuery.exists(context.getContentResolver(), childUri)) return null;
+        return DocumentFile.fromTreeUri(context, childUri);
     }
 
     /**
-     * 文件、文件夹重命名
+     * 在目录下查找指定名称的直接子文件或子目录
      *
-     * @param filePath 文件/文件夹路径
-     * @param isFile   是否是文件类型
-     * @param newName  新文件名
-     * @return 重命名结果
+     * @param documentFile 目录DocumentFile对象
+     * @param name         子文件或子目录名
+     * @return 不存在时返回null
      */
-    public boolean renameFile(String filePath, boolean isFile, String newName) {
-        return getDocumentFile(filePath, isFile).renameTo(newName);
+    private DocumentFile findChild(DocumentFile documentFile, String name) {
+        DocumentFile[] documentFiles = documentFile.listFiles();
+        // listFiles()是一次查询，之后每个getName()都是一次查询
+        int queries = 1;
+        try {
+            for (DocumentFile _documentFile : documentFiles) {
+                queries++;
+                if (name.equals(_documentFile.getName())) {
+                    return _documentFile;
+                }
+            }
+            return null;
+        } finally {
+            if (metrics != null) metrics.onQuery(queries);
+        }
     }
 
     /**
-     * 将DocumentFile文件复制到File
+     * 列出目录下的所有直接子文件和子目录
+     * <p>
+     * 仅做一次查询，且只查询id、文件名、类型、大小、修改时间、flags这几列，
+     * 返回的DocumentEntry读取属性时不会再产生查询，比listFiles()后逐个调用getName()、length()快得多
      *
-     * @param fromFile 源文件
-     * @param toFile   目标文件
+     * @param dirPath 目录路径
+     * @return 目录下的文件列表，失败时返回null
+     */
+    public List<DocumentEntry> list(String dirPath) {
+        return list(getDocumentFile(dirPath, false));
+    }
+
+    /**
+     * 列出目录下的所有直接子文件和子目录
+     *
+     * @param dirFile 目录的DocumentFile对象
+     * @return 目录下的文件列表，失败时返回null
      */
-    public void copyFile(DocumentFile fromFile, File toFile) {
+    public List<DocumentEntry> list(DocumentFile dirFile) {
+        long start = startTiming();
+        DocumentIterator iterator = iterate(dirFile);
+        if (iterator == null) {
+            endTiming("list", start);
+            return null;
+        }
+
+        List<DocumentEntry> entries = new ArrayList<>();
         try {
-            InputStream inputStream = context.getContentResolver().openInputStream(fromFile.getUri());
-            FileOutputStream fileOutputStream = new FileOutputStream(toFile);
-            copy(inputStream, fileOutputStream);
-        } catch (IOException e) {
+            while (iterator.hasNext()) {
+                entries.add(iterator.next());
+            }
+            return entries;
+        } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            iterator.close();
+            endTiming("list", start);
         }
+        return null;
     }
 
+    /**
+     * 逐行遍历目录下的直接子文件和子目录
+     * <p>
+     * 与list不同，不会一次性读出整个目录，内存占用与目录大小无关，可以随时停止遍历。
+     * 提前停止时必须调用close()，建议配合try-with-resources使用
+     *
+     * @param dirPath 目录路径
+     * @return 子文件迭代器，失败时返回null
+     */
+    public DocumentIterator iterate(String dirPath) {
+        return iterate(getDocumentFile(dirPath, false));
+    }
 
     /**
-     * 将File复制到DocumentFile
+     * 逐行遍历目录下的直接子文件和子目录
      *
-     * @param fromFile 源文件
-     * @param toFile   目标文件
+     * @param dirFile 目录的DocumentFile对象
+     * @return 子文件迭代器，失败时返回null
      */
-    public void copyFile(File fromFile, DocumentFile toFile) {
+    public DocumentIterator iterate(DocumentFile dirFile) {
+        if (dirFile == null) return null;
+
+        Uri childrenUri = DocumentQuery.buildChildrenUri(dirFile.getUri());
+        if (childrenUri == null) {
+            Log.e(TAG, "iterate: " + dirFile.getUri() + " not a tree document");
+            return null;
+        }
+
+        long start = startTiming();
         try {
-            FileInputStream fileInputStream = new FileInputStream(fromFile);
-            OutputStream outputStream = context.getContentResolver().openOutputStream(toFile.getUri());
-            copy(fileInputStream, outputStream);
-        } catch (IOException e) {
+            Cursor cursor = queryChildren(childrenUri);
+            if (cursor != null) return new DocumentIterator(cursor, childrenUri);
+        } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            endTiming("iterate", start);
         }
+        return null;
     }
 
+    /**
+     * 以DocumentEntry.PROJECTION查询子文件列表
+     *
+     * @param childrenUri 子文件列表Uri地址
+     * @return 查询失败时返回null
+     */
+    Cursor queryChildren(Uri childrenUri) {
+        if (metrics != null) metrics.onQuery(1);
+        return context.getContentResolver().query(childrenUri, DocumentEntry.PROJECTION, null, null, null);
+    }
 
     /**
-     * 将DocumentFile到DocumentFile
+     * 在目录下搜索符合条件的文件
+     * <p>
+     * 逐个目录查询，读取游标时先只读文件名和类型判断，不符合的行不会创建DocumentEntry；
+     * 所有通配符都含/时，不可能匹配的目录不会被列出。结果在遍历时才逐个查找，提前停止时不会查询剩余的目录，
+     * 提前停止时必须调用close()，建议配合try-with-resources使用
      *
-     * @param fromFile 源文件
-     * @param toFile   目标文件
+     * @param dirPath 搜索的目录路径
+     * @param query   搜索条件
+     * @return 搜索结果迭代器，目录不存在时返回null
      */
-    public void copyFile(DocumentFile fromFile, DocumentFile toFile) {
-        try {
-            InputStream inputStream = context.getContentResolver().openInputStream(fromFile.getUri());
-            OutputStream outputStream = context.getContentResolver().openOutputStream(toFile.getUri());
-            copy(inputStream, outputStream);
-        } catch (IOException e) {
-            e.printStackTrace();
+    public DocumentSearch search(String dirPath, SearchQuery query) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        // 不能用getDocumentFile，目录不存在时会被自动创建
+        DocumentEntry dirEntry = queryExisting(dirPath);
+        if (dirEntry == null || !dirEntry.isDirectory()) {
+            Log.e(TAG, "search: " + dirPath + " not exists");
+            return null;
         }
+        return new DocumentSearch(this, dirEntry.getUri(), dirEntry.getDocumentId(), query);
+    }
+
+    /**
+     * 创建目录的增量扫描器，每次扫描只返回与上一次相比新增、删除、修改的文件
+     *
+     * @param dirPath 扫描的目录路径
+     */
+    public ChangeScanner changeScanner(String dirPath) {
+        return new ChangeScanner(this, context, dirPath);
     }
 
+    /**
+     * 创建目录的并行遍历器
+     *
+     * @param dirPath 遍历的目录路径
+     */
+    public TreeWalker treeWalker(String dirPath) {
+        return new TreeWalker(this, context, dirPath);
+    }
 
     /**
-     * 写入数据
+     * 统计目录的占用空间，等同于diskUsage(dirPath, false)
      *
-     * @param inputStream  输入流
-     * @param outputStream 输出流
+     * @param dirPath 统计的目录路径
      */
-    private void copy(InputStream inputStream, OutputStream outputStream) {
+    public DiskUsage diskUsage(String dirPath) {
+        return diskUsage(dirPath, false);
+    }
+
+    /**
+     * 统计目录的占用空间，包括每一层子目录的大小之和、文件数
+     * <p>
+     * 每个目录只做一次查询，大小直接从列出目录的结果中读取。列出的结果按目录缓存，
+     * 再次统计时修改时间未变化的目录不再列出，只对其子目录做单行查询。原地修改文件内容不会改变目录的修改时间，
+     * 需要准确结果时请传入refresh为true，请勿在主线程调用
+     *
+     * @param dirPath 统计的目录路径
+     * @param refresh 是否忽略缓存，重新列出所有目录
+     * @return 系统版本过低或目录不存在时返回null
+     */
+    public DiskUsage diskUsage(String dirPath, boolean refresh) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        long start = startTiming();
         try {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, len);
+            // 不能用getDocumentFile，目录不存在时会被自动创建；查询到的修改时间直接用于判断缓存
+            DocumentEntry dirEntry = queryExisting(dirPath);
+            if (dirEntry == null || !dirEntry.isDirectory()) {
+                Log.e(TAG, "diskUsage: " + dirPath + " not exists");
+                return null;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            // 目录名取自路径，与传入的路径一致
+            String name = removeSlash(dirPath);
+            name = name.substring(name.lastIndexOf('/') + 1);
+            return new UsageCounter(this, context, usageCache, dirEntry.getUri(), refresh)
+                    .count(dirEntry.getDocumentId(), name, dirEntry.lastModified());
         } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (outputStream != null) {
-                try {
-                    outputStream.flush();
-                    outputStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            endTiming("diskUsage", start);
         }
     }
 
     /**
-     * 获取输入流
-     *
-     * @param filePath 文件地址
+     * 创建重复文件查找器，通过addDirectory添加要查找的目录，可以添加其他权限目录下的目录
      */
-    public InputStream getInputStream(String filePath) {
-        DocumentFile documentFile = getDocumentFile(filePath, true);
-        return getInputStream(documentFile);
+    public DuplicateFinder duplicateFinder() {
+        return new DuplicateFinder(this, context, bufferPool);
     }
 
     /**
-     * 获取输入流
+     * 清空当前权限目录的占用空间统计缓存
+     */
+    public void clearUsageCache() {
+        usageCache.clear();
+    }
+
+    /**
+     * 创建文件夹
      *
-     * @param documentFile 文件
+     * @param folderPath 文件夹路径
      */
-    public InputStream getInputStream(DocumentFile documentFile) {
-        try {
-            return context.getContentResolver().openInputStream(documentFile.getUri());
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        return null;
+    public DocumentFile createFolder(String folderPath) {
+        return getDocumentFile(folderPath, false);
     }
 
     /**
-     * 打开输出流
+     * 创建文件
      *
      * @param filePath 文件路径
      */
-    public OutputStream getOutputStream(String filePath) {
-        DocumentFile documentFile = getDocumentFile(filePath, true);
-        return getOutputStream(documentFile);
+    public DocumentFile createFile(String filePath) {
+        return getDocumentFile(filePath, true);
     }
 
     /**
-     * 打开输出流
+     * 批量创建文件、文件夹
+     * <p>
+     * 共同的上级目录只解析或创建一次，比逐个调用createFile、createFolder快得多
      *
-     * @param documentFile 文件
+     * @param paths 文件或文件夹的完整路径，以/结尾的路径视为文件夹
+     * @return 路径 => DocumentFile对象，创建失败或不属于权限目录的路径不包含在内
      */
-    public OutputStream getOutputStream(DocumentFile documentFile) {
+    public Map<String, DocumentFile> createAll(Collection<String> paths) {
+        long start = startTiming();
         try {
-            return context.getContentResolver().openOutputStream(documentFile.getUri());
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            return new BatchCreator(this, context, documentCache).create(paths);
+        } finally {
+            endTiming("createAll", start);
         }
-        return null;
     }
 
     /**
-     * 获取DocumentFile类型的文件描述
+     * 删除文件或文件夹
      *
-     * @param documentFile 文件的DocumentFile对象
-     * @param openMode     打开文件的模式，一般情况下w是写模式，r是读模式
+     * @param filePath 文件/文件夹路径
+     * @param isFile   是否是文件
+     * @return 删除结果
      */
-    public ParcelFileDescriptor getFileDescriptor(DocumentFile documentFile, String openMode) {
-        Uri uri = documentFile.getUri();
+    public boolean deleteFile(String filePath, boolean isFile) {
+        long start = startTiming();
         try {
-            // 以写模式打开
-            return context.getContentResolver().openFileDescriptor(uri, openMode);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            boolean result = getDocumentFile(filePath, isFile).delete();
+            // 文件夹被删除后，其子路径的缓存也一并失效
+            invalidatePath(getRelativePath(filePath));
+            return result;
+        } finally {
+            endTiming("deleteFile", start);
         }
-        return null;
     }
 
     /**
-     * 移除地址头和地址尾的斜杠
+     * 删除整个目录（包括目录本身）
+     * <p>
+     * 目录只解析一次。listener为null时直接一次调用删除整个目录，提供者不支持时再遍历删除；
+     * 需要进度时先遍历目录（每个目录一次查询），提供者支持删除整个目录的子目录一次删除，
+     * 否则自下而上逐项删除，同一深度的项多线程并行（线程数同setTransferThreads）。单项失败不影响其他项
      *
-     * @param path 文件地址
+     * @param dirPath  目录路径
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 删除结果
      */
-    private String removeSlash(String path) {
-        if (path.startsWith("/")) {
-            path = path.substring(1);
-        }
-
-        if (path.endsWith("/")) {
-            path = path.substring(0, path.length() - 1);
-        }
-
-        return path;
+    public DeleteResult deleteTree(String dirPath, DeleteListener listener, CancellationSignal signal) {
+        return new TreeDelete(this, context, dirPath, null, transferThreads, listener, signal).run();
     }
 
     /**
-     * 在地址头和地址尾添加斜线
+     * 删除目录下所有选中的文件和目录，保留目录本身
+     * <p>
+     * 选中的目录连同其下的所有子项一起删除，不再对其子项调用filter；未选中的目录继续检查其子项
      *
-     * @param permissionDir 请求权限的目录
+     * @param dirPath  目录路径
+     * @param filter   筛选需要删除的项
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 删除结果
+     * @see #deleteTree(String, DeleteListener, CancellationSignal)
      */
-    private String addSlash(String permissionDir) {
-        if (!permissionDir.startsWith("/")) {
-            permissionDir = "/" + permissionDir;
-        }
-
-        if (!permissionDir.endsWith("/")) {
-            permissionDir = permissionDir + "/";
-        }
-        return permissionDir;
+    public DeleteResult purge(String dirPath, DocumentFilter filter, DeleteListener listener, CancellationSignal signal) {
+        if (filter == null) throw new IllegalArgumentException("filter == null");
+        return new TreeDelete(this, context, dirPath, filter, transferThreads, listener, signal).run();
     }
 
     /**
-     * 将目录地址转换为uri地址，此处要求绝对正确的完整的目录地址
-     * <p>
-     * 转换后的Uri地址仅申请权限时可用，不可以直接使用该Uri地址转换为DocumentFile
-     * 注：储存器（外置TF卡、内置SD卡都称为储存器）根目录除外
+     * 文件、文件夹重命名
      *
-     * @param path 文件路径，注意一定要传入文件的完整的绝对路径
-     * @return 格式化后的Uri地址字符串
-     */
-    private String pathToUri(String path) {
-        // 在头尾添加斜杠
-        path = addSlash(path);
-
-        // 定义路径头规范，一般路径头是/storage/
-        // 例1：/storage/6238-3332/               => /storage/
-        // 例2：/storage/6238-3332/Android/       => /storage/
-        // 例3：/storage/emulated/0/Android/data/ => /storage/
-        String pathHead = PRIMARY_STORAGE.substring(0, PRIMARY_STORAGE.indexOf("/", 1) + 1);
-        // 如果传入的路径头与规范头不同，说明路径不对
-        if (!path.startsWith(pathHead)) return null;
-
-        // 这一步去除路径头，假设规范路径头是/storage/
-        // 例1：/storage/6238-3332/               => 6238-3332/
-        // 例2：/storage/6238-3332/Android/       => 6238-3332/Android/
-        // 例3：/storage/emulated/0/Android/data/ => emulated/0/Android/data/
-        String pathContent = path.substring(pathHead.length());
-
-        // 取/storage/下的主储存目录，一般主储存目录是emulated/0，不需要考虑路径头不属于主储存目录的情况
-        // 例1：/storage/emulated/0 => emulated/0
-        String primaryPath = PRIMARY_STORAGE.substring(pathHead.length());
-
-        // 如果传入的目录是Android内置SD卡下的主目录，假设主目录是emulated/0，将传入路径中的emulated/0替换为primary
-        // 例1：emulated/0/Android/data/ => primary/Android/data/
-        if (pathContent.startsWith(primaryPath))
-            pathContent = "primary" + pathContent.substring(primaryPath.length());
-
-        // 拿到储存器目录的目录名
-        // 理论上讲，所传入的目录路径中，/storage/的直接子目录就是储存器（外置TF卡、内置SD卡都称为储存器）目录的目录名
-        // 例1：6238-3332/            => 6238-3332
-        // 例2：6238-3332/Android/    => 6238-3332
-        // 例3：primary/Android/data/ => primary
-        String rootPathName = pathContent.substring(0, pathContent.indexOf("/"));
-
-        // 从路径中剔除储存器目录
-        // 例1：6238-3332/            => /
-        // 例2：6238-3332/Android/    => Android/
-        // 例3：primary/Android/data/ => Android/data/
-        pathContent = pathContent.substring(rootPathName.length() + 1);
-
-        // 去除末尾的“/”
-        // 例1：/             =>
-        // 例2：Android/      => Android
-        // 例3：Android/data/ => Android/data
-        if (pathContent.endsWith("/"))
-            pathContent = pathContent.substring(0, pathContent.length() - 1);
-
-        // 将目录路径中的/全部替换为%2F
-        // 例1：              =>
-        // 例2：Android       => Android
-        // 例2：Android/data  => Android%2Fdata
-        pathContent = pathContent.replaceAll("/", "%2F");
-
-        // 得到完整Uri地址
-        return URI_HEAD + rootPathName + "%3A" + pathContent;
+     * @param filePath 文件/文件夹路径
+     * @param isFile   是否是文件类型
+     * @param newName  新文件名
+     * @return 重命名结果
+     */
+    public boolean renameFile(String filePath, boolean isFile, String newName) {
+        long start = startTiming();
+        try {
+            DocumentFile documentFile = getDocumentFile(filePath, isFile);
+            boolean result = documentFile.renameTo(newName);
+
+            // 旧路径及其子路径的缓存失效，重命名成功后缓存新路径
+            String relativePath = getRelativePath(filePath);
+            invalidatePath(relativePath);
+            // 新名称已存在时提供者可能自动改名（如"name (1)"），以重命名后的实际名称作为新路径
+            String actualName = result ? documentFile.getName() : null;
+            if (actualName != null && !TextUtils.isEmpty(relativePath)) {
+                int index = relativePath.lastIndexOf('/');
+                String newPath = index < 0 ? actualName : relativePath.substring(0, index + 1) + actualName;
+                invalidatePath(newPath);
+                documentCache.put(newPath, documentFile.getUri());
+            }
+            return result;
+        } finally {
+            endTiming("renameFile", start);
+        }
     }
 
     /**
-     * 将Uri地址为普通文件路径
+     * 使相对路径及其所有子路径的缓存和持久化索引失效
      *
-     * @param uri uri地址
-     * @return 普通文件路径
+     * @param relativePath 权限目录下的相对路径，为null时忽略
      */
-    public String uriToPath(Uri uri) {
-        return uriToPath(uri.toString());
+    void invalidatePath(String relativePath) {
+        if (relativePath == null) return;
+        documentCache.remove(relativePath);
+        if (documentIndex != null) documentIndex.remove(permissionUriStr, relativePath);
     }
 
     /**
-     * 将Uri地址为普通文件路径
+     * 设置是否启用快速解析模式，默认启用
+     * <p>
+     * 启用后逐级解析路径时，直接推算子文件的document id并查询（仅externalstorage提供者），
+     * 每一级只需一次查询；查询失败时再退回listFiles()遍历
      *
-     * @param uriStr uri地址
-     * @return 普通文件路径
+     * @param directLookup 是否启用
      */
-    public String uriToPath(String uriStr) {
-        String colon = "%3A";   // %3A代表冒号
-        String slash = "%2F";   // %2F代表斜杠
+    public void setDirectLookup(boolean directLookup) {
+        this.directLookup = directLookup;
+    }
+
+    /**
+     * 设置是否启用持久化路径索引，默认关闭
+     * <p>
+     * 启用后解析得到的路径会记录在应用私有目录的数据库中，应用重启后内存缓存为空时，
+     * 直接从索引中取出document id，只需一次单行查询确认，无需逐级遍历
+     *
+     * @param enabled 是否启用
+     */
+    public void setPersistentIndex(boolean enabled) {
+        this.documentIndex = enabled ? DocumentIndex.getInstance(context) : null;
+    }
 
-        if (!uriStr.startsWith(URI_HEAD)) return URI_HEAD;
+    /**
+     * 清空当前权限目录的持久化路径索引
+     */
+    public void clearIndex() {
+        DocumentIndex.getInstance(context).remove(permissionUriStr, "");
+    }
 
-        // 截取目录分支
-        String dirBranch = uriStr.substring(URI_HEAD.length(), uriStr.indexOf(colon));
+    /**
+     * 设置复制文件时使用的缓冲区池，默认使用BufferPool.getDefault()（64KiB缓冲区）
+     *
+     * @param bufferPool 缓冲区池
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool != null ? bufferPool : BufferPool.getDefault();
+    }
 
-        String branchPath;
-        String dirBranchHead = "/document/" + dirBranch + colon;
-        if (uriStr.contains(dirBranchHead)) {
-            branchPath = uriStr.substring(uriStr.indexOf(dirBranchHead) + dirBranchHead.length()).replaceAll(slash, "/");
-        } else {
-            // 得到在内存中的储存路径
-            branchPath = uriStr.substring(uriStr.indexOf(colon)+ colon.length()).replaceAll(slash, "/");
+    /**
+     * 设置复制、移动、删除、同步目录时并行处理的线程数，默认4
+     *
+     * @param transferThreads 线程数
+     */
+    public void setTransferThreads(int transferThreads) {
+        this.transferThreads = Math.max(transferThreads, 1);
+    }
+
+    /**
+     * 设置大文件分块并行复制，默认不启用
+     * <p>
+     * 源文件不小于threshold且两端都是普通文件时，目标文件以rw模式打开并预先调整大小，
+     * 由多个线程按位置并行读写，复制完成后检查大小；任意一端不支持随机访问时退回普通复制
+     *
+     * @param threshold 启用的最小文件大小，单位字节，小于等于0时不启用
+     * @param threads   并行的线程数
+     */
+    public void setChunkedCopy(long threshold, int threads) {
+        this.chunkedCopyThreshold = Math.max(threshold, 0);
+        this.chunkedCopyThreads = Math.max(threads, 1);
+    }
+
+    /**
+     * 设置性能统计对象，为null时关闭统计（默认关闭）
+     * <p>
+     * 同一个SAFMetrics对象可以同时设置给多个SAFUtil对象
+     *
+     * @param metrics 性能统计对象
+     */
+    public void setMetrics(SAFMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 获取当前设置的性能统计对象，未设置时返回null
+     */
+    public SAFMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 开启统计时记录开始时间
+     */
+    long startTiming() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 开启统计时记录方法耗时
+     *
+     * @param operation 方法名
+     * @param start     startTiming()的返回值
+     */
+    void endTiming(String operation, long start) {
+        SAFMetrics metrics = this.metrics;
+        if (metrics != null && start != 0) metrics.onOperation(operation, System.nanoTime() - start);
+    }
+
+    /**
+     * 清空当前权限目录的路径缓存
+     * <p>
+     * 在SAFUtil以外（如其他应用、DocumentFile的方法）修改了权限目录下的文件时调用
+     */
+    public void clearCache() {
+        documentCache.clear();
+    }
+
+    /**
+     * 设置当前权限目录的路径缓存容量，默认512条
+     * <p>
+     * 同一权限目录的所有SAFUtil对象共用一个缓存，修改对它们都生效；超出的部分按最久未访问的顺序移除，为0时不缓存
+     *
+     * @param capacity 缓存容量
+     */
+    public void setCacheCapacity(int capacity) {
+        documentCache.setCapacity(capacity);
+    }
+
+    /**
+     * 将DocumentFile文件复制到File
+     * <p>
+     * 源文件是本地文件时，通过FileChannel由内核直接传输，否则通过缓冲区复制
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @return 实际使用的复制方式，复制失败时返回null
+     */
+    public CopyMode copyFile(DocumentFile fromFile, File toFile) {
+        try {
+            return copyFileOrThrow(fromFile, toFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+
+    /**
+     * 将File复制到DocumentFile
+     * <p>
+     * 目标文件是本地文件时，通过FileChannel由内核直接传输，否则通过缓冲区复制
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @return 实际使用的复制方式，复制失败时返回null
+     */
+    public CopyMode copyFile(File fromFile, DocumentFile toFile) {
+        try {
+            return copyFileOrThrow(fromFile, toFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+
+    /**
+     * 将DocumentFile到DocumentFile
+     * <p>
+     * 源文件和目标文件都是本地文件时，通过FileChannel由内核直接传输，否则通过缓冲区复制
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @return 实际使用的复制方式，复制失败时返回null
+     */
+    public CopyMode copyFile(DocumentFile fromFile, DocumentFile toFile) {
+        try {
+            return copyFileOrThrow(fromFile, toFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 可断点续传地将DocumentFile文件复制到File
+     * <p>
+     * 复制过程中定期在应用私有目录保存检查点，复制失败或被取消时保留已复制的部分，
+     * 下次复制同一对文件且源文件未被修改时，从检查点继续复制；源文件不支持随机访问时退回普通复制
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @param signal   取消信号，可为null
+     * @return 实际使用的复制方式，复制失败或被取消时返回null
+     */
+    public CopyMode copyFileResumable(DocumentFile fromFile, File toFile, CancellationSignal signal) {
+        long start = startTiming();
+        try {
+            ParcelFileDescriptor fromDescriptor = openSeekableDescriptor(fromFile, "r");
+            if (fromDescriptor == null) return doCopyFile(fromFile, toFile);
+            FileChannel inChannel = new ParcelFileDescriptor.AutoCloseInputStream(fromDescriptor).getChannel();
+            RandomAccessFile randomAccessFile;
+            try {
+                randomAccessFile = new RandomAccessFile(toFile, "rw");
+            } catch (IOException e) {
+                closeQuietly(inChannel);
+                throw e;
+            }
+            FileChannel outChannel = randomAccessFile.getChannel();
+            resumableCopy(fromFile.getUri().toString(), toFile.getAbsolutePath(), fromFile.lastModified(),
+                    inChannel, outChannel, outChannel, signal);
+            return CopyMode.RESUMABLE;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("copyFileResumable", start);
+        }
+        return null;
+    }
+
+    /**
+     * 可断点续传地将File复制到DocumentFile
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @param signal   取消信号，可为null
+     * @return 实际使用的复制方式，复制失败或被取消时返回null
+     * @see #copyFileResumable(DocumentFile, File, CancellationSignal)
+     */
+    public CopyMode copyFileResumable(File fromFile, DocumentFile toFile, CancellationSignal signal) {
+        long start = startTiming();
+        try {
+            ParcelFileDescriptor toDescriptor = openSeekableDescriptor(toFile, "rw");
+            if (toDescriptor == null) return doCopyFile(fromFile, toFile);
+            FileInputStream fileInputStream;
+            try {
+                fileInputStream = new FileInputStream(fromFile);
+            } catch (IOException e) {
+                closeQuietly(toDescriptor);
+                throw e;
+            }
+            resumableCopy(fromFile.getAbsolutePath(), toFile.getUri().toString(), fromFile.lastModified(),
+                    fileInputStream.getChannel(), new ParcelFileDescriptor.AutoCloseOutputStream(toDescriptor).getChannel(),
+                    readerOf(toDescriptor), signal);
+            return CopyMode.RESUMABLE;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("copyFileResumable", start);
+        }
+        return null;
+    }
+
+    /**
+     * 可断点续传地将DocumentFile复制到DocumentFile
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @param signal   取消信号，可为null
+     * @return 实际使用的复制方式，复制失败或被取消时返回null
+     * @see #copyFileResumable(DocumentFile, File, CancellationSignal)
+     */
+    public CopyMode copyFileResumable(DocumentFile fromFile, DocumentFile toFile, CancellationSignal signal) {
+        long start = startTiming();
+        try {
+            ParcelFileDescriptor fromDescriptor = openSeekableDescriptor(fromFile, "r");
+            ParcelFileDescriptor toDescriptor = fromDescriptor != null ? openSeekableDescriptor(toFile, "rw") : null;
+            if (toDescriptor == null) {
+                closeQuietly(fromDescriptor);
+                return doCopyFile(fromFile, toFile);
+            }
+            resumableCopy(fromFile.getUri().toString(), toFile.getUri().toString(), fromFile.lastModified(),
+                    new ParcelFileDescriptor.AutoCloseInputStream(fromDescriptor).getChannel(),
+                    new ParcelFileDescriptor.AutoCloseOutputStream(toDescriptor).getChannel(),
+                    readerOf(toDescriptor), signal);
+            return CopyMode.RESUMABLE;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("copyFileResumable", start);
+        }
+        return null;
+    }
+
+    /**
+     * 删除所有断点续传的检查点，放弃所有未完成的复制
+     */
+    public void clearCheckpoints() {
+        File[] files = ResumableCopy.getCheckpointDir(context).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.delete()) Log.e(TAG, "clearCheckpoints: delete " + file + " failed");
+        }
+    }
+
+    /**
+     * 将File目录下的所有内容复制到DocumentFile目录下
+     * <p>
+     * 先创建好所有子目录，再多线程并行复制文件，单个文件失败不影响其他文件，失败原因记录在返回结果中
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 每个文件的复制结果
+     */
+    public TransferResult copyTree(File fromDir, DocumentFile toDir, TransferListener listener, CancellationSignal signal) {
+        return new TreeTransfer(this, context, fromDir, null, null, toDir, transferThreads, listener, signal).run(false);
+    }
+
+    /**
+     * 将DocumentFile目录下的所有内容复制到File目录下
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 每个文件的复制结果
+     */
+    public TransferResult copyTree(DocumentFile fromDir, File toDir, TransferListener listener, CancellationSignal signal) {
+        return new TreeTransfer(this, context, null, fromDir, toDir, null, transferThreads, listener, signal).run(false);
+    }
+
+    /**
+     * 将DocumentFile目录下的所有内容复制到DocumentFile目录下
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 每个文件的复制结果
+     */
+    public TransferResult copyTree(DocumentFile fromDir, DocumentFile toDir, TransferListener listener, CancellationSignal signal) {
+        return new TreeTransfer(this, context, null, fromDir, null, toDir, transferThreads, listener, signal).run(false);
+    }
+
+    /**
+     * 将File目录下的所有内容移动到DocumentFile目录下
+     * <p>
+     * 每个文件复制成功后删除源文件，全部成功后删除源目录；有文件失败或被取消时保留源目录和未移动的文件
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 每个文件的移动结果
+     */
+    public TransferResult moveTree(File fromDir, DocumentFile toDir, TransferListener listener, CancellationSignal signal) {
+        return new TreeTransfer(this, context, fromDir, null, null, toDir, transferThreads, listener, signal).run(true);
+    }
+
+    /**
+     * 将DocumentFile目录下的所有内容移动到File目录下
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 每个文件的移动结果
+     */
+    public TransferResult moveTree(DocumentFile fromDir, File toDir, TransferListener listener, CancellationSignal signal) {
+        return new TreeTransfer(this, context, null, fromDir, toDir, null, transferThreads, listener, signal).run(true);
+    }
+
+    /**
+     * 将DocumentFile目录下的所有内容移动到DocumentFile目录下
+     *
+     * @param fromDir  源目录
+     * @param toDir    目标目录
+     * @param listener 进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 每个文件的移动结果
+     */
+    public TransferResult moveTree(DocumentFile fromDir, DocumentFile toDir, TransferListener listener, CancellationSignal signal) {
+        return new TreeTransfer(this, context, null, fromDir, null, toDir, transferThreads, listener, signal).run(true);
+    }
+
+    /**
+     * File目录与DocumentFile目录之间的单向同步，等同于sync(dir, safDir, options, null, null)
+     *
+     * @param dir     File一侧的目录
+     * @param safDir  DocumentFile一侧的目录路径
+     * @param options 同步方向和选项
+     */
+    public SyncResult sync(File dir, String safDir, SyncOptions options) {
+        return sync(dir, safDir, options, null, null);
+    }
+
+    /**
+     * File目录与DocumentFile目录之间的单向同步，只复制有变化的文件
+     * <p>
+     * 先列出两侧的所有文件（DocumentFile一侧每个目录一次查询），目标不存在、大小不同、或源文件的修改时间晚于目标文件时复制，
+     * 可选按内容哈希比较；启用mirrorDeletions时删除目标中多余的文件和目录。dryRun时只返回计划，不做任何修改。
+     * 删除和复制多线程并行（线程数同setTransferThreads），单项失败不影响其他项，listener抛出的异常在全部任务结束后重新抛出，请勿在主线程调用
+     *
+     * @param dir      File一侧的目录
+     * @param safDir   DocumentFile一侧的目录路径
+     * @param options  同步方向和选项
+     * @param listener 复制进度回调，可为null
+     * @param signal   取消信号，可为null
+     * @return 同步结果；源目录不存在、任意一侧有目录无法列出时返回null
+     */
+    public SyncResult sync(File dir, String safDir, SyncOptions options, TransferListener listener, CancellationSignal signal) {
+        return new TreeSync(this, context, bufferPool, dir, safDir, options, transferThreads, listener, signal).run();
+    }
+
+    /**
+     * 将DocumentFile文件复制到File，失败时抛出异常
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @return 实际使用的复制方式
+     */
+    CopyMode copyFileOrThrow(DocumentFile fromFile, File toFile) throws IOException {
+        long start = startTiming();
+        try {
+            return doCopyFile(fromFile, toFile);
+        } finally {
+            endTiming("copyFile", start);
+        }
+    }
+
+    private CopyMode doCopyFile(DocumentFile fromFile, File toFile) throws IOException {
+        // 优先尝试FileChannel直接传输
+        ParcelFileDescriptor fromDescriptor = openSeekableDescriptor(fromFile, "r");
+        if (fromDescriptor != null && isChunked(fromDescriptor.getStatSize())) {
+            RandomAccessFile randomAccessFile;
+            try {
+                randomAccessFile = new RandomAccessFile(toFile, "rw");
+            } catch (IOException e) {
+                closeQuietly(fromDescriptor);
+                throw e;
+            }
+            chunkedCopy(new ParcelFileDescriptor.AutoCloseInputStream(fromDescriptor).getChannel(),
+                    randomAccessFile.getChannel());
+            return CopyMode.CHUNKED;
+        }
+        if (fromDescriptor != null) {
+            FileOutputStream outputStream;
+            try {
+                outputStream = new FileOutputStream(toFile);
+            } catch (IOException e) {
+                closeQuietly(fromDescriptor);
+                throw e;
+            }
+            transfer(new ParcelFileDescriptor.AutoCloseInputStream(fromDescriptor), outputStream);
+            return CopyMode.CHANNEL;
+        }
+
+        InputStream inputStream = openInputStreamOrThrow(fromFile);
+        FileOutputStream fileOutputStream;
+        try {
+            fileOutputStream = new FileOutputStream(toFile);
+        } catch (IOException e) {
+            closeQuietly(inputStream);
+            throw e;
+        }
+        copy(inputStream, fileOutputStream);
+        return CopyMode.STREAM;
+    }
+
+    /**
+     * 将File复制到DocumentFile，失败时抛出异常
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @return 实际使用的复制方式
+     */
+    CopyMode copyFileOrThrow(File fromFile, DocumentFile toFile) throws IOException {
+        long start = startTiming();
+        try {
+            return doCopyFile(fromFile, toFile);
+        } finally {
+            endTiming("copyFile", start);
+        }
+    }
+
+    private CopyMode doCopyFile(File fromFile, DocumentFile toFile) throws IOException {
+        FileInputStream fileInputStream = new FileInputStream(fromFile);
+
+        // 大文件优先分块并行复制，目标文件以rw模式打开，不会被清空，由复制过程调整大小
+        if (isChunked(fromFile.length())) {
+            ParcelFileDescriptor toDescriptor = openSeekableDescriptor(toFile, "rw");
+            if (toDescriptor != null) {
+                chunkedCopy(fileInputStream.getChannel(),
+                        new ParcelFileDescriptor.AutoCloseOutputStream(toDescriptor).getChannel());
+                return CopyMode.CHUNKED;
+            }
+        }
+
+        // 优先尝试FileChannel直接传输
+        ParcelFileDescriptor toDescriptor = openSeekableDescriptor(toFile, "w");
+        if (toDescriptor != null) {
+            transfer(fileInputStream, new ParcelFileDescriptor.AutoCloseOutputStream(toDescriptor));
+            return CopyMode.CHANNEL;
+        }
+
+        OutputStream outputStream;
+        try {
+            outputStream = openOutputStreamOrThrow(toFile);
+        } catch (IOException e) {
+            closeQuietly(fileInputStream);
+            throw e;
+        }
+        copy(fileInputStream, outputStream);
+        return CopyMode.STREAM;
+    }
+
+    /**
+     * 将DocumentFile到DocumentFile，失败时抛出异常
+     *
+     * @param fromFile 源文件
+     * @param toFile   目标文件
+     * @return 实际使用的复制方式
+     */
+    CopyMode copyFileOrThrow(DocumentFile fromFile, DocumentFile toFile) throws IOException {
+        long start = startTiming();
+        try {
+            return doCopyFile(fromFile, toFile);
+        } finally {
+            endTiming("copyFile", start);
+        }
+    }
+
+    private CopyMode doCopyFile(DocumentFile fromFile, DocumentFile toFile) throws IOException {
+        // 优先尝试FileChannel直接传输，两端都必须是本地文件
+        ParcelFileDescriptor fromDescriptor = openSeekableDescriptor(fromFile, "r");
+        if (fromDescriptor != null && isChunked(fromDescriptor.getStatSize())) {
+            ParcelFileDescriptor toDescriptor = openSeekableDescriptor(toFile, "rw");
+            if (toDescriptor != null) {
+                chunkedCopy(new ParcelFileDescriptor.AutoCloseInputStream(fromDescriptor).getChannel(),
+                        new ParcelFileDescriptor.AutoCloseOutputStream(toDescriptor).getChannel());
+                return CopyMode.CHUNKED;
+            }
+        }
+        ParcelFileDescriptor toDescriptor = fromDescriptor != null ? openSeekableDescriptor(toFile, "w") : null;
+        if (fromDescriptor != null && toDescriptor != null) {
+            transfer(new ParcelFileDescriptor.AutoCloseInputStream(fromDescriptor),
+                    new ParcelFileDescriptor.AutoCloseOutputStream(toDescriptor));
+            return CopyMode.CHANNEL;
         }
+        closeQuietly(fromDescriptor);
 
-        // 判断目录是否是Android内置SD卡下的目录，如果是将primary替换为emulated/0，primary表示主目录
-        if (dirBranch.equals("primary"))
-            dirBranch = "emulated/0";
+        InputStream inputStream = openInputStreamOrThrow(fromFile);
+        OutputStream outputStream;
+        try {
+            outputStream = openOutputStreamOrThrow(toFile);
+        } catch (IOException e) {
+            closeQuietly(inputStream);
+            throw e;
+        }
+        copy(inputStream, outputStream);
+        return CopyMode.STREAM;
+    }
+
+    /**
+     * 写入数据，完成或失败后关闭两端的流
+     *
+     * @param inputStream  输入流
+     * @param outputStream 输出流
+     */
+    void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        // 从缓冲区池中借出缓冲区，复制完成后归还
+        byte[] buffer = bufferPool.acquire();
+        try {
+            int len;
+            long total = 0;
+            while ((len = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, len);
+                total += len;
+            }
+            // 部分提供者在关闭输出流时才真正提交数据，关闭失败也要抛出
+            outputStream.flush();
+            outputStream.close();
+            if (metrics != null) metrics.onBytesCopied(total);
+        } finally {
+            bufferPool.release(buffer);
+            closeQuietly(inputStream);
+            closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * 通过FileChannel由内核直接传输数据，两端都必须是普通文件，完成或失败后关闭两端的流
+     *
+     * @param inputStream  输入流
+     * @param outputStream 输出流
+     */
+    private void transfer(FileInputStream inputStream, FileOutputStream outputStream) throws IOException {
+        FileChannel inChannel = inputStream.getChannel();
+        FileChannel outChannel = outputStream.getChannel();
+        try {
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                long count = inChannel.transferTo(position, size - position, outChannel);
+                if (count <= 0) break;
+                position += count;
+            }
+            if (position != size) throw new IOException("transfer incomplete: " + position + "/" + size);
+
+            // 以w模式打开时部分系统不会清空原文件，截掉原文件多余的部分
+            outChannel.truncate(position);
+            if (metrics != null) metrics.onBytesCopied(position);
+        } finally {
+            closeQuietly(inChannel);
+            closeQuietly(outChannel);
+        }
+    }
+
+    /**
+     * 文件大小是否达到分块并行复制的要求
+     */
+    private boolean isChunked(long size) {
+        return chunkedCopyThreshold > 0 && size >= chunkedCopyThreshold && chunkedCopyThreads > 1;
+    }
+
+    /**
+     * 分块并行复制，完成或失败后关闭两端
+     *
+     * @param inChannel  源文件
+     * @param outChannel 目标文件，需支持按位置写入和调整大小
+     */
+    private void chunkedCopy(FileChannel inChannel, FileChannel outChannel) throws IOException {
+        try {
+            long copied = new ChunkedCopy(inChannel, outChannel, ChunkedCopy.DEFAULT_CHUNK_SIZE, bufferPool)
+                    .run(chunkedCopyThreads);
+            if (metrics != null) metrics.onBytesCopied(copied);
+        } finally {
+            closeQuietly(inChannel);
+            closeQuietly(outChannel);
+        }
+    }
 
-        // 得到真实路径
-        return "/storage/" + dirBranch + "/" + branchPath;
+    /**
+     * 断点续传复制，完成或失败后关闭两端
+     *
+     * @param sourceKey    源文件的uri地址或绝对路径
+     * @param targetKey    目标文件的uri地址或绝对路径
+     * @param lastModified 源文件的修改时间
+     * @param inChannel    源文件
+     * @param outChannel   目标文件，需支持按位置写入和调整大小
+     * @param outReader    读取目标文件的FileChannel，用于校验检查点
+     * @param signal       取消信号，可为null
+     */
+    private void resumableCopy(String sourceKey, String targetKey, long lastModified, FileChannel inChannel,
+                               FileChannel outChannel, FileChannel outReader, CancellationSignal signal) throws IOException {
+        try {
+            long copied = new ResumableCopy(context, sourceKey, targetKey, lastModified, bufferPool)
+                    .run(inChannel, outChannel, outReader, signal);
+            if (metrics != null) metrics.onBytesCopied(copied);
+        } finally {
+            closeQuietly(inChannel);
+            closeQuietly(outChannel);
+        }
+    }
+
+    /**
+     * 以rw模式打开的文件描述的读取通道，只用于按位置读取，随文件描述一起关闭，不要单独关闭
+     */
+    private FileChannel readerOf(ParcelFileDescriptor descriptor) {
+        return new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+    }
+
+    /**
+     * 打开输入流，失败时抛出异常
+     *
+     * @param documentFile 文件
+     */
+    private InputStream openInputStreamOrThrow(DocumentFile documentFile) throws IOException {
+        InputStream inputStream = context.getContentResolver().openInputStream(documentFile.getUri());
+        if (inputStream == null) throw new FileNotFoundException("open input stream failed: " + documentFile.getUri());
+        return inputStream;
+    }
+
+    /**
+     * 打开输出流，失败时抛出异常
+     *
+     * @param documentFile 文件
+     */
+    private OutputStream openOutputStreamOrThrow(DocumentFile documentFile) throws IOException {
+        OutputStream outputStream = context.getContentResolver().openOutputStream(documentFile.getUri());
+        if (outputStream == null) throw new FileNotFoundException("open output stream failed: " + documentFile.getUri());
+        return outputStream;
+    }
+
+    /**
+     * 打开可随机访问的文件描述，仅当文档背后是普通文件时才能打开成功
+     * <p>
+     * 部分提供者返回的是管道，管道不支持FileChannel直接传输，此时返回null
+     *
+     * @param documentFile 文件的DocumentFile对象
+     * @param openMode     打开文件的模式
+     * @return 文档不是普通文件或打开失败时返回null
+     */
+    private ParcelFileDescriptor openSeekableDescriptor(DocumentFile documentFile, String openMode) {
+        ParcelFileDescriptor descriptor;
+        try {
+            descriptor = context.getContentResolver().openFileDescriptor(documentFile.getUri(), openMode);
+        } catch (Exception e) {
+            return null;
+        }
+        if (descriptor == null) return null;
+
+        // 管道和套接字的statSize为-1
+        if (descriptor.getStatSize() < 0) {
+            closeQuietly(descriptor);
+            return null;
+        }
+        return descriptor;
+    }
+
+    /**
+     * 关闭流、文件描述等，忽略异常
+     *
+     * @param closeable 需要关闭的对象
+     */
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 获取输入流
+     *
+     * @param filePath 文件地址
+     */
+    public InputStream getInputStream(String filePath) {
+        DocumentFile documentFile = getDocumentFile(filePath, true);
+        return getInputStream(documentFile);
+    }
+
+    /**
+     * 获取输入流
+     *
+     * @param documentFile 文件
+     */
+    public InputStream getInputStream(DocumentFile documentFile) {
+        long start = startTiming();
+        try {
+            return context.getContentResolver().openInputStream(documentFile.getUri());
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("getInputStream", start);
+        }
+        return null;
+    }
+
+    /**
+     * 打开输出流
+     *
+     * @param filePath 文件路径
+     */
+    public OutputStream getOutputStream(String filePath) {
+        DocumentFile documentFile = getDocumentFile(filePath, true);
+        return getOutputStream(documentFile);
+    }
+
+    /**
+     * 打开输出流
+     *
+     * @param documentFile 文件
+     */
+    public OutputStream getOutputStream(DocumentFile documentFile) {
+        long start = startTiming();
+        try {
+            return context.getContentResolver().openOutputStream(documentFile.getUri());
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("getOutputStream", start);
+        }
+        return null;
+    }
+
+    /**
+     * 获取DocumentFile类型的文件描述
+     *
+     * @param documentFile 文件的DocumentFile对象
+     * @param openMode     打开文件的模式，一般情况下w是写模式，r是读模式
+     */
+    public ParcelFileDescriptor getFileDescriptor(DocumentFile documentFile, String openMode) {
+        Uri uri = documentFile.getUri();
+        long start = startTiming();
+        try {
+            // 以写模式打开
+            return context.getContentResolver().openFileDescriptor(uri, openMode);
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("getFileDescriptor", start);
+        }
+        return null;
+    }
+
+    /**
+     * 以随机读取的方式打开文件
+     *
+     * @param filePath 文件路径
+     */
+    public RandomAccessDocument openRandomAccess(String filePath) {
+        DocumentFile documentFile = getDocumentFile(filePath, true);
+        if (documentFile == null) return null;
+        return openRandomAccess(documentFile);
+    }
+
+    /**
+     * 以随机读取的方式打开文件
+     * <p>
+     * 文档背后是普通文件时支持按位置读取和内存映射；提供者返回管道时退回顺序读取，此时isSeekable()返回false
+     *
+     * @param documentFile 文件
+     * @return 打开失败时返回null
+     */
+    public RandomAccessDocument openRandomAccess(DocumentFile documentFile) {
+        long start = startTiming();
+        try {
+            ParcelFileDescriptor descriptor = openSeekableDescriptor(documentFile, "r");
+            if (descriptor != null) return new RandomAccessDocument(context, documentFile.getUri(), descriptor);
+
+            // 管道，退回顺序读取
+            InputStream inputStream = openInputStreamOrThrow(documentFile);
+            return new RandomAccessDocument(context, documentFile.getUri(), inputStream, documentFile.length(), bufferPool);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            endTiming("openRandomAccess", start);
+        }
+        return null;
+    }
+
+    /**
+     * 获取文件在权限目录下的相对路径（头尾不带斜杠）
+     *
+     * @param filePath 文件路径
+     * @return 不属于权限目录时返回null
+     */
+    String getRelativePath(String filePath) {
+        filePath = addSlash(filePath);
+        if (!filePath.startsWith(permissionPath)) return null;
+        return removeSlash(filePath.substring(permissionPath.length()));
+    }
+
+    /**
+     * 计算相对路径的层级数
+     * 例：test/a/1.txt => 3
+     *
+     * @param relativePath 相对路径（头尾不带斜杠）
+     */
+    private int countLevels(String relativePath) {
+        if (relativePath.isEmpty()) return 0;
+        int levels = 1;
+        for (int i = 0; i < relativePath.length(); i++) {
+            if (relativePath.charAt(i) == '/') levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * 移除地址头和地址尾的斜杠
+     *
+     * @param path 文件地址
+     */
+    private String removeSlash(String path) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        return path;
+    }
+
+    /**
+     * 在地址头和地址尾添加斜线
+     *
+     * @param permissionDir 请求权限的目录
+     */
+    private String addSlash(String permissionDir) {
+        if (!permissionDir.startsWith("/")) {
+            permissionDir = "/" + permissionDir;
+        }
+
+        if (!permissionDir.endsWith("/")) {
+            permissionDir = permissionDir + "/";
+        }
+        return permissionDir;
+    }
+
+    /**
+     * 将目录地址转换为uri地址，此处要求绝对正确的完整的目录地址
+     * <p>
+     * 转换后的Uri地址仅申请权限时可用，不可以直接使用该Uri地址转换为DocumentFile
+     * 注：储存器（外置TF卡、内置SD卡都称为储存器）根目录除外
+     *
+     * @param path 文件路径，注意一定要传入文件的完整的绝对路径
+     * @return 格式化后的Uri地址字符串，路径不在储存器下时返回null
+     */
+    String pathToUri(String path) {
+        // 例1：/storage/6238-3332/               => content://.../tree/6238-3332%3A
+        // 例2：/storage/emulated/0/Android/data/ => content://.../tree/primary%3AAndroid%2Fdata
+        return PATH_CODEC.pathToUri(path);
+    }
+
+    /**
+     * 将Uri地址为普通文件路径
+     *
+     * @param uri uri地址
+     * @return 普通文件路径，不是外部储存的Uri地址时返回null
+     */
+    public String uriToPath(Uri uri) {
+        return uriToPath(uri.toString());
+    }
+
+    /**
+     * 将Uri地址为普通文件路径
+     *
+     * @param uriStr uri地址
+     * @return 普通文件路径，不是外部储存的Uri地址时返回null
+     */
+    public String uriToPath(String uriStr) {
+        return PATH_CODEC.uriToPath(uriStr);
     }
 }
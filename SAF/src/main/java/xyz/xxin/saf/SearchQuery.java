@@ -0,0 +1,131 @@
+package xyz.xxin.saf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 搜索条件
+ * <p>
+ * 多个通配符之间、多个文件类型之间是“或”的关系，不同种类的条件之间是“且”的关系，未设置的条件不限制。
+ * 通配符支持*、?和**：不含/的模式（如*.sav）匹配任意层的文件名；含/的模式（如saves/**&#47;*.sav）匹配相对于搜索目录的路径，
+ * 所有模式都含/时，不可能匹配的目录不会被列出
+ */
+public final class SearchQuery {
+    final List<Glob> globs = new ArrayList<>();
+    final List<String> mimeTypes = new ArrayList<>();
+    long minSize = 0;
+    long maxSize = Long.MAX_VALUE;
+    long modifiedAfter = Long.MIN_VALUE;
+    long modifiedBefore = Long.MAX_VALUE;
+    boolean includeDirectories;
+    int maxDepth = Integer.MAX_VALUE;
+
+    /**
+     * 添加通配符
+     *
+     * @param pattern 如：*.sav、saves/*.sav、**&#47;backup/*
+     */
+    public SearchQuery glob(String pattern) {
+        globs.add(new Glob(pattern));
+        return this;
+    }
+
+    /**
+     * 添加文件类型
+     *
+     * @param mimeType 如：image/png，以/*结尾时匹配该大类下的所有类型（如：image/*）
+     */
+    public SearchQuery mimeType(String mimeType) {
+        mimeTypes.add(mimeType);
+        return this;
+    }
+
+    /**
+     * 限制文件大小
+     *
+     * @param minSize 最小大小（包括），单位字节
+     * @param maxSize 最大大小（包括），单位字节
+     */
+    public SearchQuery size(long minSize, long maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * 限制修改时间
+     *
+     * @param after  不早于该时间（包括），单位毫秒
+     * @param before 不晚于该时间（包括），单位毫秒
+     */
+    public SearchQuery modified(long after, long before) {
+        this.modifiedAfter = after;
+        this.modifiedBefore = before;
+        return this;
+    }
+
+    /**
+     * 结果是否包括目录，默认只包括文件；目录只按通配符和修改时间筛选
+     */
+    public SearchQuery includeDirectories(boolean includeDirectories) {
+        this.includeDirectories = includeDirectories;
+        return this;
+    }
+
+    /**
+     * 限制搜索的深度，搜索目录的直接子项为1，默认不限制
+     */
+    public SearchQuery maxDepth(int maxDepth) {
+        this.maxDepth = Math.max(maxDepth, 1);
+        return this;
+    }
+
+    /**
+     * 文件类型是否符合，只读取了文件名和类型两列时即可判断
+     */
+    boolean acceptMimeType(String mimeType) {
+        if (mimeTypes.isEmpty()) return true;
+        if (mimeType == null) return false;
+        for (String accepted : mimeTypes) {
+            if (accepted.endsWith("/*")) {
+                if (mimeType.regionMatches(true, 0, accepted, 0, accepted.length() - 1)) return true;
+            } else if (accepted.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文件名、路径是否匹配通配符
+     */
+    boolean acceptName(String[] dirSegments, String name) {
+        if (globs.isEmpty()) return true;
+        for (Glob glob : globs) {
+            if (glob.matches(dirSegments, name)) return true;
+        }
+        return false;
+    }
+
+    boolean acceptSize(long size) {
+        return size >= minSize && size <= maxSize;
+    }
+
+    boolean acceptModified(long lastModified) {
+        return lastModified >= modifiedAfter && lastModified <= modifiedBefore;
+    }
+
+    /**
+     * 是否需要列出目录
+     *
+     * @param dirSegments 目录相对于搜索目录的路径分段
+     */
+    boolean shouldDescend(String[] dirSegments) {
+        if (dirSegments.length >= maxDepth) return false;
+        if (globs.isEmpty()) return true;
+        for (Glob glob : globs) {
+            if (glob.canMatchUnder(dirSegments)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+package xyz.xxin.saf;
+
+/**
+ * 搜索结果中的一项
+ */
+public final class SearchResult {
+    private final String path;          // 相对于搜索目录的路径
+    private final DocumentEntry entry;  // 列出目录时得到的属性
+
+    SearchResult(String path, DocumentEntry entry) {
+        this.path = path;
+        this.entry = entry;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public DocumentEntry getEntry() {
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{" +
+                "path='" + path + '\'' +
+                ", entry=" + entry +
+                '}';
+    }
+}
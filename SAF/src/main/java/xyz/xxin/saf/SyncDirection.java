@@ -0,0 +1,15 @@
+package xyz.xxin.saf;
+
+/**
+ * 单向同步的方向
+ */
+public enum SyncDirection {
+    /**
+     * 以File目录为准，更新DocumentFile目录（如从应用私有目录恢复到Android/data）
+     */
+    TO_DOCUMENT,
+    /**
+     * 以DocumentFile目录为准，更新File目录（如将Android/data备份到应用私有目录）
+     */
+    TO_FILE
+}
@@ -0,0 +1,46 @@
+package xyz.xxin.saf;
+
+/**
+ * 单向同步的选项
+ * <p>
+ * 默认只比较大小和修改时间：目标不存在、大小不同、或源文件的修改时间晚于目标文件时复制，不删除目标中多余的文件
+ */
+public final class SyncOptions {
+    final SyncDirection direction;
+    boolean mirrorDeletions;
+    boolean compareContent;
+    boolean dryRun;
+
+    /**
+     * @param direction 同步方向，必须明确指定，避免启用mirrorDeletions时删错一侧
+     */
+    public SyncOptions(SyncDirection direction) {
+        if (direction == null) throw new NullPointerException("direction == null");
+        this.direction = direction;
+    }
+
+    /**
+     * 是否删除目标中源目录没有的文件和目录，默认不删除
+     */
+    public SyncOptions mirrorDeletions(boolean mirrorDeletions) {
+        this.mirrorDeletions = mirrorDeletions;
+        return this;
+    }
+
+    /**
+     * 大小相同时是否比较内容的SHA-256，而不是修改时间，默认不比较。
+     * 适用于修改时间不可靠的情况（如恢复后目标的修改时间都是复制时间），需要读取两侧所有大小相同的文件
+     */
+    public SyncOptions compareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+        return this;
+    }
+
+    /**
+     * 是否只生成计划而不执行，默认执行
+     */
+    public SyncOptions dryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+}
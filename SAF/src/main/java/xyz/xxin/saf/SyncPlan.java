@@ -0,0 +1,115 @@
+package xyz.xxin.saf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单向同步的计划，路径均相对于同步的目录，按路径排列
+ */
+public final class SyncPlan {
+    private final List<Action> added = new ArrayList<>();
+    private final List<Action> updated = new ArrayList<>();
+    private final List<Action> deleted = new ArrayList<>();
+    private final List<String> conflicts = new ArrayList<>();
+
+    SyncPlan() {
+    }
+
+    void onAdded(Action action) {
+        added.add(action);
+    }
+
+    void onUpdated(Action action) {
+        updated.add(action);
+    }
+
+    void onDeleted(Action action) {
+        deleted.add(action);
+    }
+
+    void onConflict(String path) {
+        conflicts.add(path);
+    }
+
+    /**
+     * 目标中不存在、需要复制的文件
+     */
+    public List<Action> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * 目标中已存在但有变化、需要覆盖的文件
+     */
+    public List<Action> getUpdated() {
+        return Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * 需要从目标中删除的文件和目录，删除的目录下的子项不再单独列出
+     */
+    public List<Action> getDeleted() {
+        return Collections.unmodifiableList(deleted);
+    }
+
+    /**
+     * 目标中同名的是目录而源是文件（或相反）、且未启用mirrorDeletions而无法同步的路径
+     */
+    public List<String> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * 需要复制的字节数
+     */
+    public long getCopyBytes() {
+        long bytes = 0;
+        for (Action action : added) bytes += action.size;
+        for (Action action : updated) bytes += action.size;
+        return bytes;
+    }
+
+    /**
+     * 是否不需要任何操作
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && deleted.isEmpty() && conflicts.isEmpty();
+    }
+
+    /**
+     * 单个文件或目录的操作
+     */
+    public static final class Action {
+        private final String path;          // 相对于同步目录的路径
+        private final boolean directory;    // 是否是目录，只有删除时可能为true
+        private final long size;            // 文件大小，目录为0
+
+        Action(String path, boolean directory, long size) {
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "Action{" +
+                    "path='" + path + '\'' +
+                    ", directory=" + directory +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+}
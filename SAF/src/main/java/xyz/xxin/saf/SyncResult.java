@@ -0,0 +1,64 @@
+package xyz.xxin.saf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单向同步的结果
+ */
+public final class SyncResult {
+    private final SyncPlan plan;                                // 执行的计划
+    private final List<TransferResult.FileResult> results;      // 每项删除、复制的结果，按完成顺序排列
+    private final boolean dryRun;                               // 是否只生成了计划
+    private final boolean cancelled;                            // 是否被取消
+
+    SyncResult(SyncPlan plan, List<TransferResult.FileResult> results, boolean dryRun, boolean cancelled) {
+        this.plan = plan;
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.dryRun = dryRun;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * 同步计划，dryRun时只有计划
+     */
+    public SyncPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * 已执行的每项删除、复制的结果，删除的结果中copyMode为null
+     */
+    public List<TransferResult.FileResult> getResults() {
+        return results;
+    }
+
+    /**
+     * 执行失败的项
+     */
+    public List<TransferResult.FileResult> getFailed() {
+        List<TransferResult.FileResult> failed = new ArrayList<>();
+        for (TransferResult.FileResult result : results) {
+            if (!result.isSuccess()) failed.add(result);
+        }
+        return failed;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 是否已执行、全部成功且没有冲突
+     */
+    public boolean isSuccess() {
+        if (dryRun || cancelled || !plan.getConflicts().isEmpty()) return false;
+        int total = plan.getAdded().size() + plan.getUpdated().size() + plan.getDeleted().size();
+        return results.size() == total && getFailed().isEmpty();
+    }
+}
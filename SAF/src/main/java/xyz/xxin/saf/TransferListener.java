@@ -0,0 +1,19 @@
+package xyz.xxin.saf;
+
+/**
+ * 目录复制、移动的进度回调
+ * <p>
+ * 在执行复制的工作线程中回调，多个线程的回调不会同时进行，但回调中不要执行耗时操作，也不要直接更新UI
+ */
+public interface TransferListener {
+    /**
+     * 每个文件处理完成（无论成功还是失败）后回调
+     *
+     * @param result        刚处理完成的文件
+     * @param finished      已处理完成的文件数
+     * @param total         文件总数
+     * @param finishedBytes 已处理完成的字节数
+     * @param totalBytes    总字节数
+     */
+    void onProgress(TransferResult.FileResult result, int finished, int total, long finishedBytes, long totalBytes);
+}
@@ -0,0 +1,106 @@
+package xyz.xxin.saf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 目录复制、移动的结果，包含每个文件各自的结果
+ */
+public final class TransferResult {
+    private final List<FileResult> results;     // 每个文件的结果，按完成顺序排列
+    private final int total;                    // 文件总数
+    private final boolean cancelled;            // 是否被取消
+
+    TransferResult(List<FileResult> results, int total, boolean cancelled) {
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.total = total;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * 所有已处理文件的结果，被取消时不包含未处理的文件
+     */
+    public List<FileResult> getResults() {
+        return results;
+    }
+
+    /**
+     * 处理失败的文件
+     */
+    public List<FileResult> getFailed() {
+        List<FileResult> failed = new ArrayList<>();
+        for (FileResult result : results) {
+            if (!result.isSuccess()) failed.add(result);
+        }
+        return failed;
+    }
+
+    /**
+     * 文件总数
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * 是否被取消
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 是否全部成功
+     */
+    public boolean isSuccess() {
+        return !cancelled && results.size() == total && getFailed().isEmpty();
+    }
+
+    /**
+     * 单个文件的处理结果
+     */
+    public static final class FileResult {
+        private final String path;          // 文件相对于源目录的路径
+        private final long size;            // 文件大小
+        private final CopyMode copyMode;    // 实际使用的复制方式，失败时为null
+        private final Exception error;      // 失败原因，成功时为null
+
+        FileResult(String path, long size, CopyMode copyMode, Exception error) {
+            this.path = path;
+            this.size = size;
+            this.copyMode = copyMode;
+            this.error = error;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public CopyMode getCopyMode() {
+            return copyMode;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "FileResult{" +
+                    "path='" + path + '\'' +
+                    ", size=" + size +
+                    ", copyMode=" + copyMode +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.DocumentsContract;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 目录删除的执行过程
+ * <p>
+ * 操作目录只解析一次。提供者标记了FLAG_SUPPORTS_DELETE的目录，一次deleteDocument删除整个子目录；
+ * 否则先删除其下的所有子项，再删除已清空的目录。需要删除的项按深度分批，最深的一批先删，同一批内多线程并行
+ */
+final class TreeDelete {
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final String dirPath;               // 操作目录
+    private final DocumentFilter filter;        // 为null时删除整个操作目录，否则只删除选中的项，保留操作目录
+    private final int threads;                  // 并行删除的线程数
+    private final DeleteListener listener;      // 进度回调，可为null
+    private final CancellationSignal signal;    // 取消信号，可为null
+
+    private final TreeMap<Integer, List<Item>> batches = new TreeMap<>();   // 深度 => 该深度需要删除的项
+    private final List<DeleteResult.Failure> failed = new ArrayList<>();
+    private String rootPath;                    // 操作目录在权限目录下的相对路径
+    private int totalFiles;                     // 需要删除的文件总数
+    private long totalBytes;                    // 需要删除的总字节数
+    private int deletedFiles;
+    private long deletedBytes;
+
+    TreeDelete(SAFUtil safUtil, Context context, String dirPath, DocumentFilter filter, int threads,
+               DeleteListener listener, CancellationSignal signal) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.dirPath = dirPath;
+        this.filter = filter;
+        this.threads = Math.max(threads, 1);
+        this.listener = listener;
+        this.signal = signal;
+    }
+
+    /**
+     * 执行删除
+     */
+    DeleteResult run() {
+        long start = safUtil.startTiming();
+        try {
+            return execute();
+        } finally {
+            safUtil.endTiming(filter == null ? "deleteTree" : "purge", start);
+        }
+    }
+
+    private DeleteResult execute() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return fail(new IOException("tree documents require API 21"));
+        }
+        // 不能用getDocumentFile，目录不存在时会被自动创建
+        DocumentEntry root = safUtil.queryExisting(dirPath);
+        if (root == null || !root.isDirectory()) return fail(new IOException("not exists: " + dirPath));
+        rootPath = safUtil.getRelativePath(dirPath);
+
+        // 不需要进度也不筛选时，一次调用删除整个目录，不遍历
+        if (filter == null && listener == null) {
+            try {
+                delete(root.getUri());
+                invalidate("");
+                return new DeleteResult(0, 0, 0, 0, failed, false);
+            } catch (IOException ignored) {
+                // 提供者不支持直接删除整个目录，遍历后自下而上删除
+            }
+        }
+
+        Node rootNode = new Node(null, "", root.getUri(), true, 0);
+        walk(rootNode);
+        if (isCancelled()) return result();
+        plan(rootNode, 0, filter == null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // 最深的一批先删，父目录在子项都删除后才删除
+            for (List<Item> batch : batches.descendingMap().values()) {
+                if (isCancelled()) break;
+                List<Future<?>> futures = new ArrayList<>(batch.size());
+                for (final Item item : batch) {
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isCancelled()) return;
+                            onFinished(item, deleteItem(item));
+                        }
+                    }));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        onFailed(batch.get(i), e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            if (signal != null) signal.cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+        return result();
+    }
+
+    /**
+     * 遍历目录，每个目录只做一次查询，统计每个目录下的文件数和字节数
+     */
+    private void walk(Node dir) {
+        DocumentIterator iterator = safUtil.iterate(DocumentFile.fromTreeUri(context, dir.uri));
+        if (iterator == null) {
+            dir.markFailed();
+            failed.add(new DeleteResult.Failure(dir.path, new IOException("list failed: " + dir.uri)));
+            return;
+        }
+
+        try {
+            while (iterator.hasNext()) {
+                if (isCancelled()) return;
+                DocumentEntry entry = iterator.next();
+                if (entry.getName() == null) continue;
+                Node child = new Node(dir, childPath(dir.path, entry.getName()), entry.getUri(),
+                        entry.isDirectory(), entry.getFlags());
+                child.entry = entry;
+                if (!entry.isDirectory()) {
+                    child.files = 1;
+                    child.bytes = entry.length();
+                }
+                dir.children.add(child);
+            }
+        } catch (RuntimeException e) {
+            // 列出途中游标失效，目录只列出了一部分，按列出失败处理
+            dir.markFailed();
+            failed.add(new DeleteResult.Failure(dir.path, new IOException("list failed: " + dir.uri, e)));
+        } finally {
+            iterator.close();
+        }
+
+        for (Node child : dir.children) {
+            if (child.directory) walk(child);
+            dir.files += child.files;
+            dir.bytes += child.bytes;
+        }
+    }
+
+    /**
+     * 安排需要删除的项
+     *
+     * @param node     目录
+     * @param depth    目录的深度，操作目录为0
+     * @param selected 目录是否需要删除（包括其下的所有子项）
+     */
+    private void plan(Node node, int depth, boolean selected) {
+        // 提供者支持时一次删除整个子目录；操作目录本身总是逐项删除，以便回调进度。
+        // 未能完整列出的目录不能整个删除，否则会删掉未列出、未经筛选的子项
+        if (selected && node.parent != null && !node.failed && (node.flags & DocumentsContract.Document.FLAG_SUPPORTS_DELETE) != 0) {
+            add(depth, new Item(node, node.files, node.bytes, false));
+            return;
+        }
+
+        for (Node child : node.children) {
+            boolean childSelected = selected || filter.accept(child.path, child.entry);
+            if (child.directory) {
+                plan(child, depth + 1, childSelected);
+            } else if (childSelected) {
+                add(depth + 1, new Item(child, 1, child.bytes, false));
+            }
+        }
+        // 子项都删除后再删除已清空的目录
+        if (selected) add(depth, new Item(node, 0, 0, true));
+    }
+
+    private void add(int depth, Item item) {
+        List<Item> batch = batches.get(depth);
+        if (batch == null) {
+            batch = new ArrayList<>();
+            batches.put(depth, batch);
+        }
+        batch.add(item);
+        totalFiles += item.files;
+        totalBytes += item.bytes;
+    }
+
+    /**
+     * 删除一项
+     *
+     * @return 失败原因，成功时返回null
+     */
+    private Exception deleteItem(Item item) {
+        if (item.emptied && item.node.failed) return new IOException("directory not empty: " + item.node.path);
+        try {
+            delete(item.node.uri);
+            invalidate(item.node.path);
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * 通过DocumentsContract删除文档，目录会连同其下的所有子项一起删除
+     */
+    private void delete(Uri uri) throws IOException {
+        boolean deleted;
+        try {
+            deleted = DocumentsContract.deleteDocument(context.getContentResolver(), uri);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // 提供者抛出的其他异常
+            throw new IOException("delete failed: " + uri, e);
+        }
+        if (!deleted) throw new IOException("delete failed: " + uri);
+    }
+
+    /**
+     * 删除成功后使该路径及其子路径的缓存失效
+     */
+    private void invalidate(String path) {
+        if (rootPath == null) return;
+        safUtil.invalidatePath(childPath(rootPath, path));
+    }
+
+    /**
+     * 记录单项的结果并回调进度，回调抛出的异常记录在失败的项中
+     */
+    private synchronized void onFinished(Item item, Exception error) {
+        if (error == null) {
+            deletedFiles += item.files;
+            deletedBytes += item.bytes;
+        } else {
+            item.node.markFailed();
+            failed.add(new DeleteResult.Failure(item.node.path, error));
+        }
+        if (listener == null) return;
+        try {
+            listener.onProgress(item.node.path, error, deletedFiles, totalFiles, deletedBytes, totalBytes);
+        } catch (RuntimeException e) {
+            failed.add(new DeleteResult.Failure(item.node.path, e));
+        }
+    }
+
+    /**
+     * 删除任务异常结束时记录失败，其上级目录不再删除
+     */
+    private synchronized void onFailed(Item item, ExecutionException e) {
+        item.node.markFailed();
+        failed.add(new DeleteResult.Failure(item.node.path, e));
+    }
+
+    private synchronized DeleteResult result() {
+        return new DeleteResult(deletedFiles, totalFiles, deletedBytes, totalBytes, failed, isCancelled());
+    }
+
+    private DeleteResult fail(Exception e) {
+        failed.add(new DeleteResult.Failure("", e));
+        return new DeleteResult(0, 0, 0, 0, failed, false);
+    }
+
+    private boolean isCancelled() {
+        return signal != null && signal.isCanceled();
+    }
+
+    private static String childPath(String parentPath, String name) {
+        if (name.isEmpty()) return parentPath;
+        return parentPath.isEmpty() ? name : parentPath + "/" + name;
+    }
+
+    /**
+     * 遍历得到的文件或目录
+     */
+    private static final class Node {
+        final Node parent;
+        final String path;          // 相对于操作目录的路径
+        final Uri uri;
+        final boolean directory;
+        final int flags;            // DocumentsContract.Document.FLAG_*
+        final List<Node> children = new ArrayList<>();
+        DocumentEntry entry;        // 操作目录为null
+        int files;                  // 目录下（包括子目录）的文件数，文件为1
+        long bytes;                 // 目录下（包括子目录）的字节数
+        volatile boolean failed;    // 自身或其下有项删除失败，目录无法清空
+
+        Node(Node parent, String path, Uri uri, boolean directory, int flags) {
+            this.parent = parent;
+            this.path = path;
+            this.uri = uri;
+            this.directory = directory;
+            this.flags = flags;
+        }
+
+        /**
+         * 标记失败，其所有上级目录都无法清空
+         */
+        void markFailed() {
+            for (Node node = this; node != null; node = node.parent) {
+                node.failed = true;
+            }
+        }
+    }
+
+    /**
+     * 需要删除的一项：文件、整个子目录或已清空的目录
+     */
+    private static final class Item {
+        final Node node;
+        final int files;            // 删除后减少的文件数
+        final long bytes;           // 删除后减少的字节数
+        final boolean emptied;      // 是否是子项删除后才删除的目录
+
+        Item(Node node, int files, long bytes, boolean emptied) {
+            this.node = node;
+            this.files = files;
+            this.bytes = bytes;
+            this.emptied = emptied;
+        }
+    }
+}
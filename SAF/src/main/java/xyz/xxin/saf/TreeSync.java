@@ -0,0 +1,542 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * File目录与DocumentFile目录之间单向同步的执行过程
+ * <p>
+ * 先列出两侧的所有文件（DocumentFile一侧通过TreeWalker并行列出，每个目录一次查询），按大小、修改时间（可选内容哈希）
+ * 生成计划；执行时先删除，再创建目录，最后把需要复制的文件分配到固定数量的线程中并行复制
+ */
+final class TreeSync {
+    private static final String TAG = TreeSync.class.getSimpleName();
+
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final BufferPool bufferPool;
+    private final File localDir;                    // File一侧的目录
+    private final String safDir;                    // DocumentFile一侧的目录路径
+    private final SyncOptions options;
+    private final boolean toDocument;               // 是否以File目录为源
+    private final int threads;                      // 并行处理的线程数
+    private final TransferListener listener;        // 复制进度回调，可为null
+    private final CancellationSignal signal;        // 取消信号，可为null
+
+    // 两侧的文件和目录，按路径排列，父目录在子项之前
+    private final Map<String, Item> localFiles = new TreeMap<>();
+    private final Map<String, Item> localDirs = new TreeMap<>();
+    private final Map<String, Item> safFiles = new TreeMap<>();
+    private final Map<String, Item> safDirs = new TreeMap<>();
+
+    private final Map<String, DocumentFile> targetDocDirs = new HashMap<>();    // 目标中可用的目录
+    private final Set<String> deletedDirs = new HashSet<>();                    // 计划删除的目标目录
+
+    private final List<TransferResult.FileResult> results = new ArrayList<>();
+    private int copyTotal;
+    private int copyFinished;
+    private long totalBytes;
+    private long finishedBytes;
+
+    TreeSync(SAFUtil safUtil, Context context, BufferPool bufferPool, File localDir, String safDir,
+             SyncOptions options, int threads, TransferListener listener, CancellationSignal signal) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.bufferPool = bufferPool;
+        this.localDir = localDir;
+        this.safDir = safDir;
+        this.options = options;
+        this.toDocument = options.direction == SyncDirection.TO_DOCUMENT;
+        this.threads = Math.max(threads, 1);
+        this.listener = listener;
+        this.signal = signal;
+    }
+
+    /**
+     * 生成计划并执行
+     *
+     * @return 源目录不存在、任意一侧有目录无法列出时返回null
+     */
+    SyncResult run() {
+        long start = safUtil.startTiming();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return execute(executor);
+        } catch (IOException e) {
+            Log.e(TAG, "sync: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            if (signal != null) signal.cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            executor.shutdown();
+            safUtil.endTiming("sync", start);
+        }
+    }
+
+    private SyncResult execute(ExecutorService executor) throws IOException, InterruptedException {
+        // 源目录必须存在，目标目录不存在时视为空目录
+        if (localDir.isDirectory()) {
+            walk(localDir, "");
+        } else if (toDocument) {
+            throw new IOException(localDir + " not a directory");
+        }
+        // DocumentFile目录不存在时不遍历，作为目标时视为空目录，执行计划时才创建（dryRun不做任何修改）
+        boolean documentDirMissing = isDocumentDirMissing();
+        if (!toDocument && documentDirMissing) throw new IOException(safDir + " not exists");
+        if (!documentDirMissing) walkDocuments();
+        if (isCancelled()) return new SyncResult(new SyncPlan(), results, options.dryRun, true);
+
+        SyncPlan plan = plan(executor);
+        if (options.dryRun || isCancelled()) return new SyncResult(plan, results, options.dryRun, isCancelled());
+
+        // 先删除，腾出与源文件、源目录同名的位置
+        List<Runnable> deletions = new ArrayList<>();
+        for (final SyncPlan.Action action : plan.getDeleted()) {
+            deletions.add(new Runnable() {
+                @Override
+                public void run() {
+                    onFinished(delete(action), false);
+                }
+            });
+        }
+        runAll(executor, deletions);
+        if (isCancelled()) return new SyncResult(plan, results, false, true);
+
+        // 再创建源目录中的所有目录，包括空目录
+        if (!createDirs()) return new SyncResult(plan, results, false, isCancelled());
+
+        // 并行复制
+        List<SyncPlan.Action> copyActions = new ArrayList<>(plan.getAdded());
+        copyActions.addAll(plan.getUpdated());
+        List<Runnable> copies = new ArrayList<>(copyActions.size());
+        for (final SyncPlan.Action action : copyActions) {
+            copyTotal++;
+            totalBytes += action.getSize();
+            copies.add(new Runnable() {
+                @Override
+                public void run() {
+                    onFinished(copy(action), true);
+                }
+            });
+        }
+        runAll(executor, copies);
+
+        synchronized (this) {
+            return new SyncResult(plan, results, false, isCancelled());
+        }
+    }
+
+    /**
+     * 遍历File目录
+     */
+    private void walk(File dir, String path) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) throw new IOException("list failed: " + dir);
+        for (File child : children) {
+            if (isCancelled()) return;
+            String childPath = childPath(path, child.getName());
+            if (child.isDirectory()) {
+                localDirs.put(childPath, new Item(0, child.lastModified(), child, null));
+                walk(child, childPath);
+            } else {
+                localFiles.put(childPath, new Item(child.length(), child.lastModified(), child, null));
+            }
+        }
+    }
+
+    /**
+     * DocumentFile目录是否不存在，不会创建目录。作为源时不存在不能当作空目录，否则启用mirrorDeletions时会清空目标；
+     * 作为目标时不存在则视为空目录，直到执行时才创建
+     */
+    private boolean isDocumentDirMissing() {
+        DocumentEntry entry = safUtil.queryExisting(safDir);
+        return entry == null || !entry.isDirectory();
+    }
+
+    /**
+     * 并行遍历DocumentFile目录，有目录无法列出时抛出异常，避免据此删除或覆盖
+     */
+    private void walkDocuments() throws IOException {
+        final IOException[] listError = new IOException[1];
+        boolean completed = safUtil.treeWalker(safDir).setThreads(threads).setMaxQueries(threads).walk(new TreeVisitor() {
+            @Override
+            public VisitResult preVisitDirectory(String path, DocumentEntry dir) {
+                if (path.isEmpty()) {
+                    targetDocDirs.put("", dir.toDocumentFile(context));
+                } else {
+                    safDirs.put(path, new Item(0, dir.lastModified(), null, dir.getUri()));
+                }
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult visitFile(String path, DocumentEntry file) {
+                safFiles.put(path, new Item(file.length(), file.lastModified(), null, file.getUri()));
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisitDirectory(String path, DocumentEntry dir, IOException error) {
+                if (error == null) return VisitResult.CONTINUE;
+                listError[0] = new IOException("list " + path + " failed: " + error.getMessage(), error);
+                return VisitResult.TERMINATE;
+            }
+        }, signal);
+        if (listError[0] != null) throw listError[0];
+        if (!completed && !isCancelled()) throw new IOException("walk " + safDir + " failed");
+    }
+
+    /**
+     * 对比两侧生成计划
+     */
+    private SyncPlan plan(ExecutorService executor) throws InterruptedException {
+        Map<String, Item> sourceFiles = toDocument ? localFiles : safFiles;
+        Map<String, Item> sourceDirs = toDocument ? localDirs : safDirs;
+        Map<String, Item> targetFiles = toDocument ? safFiles : localFiles;
+        Map<String, Item> targetDirs = toDocument ? safDirs : localDirs;
+        SyncPlan plan = new SyncPlan();
+
+        // 目标中多余的目录（以及与源文件同名的目录），只记录最上层的一个
+        List<SyncPlan.Action> deleted = new ArrayList<>();
+        for (String path : targetDirs.keySet()) {
+            if (sourceDirs.containsKey(path) || isUnderDeleted(path)) continue;
+            if (options.mirrorDeletions) {
+                deletedDirs.add(path);
+                deleted.add(new SyncPlan.Action(path, true, 0));
+            } else if (sourceFiles.containsKey(path)) {
+                plan.onConflict(path);
+            }
+        }
+        // 目标中多余的文件（以及与源目录同名的文件）
+        for (Map.Entry<String, Item> entry : targetFiles.entrySet()) {
+            String path = entry.getKey();
+            if (sourceFiles.containsKey(path) || isUnderDeleted(path)) continue;
+            if (options.mirrorDeletions) {
+                deleted.add(new SyncPlan.Action(path, false, entry.getValue().size));
+            } else if (sourceDirs.containsKey(path)) {
+                plan.onConflict(path);
+            }
+        }
+
+        // 源文件与目标文件对比
+        List<SyncPlan.Action> added = new ArrayList<>();
+        List<SyncPlan.Action> updated = new ArrayList<>();
+        final List<String> hashPending = new ArrayList<>();
+        for (Map.Entry<String, Item> entry : sourceFiles.entrySet()) {
+            String path = entry.getKey();
+            Item source = entry.getValue();
+            Item target = targetFiles.get(path);
+            if (target == null) {
+                // 与目标中的目录同名且未启用mirrorDeletions时是冲突，已经记录
+                if (!targetDirs.containsKey(path) || deletedDirs.contains(path)) {
+                    added.add(new SyncPlan.Action(path, false, source.size));
+                }
+            } else if (source.size != target.size) {
+                updated.add(new SyncPlan.Action(path, false, source.size));
+            } else if (options.compareContent) {
+                hashPending.add(path);
+            } else if (source.lastModified > target.lastModified) {
+                updated.add(new SyncPlan.Action(path, false, source.size));
+            }
+        }
+
+        // 大小相同时比较内容，两侧并行读取
+        if (!hashPending.isEmpty()) {
+            final Set<String> changed = new HashSet<>();
+            List<Runnable> tasks = new ArrayList<>();
+            for (final String path : hashPending) {
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean same;
+                        try {
+                            same = hash(localFiles.get(path)).equals(hash(safFiles.get(path)));
+                        } catch (Exception e) {
+                            // 无法读取时视为已变化，交给复制时报告失败，不能当作相同而跳过
+                            if (!isCancelled()) Log.e(TAG, "sync: hash " + path + " failed: " + e);
+                            same = false;
+                        }
+                        if (!same) {
+                            synchronized (changed) {
+                                changed.add(path);
+                            }
+                        }
+                    }
+                });
+            }
+            runAll(executor, tasks);
+            for (String path : hashPending) {
+                if (changed.contains(path)) updated.add(new SyncPlan.Action(path, false, sourceFiles.get(path).size));
+            }
+            sortByPath(updated);
+        }
+
+        sortByPath(deleted);
+        for (SyncPlan.Action action : added) plan.onAdded(action);
+        for (SyncPlan.Action action : updated) plan.onUpdated(action);
+        for (SyncPlan.Action action : deleted) plan.onDeleted(action);
+        return plan;
+    }
+
+    /**
+     * 计算文件内容的SHA-256，DocumentFile一侧的结果与DuplicateFinder共用缓存
+     */
+    private String hash(Item item) throws IOException {
+        String key = null;
+        HashCache.Entry cached = null;
+        if (item.uri != null) {
+            key = item.uri.getAuthority() + "\n" + DocumentsContract.getDocumentId(item.uri);
+            cached = HashCache.getInstance().get(key, item.size, item.lastModified);
+            if (cached != null && cached.fullHash != null) return cached.fullHash;
+        }
+
+        InputStream inputStream = item.file != null
+                ? new FileInputStream(item.file)
+                : context.getContentResolver().openInputStream(item.uri);
+        if (inputStream == null) throw new IOException("open input stream failed: " + item.uri);
+        MessageDigest digest = DuplicateFinder.newDigest();
+        byte[] buffer = bufferPool.acquire();
+        try {
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                if (isCancelled()) throw new InterruptedIOException("cancelled");
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            bufferPool.release(buffer);
+            inputStream.close();
+        }
+        String hash = DuplicateFinder.toHex(digest.digest());
+        if (key != null) {
+            // 保留DuplicateFinder已经计算的头尾哈希
+            HashCache.getInstance().put(key, cached != null
+                    ? new HashCache.Entry(item.size, item.lastModified, cached.partialSize, cached.partialHash, hash)
+                    : new HashCache.Entry(item.size, item.lastModified, 0, null, hash));
+        }
+        return hash;
+    }
+
+    /**
+     * 创建源目录中的所有目录，目标目录本身也一并创建
+     *
+     * @return 目标目录本身无法创建时返回false
+     */
+    private boolean createDirs() {
+        Map<String, Item> sourceDirs = toDocument ? localDirs : safDirs;
+        if (!toDocument) {
+            localDir.mkdirs();
+            for (String path : sourceDirs.keySet()) {
+                new File(localDir, path).mkdirs();
+            }
+            return localDir.isDirectory();
+        }
+
+        // 目标目录不存在时没有遍历，此时才创建
+        if (!targetDocDirs.containsKey("")) targetDocDirs.put("", safUtil.getDocumentFile(safDir, false));
+        if (targetDocDirs.get("") == null) return false;
+        for (String path : sourceDirs.keySet()) {
+            if (isCancelled()) return true;
+            DocumentFile parent = targetDocDirs.get(parentPath(path));
+            if (parent == null) continue;
+            // 与目标中的文件同名且未删除时，创建目录会被提供者自动改名，跳过，其下的文件复制时报错
+            if (!options.mirrorDeletions && safFiles.containsKey(path)) continue;
+            Item existing = safDirs.get(path);
+            DocumentFile dir;
+            if (existing != null && !isUnderDeleted(path)) {
+                dir = DocumentFile.fromTreeUri(context, existing.uri);
+            } else {
+                SAFMetrics metrics = safUtil.getMetrics();
+                if (metrics != null) metrics.onCreate();
+                dir = parent.createDirectory(name(path));
+            }
+            if (dir != null) targetDocDirs.put(path, dir);
+        }
+        return true;
+    }
+
+    /**
+     * 复制单个文件，目标中已存在的文件直接覆盖
+     */
+    private TransferResult.FileResult copy(SyncPlan.Action action) {
+        String path = action.getPath();
+        try {
+            CopyMode copyMode;
+            if (toDocument) {
+                Item target = isUnderDeleted(path) ? null : safFiles.get(path);
+                DocumentFile targetFile;
+                if (target != null) {
+                    targetFile = DocumentFile.fromTreeUri(context, target.uri);
+                } else {
+                    DocumentFile parent = targetDocDirs.get(parentPath(path));
+                    if (parent == null) throw new IOException("create directory failed: " + parentPath(path));
+                    SAFMetrics metrics = safUtil.getMetrics();
+                    if (metrics != null) metrics.onCreate();
+                    targetFile = parent.createFile("", name(path));
+                }
+                if (targetFile == null) throw new IOException("create file failed: " + path);
+                copyMode = safUtil.copyFileOrThrow(localFiles.get(path).file, targetFile);
+            } else {
+                Item source = safFiles.get(path);
+                File targetFile = new File(localDir, path);
+                copyMode = safUtil.copyFileOrThrow(DocumentFile.fromTreeUri(context, source.uri), targetFile);
+                // 保留源文件的修改时间，失败时目标的修改时间晚于源文件，下次同步时同样视为未变化
+                if (source.lastModified > 0) targetFile.setLastModified(source.lastModified);
+            }
+            return new TransferResult.FileResult(path, action.getSize(), copyMode, null);
+        } catch (Exception e) {
+            return new TransferResult.FileResult(path, action.getSize(), null, e);
+        }
+    }
+
+    /**
+     * 删除目标中的单个文件或目录，目录连同其下所有子项一起删除
+     */
+    private TransferResult.FileResult delete(SyncPlan.Action action) {
+        String path = action.getPath();
+        try {
+            boolean deleted;
+            if (toDocument) {
+                Item item = action.isDirectory() ? safDirs.get(path) : safFiles.get(path);
+                deleted = DocumentFile.fromTreeUri(context, item.uri).delete();
+                if (deleted) safUtil.invalidatePath(safUtil.getRelativePath(safDir + "/" + path));
+            } else {
+                deleted = deleteRecursively(new File(localDir, path));
+            }
+            if (!deleted) throw new IOException("delete failed: " + path);
+            return new TransferResult.FileResult(path, action.getSize(), null, null);
+        } catch (Exception e) {
+            return new TransferResult.FileResult(path, action.getSize(), null, e);
+        }
+    }
+
+    /**
+     * 记录单个操作的结果，复制时回调进度
+     */
+    private synchronized void onFinished(TransferResult.FileResult result, boolean copied) {
+        results.add(result);
+        if (!copied) return;
+        copyFinished++;
+        finishedBytes += result.getSize();
+        if (listener != null) listener.onProgress(result, copyFinished, copyTotal, finishedBytes, totalBytes);
+    }
+
+    /**
+     * 并行执行并等待全部完成，被取消后未开始的任务不再执行
+     * <p>
+     * 任务自身会捕获读写异常，能抛出的只有回调中的异常，等全部任务结束后在调用线程中重新抛出
+     */
+    private void runAll(ExecutorService executor, List<Runnable> tasks) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (final Runnable task : tasks) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled()) task.run();
+                }
+            }));
+        }
+        Throwable error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null) error = e.getCause();
+            }
+        }
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+    }
+
+    /**
+     * 路径的某一级上级目录是否已计划删除
+     */
+    private boolean isUnderDeleted(String path) {
+        for (String parent = parentPath(path); !parent.isEmpty(); parent = parentPath(parent)) {
+            if (deletedDirs.contains(parent)) return true;
+        }
+        return deletedDirs.contains(path);
+    }
+
+    private boolean isCancelled() {
+        return signal != null && signal.isCanceled();
+    }
+
+    private static void sortByPath(List<SyncPlan.Action> actions) {
+        Collections.sort(actions, new Comparator<SyncPlan.Action>() {
+            @Override
+            public int compare(SyncPlan.Action o1, SyncPlan.Action o2) {
+                return o1.getPath().compareTo(o2.getPath());
+            }
+        });
+    }
+
+    /**
+     * 删除File文件或目录及其所有子项
+     */
+    private static boolean deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        return file.delete();
+    }
+
+    private static String childPath(String parentPath, String name) {
+        return parentPath.isEmpty() ? name : parentPath + "/" + name;
+    }
+
+    private static String parentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+
+    private static String name(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 某一侧的文件或目录，File和Uri二者只有一个不为null
+     */
+    private static final class Item {
+        final long size;            // 文件大小，目录为0
+        final long lastModified;    // 修改时间
+        final File file;            // File一侧
+        final Uri uri;              // DocumentFile一侧
+
+        Item(long size, long lastModified, File file, Uri uri) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.file = file;
+            this.uri = uri;
+        }
+    }
+}
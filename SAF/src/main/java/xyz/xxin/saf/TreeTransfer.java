@@ -0,0 +1,399 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 目录复制、移动的执行过程
+ * <p>
+ * 先遍历源目录，在目标目录下一次性创建好所有子目录，再把文件分配到固定数量的线程中并行复制。
+ * 目标中已存在的目录各列出一次，新创建的目录是空的，其下的子项直接创建，不再逐个查询
+ */
+final class TreeTransfer {
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final int threads;                      // 并行复制的线程数
+    private final TransferListener listener;        // 进度回调，可为null
+    private final CancellationSignal signal;        // 取消信号，可为null
+
+    // 源目录和目标目录，File和DocumentFile二者只有一个不为null
+    private final File fromFileDir;
+    private final DocumentFile fromDocDir;
+    private final File toFileDir;
+    private final DocumentFile toDocDir;
+    private final String fromRelativePath;      // 源DocumentFile目录相对于权限目录的路径，移动时使其缓存失效；不在权限目录下时为null
+
+    private final List<String> dirs = new ArrayList<>();                    // 源目录下的所有子目录，父目录在前
+    private final List<SourceFile> files = new ArrayList<>();               // 源目录下的所有文件
+    private final Map<String, DocumentFile> targetDirs = new HashMap<>();   // 目标目录下已创建的子目录
+    private final Set<String> createdDirs = new HashSet<>();                // 新创建的目标目录
+    private final Map<String, Map<String, DocumentEntry>> targetChildren = new HashMap<>(); // 已存在的目标目录下的子项，列出失败时不包含
+
+    private final List<TransferResult.FileResult> results = new ArrayList<>();
+    private long totalBytes;
+    private long finishedBytes;
+
+    TreeTransfer(SAFUtil safUtil, Context context, File fromFileDir, DocumentFile fromDocDir,
+                 File toFileDir, DocumentFile toDocDir, int threads,
+                 TransferListener listener, CancellationSignal signal) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.fromFileDir = fromFileDir;
+        this.fromDocDir = fromDocDir;
+        this.toFileDir = toFileDir;
+        this.toDocDir = toDocDir;
+        this.fromRelativePath = fromDocDir == null ? null : relativePath(safUtil, fromDocDir);
+        this.threads = Math.max(threads, 1);
+        this.listener = listener;
+        this.signal = signal;
+    }
+
+    /**
+     * 执行复制或移动
+     *
+     * @param move 是否移动，移动时每个文件复制成功后删除源文件，全部成功后删除源目录
+     */
+    TransferResult run(boolean move) {
+        long start = safUtil.startTiming();
+        try {
+            return execute(move);
+        } finally {
+            safUtil.endTiming(move ? "moveTree" : "copyTree", start);
+        }
+    }
+
+    private TransferResult execute(final boolean move) {
+        // 遍历源目录
+        try {
+            if (fromFileDir != null) {
+                walk(fromFileDir, "");
+            } else {
+                walk(fromDocDir, "");
+            }
+        } catch (IOException e) {
+            results.add(new TransferResult.FileResult("", 0, null, e));
+            return new TransferResult(results, files.size() + 1, isCancelled());
+        }
+        if (isCancelled()) return new TransferResult(results, files.size(), true);
+
+        // 先创建好所有子目录
+        createDirs();
+
+        // 并行复制文件
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(files.size());
+            for (final SourceFile source : files) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isCancelled()) return;
+                        onFinished(transfer(source, move));
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    onFailed(files.get(i), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            if (signal != null) signal.cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+
+        TransferResult result;
+        synchronized (this) {
+            result = new TransferResult(results, files.size(), isCancelled());
+        }
+
+        // 全部移动成功后，源目录下只剩空目录，删除源目录
+        if (move && result.isSuccess()) {
+            boolean deleted;
+            if (fromFileDir != null) {
+                deleted = deleteDir(fromFileDir);
+            } else {
+                deleted = fromDocDir.delete();
+                // 源目录及其下所有路径的缓存都已失效
+                safUtil.invalidatePath(fromRelativePath);
+            }
+            if (!deleted) {
+                results.add(new TransferResult.FileResult("", 0, null, new IOException("delete source directory failed")));
+                result = new TransferResult(results, files.size() + 1, false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 遍历File目录
+     */
+    private void walk(File dir, String path) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) throw new IOException("list failed: " + dir);
+
+        for (File child : children) {
+            if (isCancelled()) return;
+            String childPath = childPath(path, child.getName());
+            if (child.isDirectory()) {
+                dirs.add(childPath);
+                walk(child, childPath);
+            } else {
+                files.add(new SourceFile(childPath, child.length(), child, null));
+                totalBytes += child.length();
+            }
+        }
+    }
+
+    /**
+     * 遍历DocumentFile目录，每个目录只做一次查询
+     */
+    private void walk(DocumentFile dir, String path) throws IOException {
+        DocumentIterator iterator = safUtil.iterate(dir);
+        if (iterator == null) throw new IOException("list failed: " + dir.getUri());
+
+        List<DocumentEntry> subDirs = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                if (isCancelled()) return;
+                DocumentEntry entry = iterator.next();
+                String childPath = childPath(path, entry.getName());
+                if (entry.isDirectory()) {
+                    dirs.add(childPath);
+                    subDirs.add(entry);
+                } else {
+                    files.add(new SourceFile(childPath, entry.length(), null, entry.getUri()));
+                    totalBytes += entry.length();
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        for (DocumentEntry subDir : subDirs) {
+            walk(subDir.toDocumentFile(context), childPath(path, subDir.getName()));
+        }
+    }
+
+    /**
+     * 在目标目录下创建所有子目录，创建失败的目录下的文件会在复制时报错
+     */
+    private void createDirs() {
+        if (toFileDir != null) {
+            toFileDir.mkdirs();
+            for (String dir : dirs) {
+                new File(toFileDir, dir).mkdirs();
+            }
+            return;
+        }
+
+        targetDirs.put("", toDocDir);
+        listTarget("", toDocDir);
+        for (String dir : dirs) {
+            if (isCancelled()) return;
+            String parentPath = parentPath(dir);
+            DocumentFile parent = targetDirs.get(parentPath);
+            if (parent == null) continue;
+
+            DocumentFile target;
+            if (createdDirs.contains(parentPath)) {
+                target = createChild(parent, name(dir), false);
+                if (target != null) createdDirs.add(dir);
+            } else if (targetChildren.containsKey(parentPath)) {
+                DocumentEntry existing = targetChildren.get(parentPath).get(name(dir));
+                if (existing == null) {
+                    target = createChild(parent, name(dir), false);
+                    if (target != null) createdDirs.add(dir);
+                } else {
+                    // 与目标中的文件同名时无法创建，其下的文件复制时报错
+                    target = existing.isDirectory() ? existing.toDocumentFile(context) : null;
+                    if (target != null) listTarget(dir, target);
+                }
+            } else {
+                target = safUtil.resolveChild(parent, name(dir), false);
+                if (target != null) listTarget(dir, target);
+            }
+            if (target != null) targetDirs.put(dir, target);
+        }
+    }
+
+    /**
+     * 列出已存在的目标目录，其下的子项不再逐个查询；列出失败时退回逐个解析
+     */
+    private void listTarget(String path, DocumentFile dir) {
+        List<DocumentEntry> entries = safUtil.list(dir);
+        if (entries == null) return;
+        Map<String, DocumentEntry> children = new HashMap<>();
+        for (DocumentEntry entry : entries) {
+            children.put(entry.getName(), entry);
+        }
+        targetChildren.put(path, children);
+    }
+
+    /**
+     * 获取目标文件，已存在时直接覆盖，不存在时创建
+     */
+    private DocumentFile resolveTarget(DocumentFile parent, String path) throws IOException {
+        String parentPath = parentPath(path);
+        if (createdDirs.contains(parentPath)) return createChild(parent, name(path), true);
+
+        Map<String, DocumentEntry> children = targetChildren.get(parentPath);
+        if (children == null) return safUtil.resolveChild(parent, name(path), true);
+        DocumentEntry existing = children.get(name(path));
+        if (existing == null) return createChild(parent, name(path), true);
+        if (existing.isDirectory()) throw new IOException("target is a directory: " + path);
+        return existing.toDocumentFile(context);
+    }
+
+    /**
+     * 直接创建子文件或子目录
+     */
+    private DocumentFile createChild(DocumentFile parent, String name, boolean isFile) {
+        SAFMetrics metrics = safUtil.getMetrics();
+        if (metrics != null) metrics.onCreate();
+        return isFile ? parent.createFile("", name) : parent.createDirectory(name);
+    }
+
+    /**
+     * 复制单个文件，移动时复制成功后删除源文件
+     */
+    private TransferResult.FileResult transfer(SourceFile source, boolean move) {
+        try {
+            CopyMode copyMode;
+            if (toFileDir != null) {
+                File target = new File(toFileDir, source.path);
+                copyMode = safUtil.copyFileOrThrow(DocumentFile.fromTreeUri(context, source.uri), target);
+            } else {
+                DocumentFile parent = targetDirs.get(parentPath(source.path));
+                if (parent == null) throw new IOException("create directory failed: " + parentPath(source.path));
+                DocumentFile target = resolveTarget(parent, source.path);
+                if (target == null) throw new IOException("create file failed: " + source.path);
+
+                if (source.file != null) {
+                    copyMode = safUtil.copyFileOrThrow(source.file, target);
+                } else {
+                    copyMode = safUtil.copyFileOrThrow(DocumentFile.fromTreeUri(context, source.uri), target);
+                }
+            }
+
+            if (move) {
+                boolean deleted;
+                if (source.file != null) {
+                    deleted = source.file.delete();
+                } else {
+                    deleted = DocumentFile.fromTreeUri(context, source.uri).delete();
+                    if (deleted && fromRelativePath != null) safUtil.invalidatePath(childPath(fromRelativePath, source.path));
+                }
+                if (!deleted) throw new IOException("delete source failed: " + source.path);
+            }
+            return new TransferResult.FileResult(source.path, source.size, copyMode, null);
+        } catch (Exception e) {
+            return new TransferResult.FileResult(source.path, source.size, null, e);
+        }
+    }
+
+    /**
+     * 记录单个文件的结果并回调进度，回调抛出异常时该文件记为失败
+     */
+    private synchronized void onFinished(TransferResult.FileResult result) {
+        results.add(result);
+        finishedBytes += result.getSize();
+        if (listener == null) return;
+        try {
+            listener.onProgress(result, results.size(), files.size(), finishedBytes, totalBytes);
+        } catch (RuntimeException e) {
+            results.set(results.size() - 1,
+                    new TransferResult.FileResult(result.getPath(), result.getSize(), result.getCopyMode(), e));
+        }
+    }
+
+    /**
+     * 处理文件的任务异常结束时，补上该文件的结果，保证每个文件都有结果
+     */
+    private synchronized void onFailed(SourceFile source, ExecutionException e) {
+        for (TransferResult.FileResult result : results) {
+            if (result.getPath().equals(source.path)) return;
+        }
+        results.add(new TransferResult.FileResult(source.path, source.size, null, e));
+        finishedBytes += source.size;
+    }
+
+    private boolean isCancelled() {
+        return signal != null && signal.isCanceled();
+    }
+
+    /**
+     * 删除File目录及其所有子文件
+     */
+    private static boolean deleteDir(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    deleteDir(child);
+                } else {
+                    child.delete();
+                }
+            }
+        }
+        return dir.delete();
+    }
+
+    /**
+     * DocumentFile目录相对于权限目录的路径，不在权限目录下时返回null
+     */
+    private static String relativePath(SAFUtil safUtil, DocumentFile dir) {
+        String path = safUtil.uriToPath(dir.getUri());
+        return path == null ? null : safUtil.getRelativePath(path);
+    }
+
+    private static String childPath(String parentPath, String name) {
+        return parentPath.isEmpty() ? name : parentPath + "/" + name;
+    }
+
+    private static String parentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+
+    private static String name(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 源目录下的文件，File和Uri二者只有一个不为null
+     */
+    private static final class SourceFile {
+        final String path;      // 相对于源目录的路径
+        final long size;        // 文件大小
+        final File file;        // 源文件是File时
+        final Uri uri;          // 源文件是DocumentFile时
+
+        SourceFile(String path, long size, File file, Uri uri) {
+            this.path = path;
+            this.size = size;
+            this.file = file;
+            this.uri = uri;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package xyz.xxin.saf;
+
+import java.io.IOException;
+
+/**
+ * TreeWalker遍历目录时的回调
+ * <p>
+ * 在执行遍历的工作线程中回调，多个线程的回调不会同时进行，但回调中不要执行耗时操作，也不要直接更新UI。
+ * 不同目录并行遍历，因此兄弟目录之间的回调顺序不固定；同一目录下的子项按列出的顺序回调，
+ * 目录的postVisitDirectory总在其下所有子项（包括子目录的子项）回调之后
+ */
+public interface TreeVisitor {
+    /**
+     * 列出目录之前回调，遍历的目录本身也会回调
+     *
+     * @param path 相对于遍历目录的路径，遍历目录本身为空字符串
+     * @param dir  目录的属性
+     * @return SKIP_SUBTREE时不列出该目录
+     */
+    VisitResult preVisitDirectory(String path, DocumentEntry dir);
+
+    /**
+     * 遇到文件时回调
+     *
+     * @param path 相对于遍历目录的路径
+     * @param file 文件的属性
+     */
+    VisitResult visitFile(String path, DocumentEntry file);
+
+    /**
+     * 目录下的所有子项都遍历完成后回调
+     *
+     * @param path  相对于遍历目录的路径，遍历目录本身为空字符串
+     * @param dir   目录的属性
+     * @param error 目录无法列出时的原因，正常时为null
+     */
+    VisitResult postVisitDirectory(String path, DocumentEntry dir, IOException error);
+}
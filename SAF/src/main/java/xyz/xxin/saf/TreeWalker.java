@@ -0,0 +1,299 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行遍历目录树
+ * <p>
+ * 每个目录只做一次查询（只查询DocumentEntry的几列），不同目录的查询分配到固定数量的线程中并行执行，
+ * 同时进行的查询数量不超过setMaxQueries设置的值，避免提供者同时处理过多的查询。
+ * 遍历的每一项通过TreeVisitor回调，回调可以跳过子目录或终止遍历
+ * <p>
+ * ForkJoinPool需要API 21，minSdk为16，因此使用固定大小的线程池，每个目录的查询作为一个任务提交
+ */
+public final class TreeWalker {
+    private static final String TAG = TreeWalker.class.getSimpleName();
+
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final String dirPath;       // 遍历的目录
+
+    private int threads = 4;            // 并行遍历的线程数
+    private int maxQueries = 4;         // 同时进行的查询数
+
+    TreeWalker(SAFUtil safUtil, Context context, String dirPath) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.dirPath = dirPath;
+    }
+
+    /**
+     * 设置并行遍历的线程数，默认4，为1时逐个目录遍历
+     */
+    public TreeWalker setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+        return this;
+    }
+
+    /**
+     * 设置同时进行的查询数，默认4
+     */
+    public TreeWalker setMaxQueries(int maxQueries) {
+        this.maxQueries = Math.max(maxQueries, 1);
+        return this;
+    }
+
+    /**
+     * 遍历目录，阻塞直到遍历完成、被终止或被取消，请勿在主线程调用
+     *
+     * 回调抛出的异常会终止遍历，并在调用walk的线程中重新抛出
+     *
+     * @param visitor 回调
+     * @param signal  取消信号，可为null
+     * @return 完整遍历时返回true；目录不存在（不会自动创建）、被TERMINATE终止或被取消时返回false
+     */
+    public boolean walk(TreeVisitor visitor, CancellationSignal signal) {
+        long start = safUtil.startTiming();
+        try {
+            return new Walk(visitor, signal).run();
+        } finally {
+            safUtil.endTiming("walk", start);
+        }
+    }
+
+    /**
+     * 一次遍历的状态
+     */
+    private final class Walk {
+        private final TreeVisitor visitor;
+        private final CancellationSignal signal;
+        private final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        private final Semaphore queries = new Semaphore(maxQueries);
+        private final AtomicInteger pendingTasks = new AtomicInteger();     // 已提交但未完成的查询任务
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean stopped;       // 被终止、取消，或walk已返回
+        private volatile Throwable visitorError;    // 工作线程中回调抛出的第一个异常
+
+        Walk(TreeVisitor visitor, CancellationSignal signal) {
+            this.visitor = visitor;
+            this.signal = signal;
+        }
+
+        boolean run() {
+            try {
+                boolean completed = execute() && finish();
+                // 回调异常不能留在工作线程中（Android上未捕获的异常会结束进程），交给调用者
+                if (visitorError instanceof RuntimeException) throw (RuntimeException) visitorError;
+                if (visitorError instanceof Error) throw (Error) visitorError;
+                return completed;
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                finish();
+                return false;
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * 回调遍历目录本身，提交第一个查询任务并等待遍历结束
+         *
+         * @return 目录不存在或被TERMINATE终止时返回false
+         */
+        private boolean execute() throws InterruptedException {
+            // 不能用getDocumentFile，目录不存在时会被自动创建
+            DocumentEntry rootEntry = safUtil.queryExisting(dirPath);
+            if (rootEntry == null || !rootEntry.isDirectory()) {
+                Log.e(TAG, "walk: " + dirPath + " not exists");
+                return false;
+            }
+
+            VisitResult result = preVisit("", rootEntry);
+            if (result == VisitResult.TERMINATE) return false;
+            if (result == VisitResult.CONTINUE) {
+                submit(new Dir(null, "", rootEntry));
+                done.await();
+            }
+            return true;
+        }
+
+        /**
+         * 结束遍历，之后不再有任何回调
+         *
+         * @return 是否完整遍历
+         */
+        private synchronized boolean finish() {
+            boolean completed = !stopped && !isCancelled();
+            stopped = true;
+            return completed;
+        }
+
+        /**
+         * 提交一个目录的查询任务
+         */
+        private void submit(final Dir dir) {
+            pendingTasks.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            list(dir);
+                        } finally {
+                            if (pendingTasks.decrementAndGet() == 0) done.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 遍历已结束，线程池已关闭
+                pendingTasks.decrementAndGet();
+            }
+        }
+
+        /**
+         * 列出目录，回调每一个子项，子目录提交新的查询任务
+         */
+        private void list(Dir dir) {
+            if (isStopped()) return;
+
+            List<DocumentEntry> entries = new ArrayList<>();
+            IOException error = null;
+            try {
+                queries.acquire();
+            } catch (InterruptedException e) {
+                stop();
+                return;
+            }
+            try {
+                DocumentIterator iterator = safUtil.iterate(DocumentFile.fromTreeUri(context, dir.entry.getUri()));
+                if (iterator == null) {
+                    error = new IOException("list failed: " + dir.entry.getUri());
+                } else {
+                    try {
+                        while (iterator.hasNext()) {
+                            entries.add(iterator.next());
+                        }
+                    } finally {
+                        iterator.close();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // 读取游标时提供者进程死亡等
+                error = new IOException("list failed: " + dir.entry.getUri(), e);
+            } finally {
+                queries.release();
+            }
+
+            try {
+                for (DocumentEntry entry : entries) {
+                    if (isStopped()) return;
+                    if (entry.getName() == null) continue;
+                    String path = childPath(dir.path, entry.getName());
+                    if (entry.isDirectory()) {
+                        VisitResult result = preVisit(path, entry);
+                        if (result == VisitResult.CONTINUE) {
+                            dir.pending.incrementAndGet();
+                            submit(new Dir(dir, path, entry));
+                        } else if (result == VisitResult.TERMINATE) {
+                            return;
+                        }
+                    } else if (visitFile(path, entry) == VisitResult.TERMINATE) {
+                        return;
+                    }
+                }
+                complete(dir, error);
+            } catch (RuntimeException | Error e) {
+                // 回调抛出异常，停止遍历，由walk在调用线程中重新抛出
+                if (visitorError == null) visitorError = e;
+                stop();
+            }
+        }
+
+        /**
+         * 目录自身列出完成，或其下一个子目录遍历完成；全部完成时回调postVisitDirectory，并通知上级目录
+         */
+        private void complete(Dir dir, IOException error) {
+            if (error != null) dir.error = error;
+            while (dir != null && dir.pending.decrementAndGet() == 0) {
+                if (postVisit(dir.path, dir.entry, dir.error) == VisitResult.TERMINATE) return;
+                dir = dir.parent;
+            }
+        }
+
+        private synchronized VisitResult preVisit(String path, DocumentEntry entry) {
+            if (stopped) return VisitResult.TERMINATE;
+            return check(visitor.preVisitDirectory(path, entry));
+        }
+
+        private synchronized VisitResult visitFile(String path, DocumentEntry entry) {
+            if (stopped) return VisitResult.TERMINATE;
+            return check(visitor.visitFile(path, entry));
+        }
+
+        private synchronized VisitResult postVisit(String path, DocumentEntry entry, IOException error) {
+            if (stopped) return VisitResult.TERMINATE;
+            return check(visitor.postVisitDirectory(path, entry, error));
+        }
+
+        /**
+         * 回调返回TERMINATE时停止遍历，返回null视为CONTINUE
+         */
+        private VisitResult check(VisitResult result) {
+            if (result == VisitResult.TERMINATE) stop();
+            return result == null ? VisitResult.CONTINUE : result;
+        }
+
+        private boolean isStopped() {
+            if (!stopped && isCancelled()) stop();
+            return stopped;
+        }
+
+        private boolean isCancelled() {
+            return signal != null && signal.isCanceled();
+        }
+
+        /**
+         * 停止遍历，walk立即返回，正在进行的查询完成后丢弃结果
+         */
+        private void stop() {
+            stopped = true;
+            done.countDown();
+        }
+    }
+
+    private static String childPath(String parentPath, String name) {
+        return parentPath.isEmpty() ? name : parentPath + "/" + name;
+    }
+
+    /**
+     * 正在遍历的目录
+     */
+    private static final class Dir {
+        final Dir parent;
+        final String path;          // 相对于遍历目录的路径
+        final DocumentEntry entry;
+        final AtomicInteger pending = new AtomicInteger(1);     // 自身的列出，加上未完成的子目录
+        volatile IOException error; // 无法列出时的原因
+
+        Dir(Dir parent, String path, DocumentEntry entry) {
+            this.parent = parent;
+            this.path = path;
+            this.entry = entry;
+        }
+    }
+}
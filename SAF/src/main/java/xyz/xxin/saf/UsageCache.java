@@ -0,0 +1,96 @@
+package xyz.xxin.saf;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 目录占用空间统计的LRU缓存
+ * <p>
+ * 每个权限目录（tree）共用一个缓存实例，键为目录的document id，值为列出该目录时得到的直接子项统计和列出前读取的修改时间。
+ * 修改时间不变时，目录的直接子项没有新增、删除、重命名，可以不再列出该目录
+ */
+final class UsageCache {
+    private static final int DEFAULT_CAPACITY = 4096;   // 默认缓存的目录数
+
+    private static final Map<String, UsageCache> CACHES = new HashMap<>();  // 权限目录uri地址 => 缓存
+
+    private final LinkedHashMap<String, Entry> entries; // 按访问顺序排列，最久未访问的在最前面
+
+    /**
+     * 获取权限目录对应的缓存，同一个权限目录的多个SAFUtil对象共用一个缓存
+     *
+     * @param treeUriStr 权限目录的uri地址
+     */
+    static UsageCache forTree(String treeUriStr) {
+        synchronized (CACHES) {
+            UsageCache cache = CACHES.get(treeUriStr);
+            if (cache == null) {
+                cache = new UsageCache();
+                CACHES.put(treeUriStr, cache);
+            }
+            return cache;
+        }
+    }
+
+    private UsageCache() {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > DEFAULT_CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * 获取修改时间与缓存时相同的统计，未命中或已过期时返回null
+     *
+     * @param documentId   目录的document id
+     * @param lastModified 目录当前的修改时间
+     */
+    synchronized Entry get(String documentId, long lastModified) {
+        Entry entry = entries.get(documentId);
+        if (entry == null || lastModified <= 0 || entry.lastModified != lastModified) return null;
+        return entry;
+    }
+
+    /**
+     * 缓存目录的统计，修改时间未知时不缓存
+     *
+     * @param documentId 目录的document id
+     * @param entry      统计
+     */
+    synchronized void put(String documentId, Entry entry) {
+        if (entry.lastModified <= 0) {
+            entries.remove(documentId);
+            return;
+        }
+        entries.put(documentId, entry);
+    }
+
+    /**
+     * 清空缓存
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 单个目录的直接子项统计
+     */
+    static final class Entry {
+        final long lastModified;    // 列出该目录前读取的修改时间
+        final long fileSize;        // 直接子文件的大小之和
+        final int fileCount;        // 直接子文件数
+        final String[] dirNames;    // 直接子目录的名称
+        final String[] dirIds;      // 直接子目录的document id，与dirNames一一对应
+
+        Entry(long lastModified, long fileSize, int fileCount, String[] dirNames, String[] dirIds) {
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+            this.fileCount = fileCount;
+            this.dirNames = dirNames;
+            this.dirIds = dirIds;
+        }
+    }
+}
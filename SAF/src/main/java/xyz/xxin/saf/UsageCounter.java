@@ -0,0 +1,129 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 统计目录的占用空间
+ * <p>
+ * 每个目录只做一次查询，直接从游标读取大小，不为每个文件调用length()。
+ * 列出目录后缓存其直接子项的统计，下次统计时目录的修改时间不变则沿用缓存，只对其子目录做单行查询；
+ * 目录的修改时间只在其直接子项新增、删除、重命名时变化，原地修改文件内容不会被发现，需要时请强制重新列出
+ */
+final class UsageCounter {
+    private static final String TAG = UsageCounter.class.getSimpleName();
+
+    private final SAFUtil safUtil;
+    private final Context context;
+    private final UsageCache cache;
+    private final Uri treeUri;          // 构建子文件Uri地址时使用
+    private final boolean refresh;      // 是否忽略缓存，重新列出所有目录
+
+    UsageCounter(SAFUtil safUtil, Context context, UsageCache cache, Uri treeUri, boolean refresh) {
+        this.safUtil = safUtil;
+        this.context = context;
+        this.cache = cache;
+        this.treeUri = treeUri;
+        this.refresh = refresh;
+    }
+
+    /**
+     * 统计目录
+     *
+     * @param documentId   目录的document id
+     * @param name         目录名
+     * @param lastModified 列出之前查询到的修改时间，未知时为-1
+     */
+    DiskUsage count(String documentId, String name, long lastModified) {
+        return countDir(documentId, "", name, lastModified);
+    }
+
+    /**
+     * 统计单个目录
+     *
+     * @param documentId   目录的document id
+     * @param path         目录相对于统计目录的路径
+     * @param name         目录名
+     * @param lastModified 列出上级目录时得到的修改时间，未知时为-1
+     */
+    private DiskUsage countDir(String documentId, String path, String name, long lastModified) {
+        // 修改时间要在列出目录之前读取，列出期间发生的变化留到下次统计
+        if (lastModified < 0) lastModified = queryLastModified(documentId);
+
+        UsageCache.Entry entry = refresh ? null : cache.get(documentId, lastModified);
+        long[] dirLastModified = null;  // 列出目录时得到的子目录修改时间，沿用缓存时为null
+        if (entry == null) {
+            Cursor cursor = null;
+            try {
+                cursor = safUtil.queryChildren(DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, documentId));
+                if (cursor == null) throw new IllegalStateException("query returned null");
+
+                long fileSize = 0;
+                int fileCount = 0;
+                List<String> dirNames = new ArrayList<>();
+                List<String> dirIds = new ArrayList<>();
+                List<Long> dirTimes = new ArrayList<>();
+                while (cursor.moveToNext()) {
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(cursor.getString(DocumentEntry.COLUMN_MIME))) {
+                        String dirName = cursor.getString(DocumentEntry.COLUMN_NAME);
+                        if (dirName == null) continue;
+                        dirNames.add(dirName);
+                        dirIds.add(cursor.getString(DocumentEntry.COLUMN_ID));
+                        dirTimes.add(cursor.isNull(DocumentEntry.COLUMN_MODIFIED) ? 0 : cursor.getLong(DocumentEntry.COLUMN_MODIFIED));
+                    } else {
+                        if (!cursor.isNull(DocumentEntry.COLUMN_SIZE)) fileSize += cursor.getLong(DocumentEntry.COLUMN_SIZE);
+                        fileCount++;
+                    }
+                }
+
+                entry = new UsageCache.Entry(lastModified, fileSize, fileCount,
+                        dirNames.toArray(new String[0]), dirIds.toArray(new String[0]));
+                cache.put(documentId, entry);
+                dirLastModified = new long[dirTimes.size()];
+                for (int i = 0; i < dirLastModified.length; i++) dirLastModified[i] = dirTimes.get(i);
+            } catch (Exception e) {
+                Log.e(TAG, "diskUsage: list " + (path.isEmpty() ? name : path) + " failed: " + e.getMessage());
+                return new DiskUsage(path, name, documentId, 0, 0, 0, false, new ArrayList<DiskUsage>());
+            } finally {
+                DocumentQuery.closeQuietly(cursor);
+            }
+        }
+
+        long size = entry.fileSize;
+        int fileCount = entry.fileCount;
+        int dirCount = entry.dirIds.length;
+        boolean complete = true;
+        List<DiskUsage> children = new ArrayList<>(entry.dirIds.length);
+        for (int i = 0; i < entry.dirIds.length; i++) {
+            String childName = entry.dirNames[i];
+            String childPath = path.isEmpty() ? childName : path + "/" + childName;
+            DiskUsage child = countDir(entry.dirIds[i], childPath, childName,
+                    dirLastModified == null ? -1 : dirLastModified[i]);
+            size += child.getSize();
+            fileCount += child.getFileCount();
+            dirCount += child.getDirCount();
+            complete &= child.isComplete();
+            children.add(child);
+        }
+        return new DiskUsage(path, name, documentId, size, fileCount, dirCount, complete, children);
+    }
+
+    /**
+     * 单行查询目录的修改时间
+     *
+     * @return 查询失败时返回0
+     */
+    private long queryLastModified(String documentId) {
+        SAFMetrics metrics = safUtil.getMetrics();
+        if (metrics != null) metrics.onQuery(1);
+        Uri uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+        DocumentEntry entry = DocumentQuery.query(context.getContentResolver(), uri);
+        return entry == null ? 0 : entry.lastModified();
+    }
+}
@@ -0,0 +1,19 @@
+package xyz.xxin.saf;
+
+/**
+ * 遍历目录时TreeVisitor的返回值，决定如何继续遍历
+ */
+public enum VisitResult {
+    /**
+     * 继续遍历
+     */
+    CONTINUE,
+    /**
+     * 不再遍历该目录下的子项，也不会回调该目录的postVisitDirectory；由visitFile返回时与CONTINUE相同
+     */
+    SKIP_SUBTREE,
+    /**
+     * 立即停止整个遍历，之后不会再有任何回调
+     */
+    TERMINATE
+}
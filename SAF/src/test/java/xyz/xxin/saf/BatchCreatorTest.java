@@ -0,0 +1,92 @@
+package xyz.xxin.saf;
+
+import android.provider.DocumentsContract;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证createAll共同的上级目录只解析一次，以及列出目录失败时退回逐个解析
+ */
+public class BatchCreatorTest extends ProviderTestCase {
+    private static final int FILES = 10;
+
+    private String existingId;
+
+    @Before
+    public void setUp() throws Exception {
+        provider.mkdirs(PERMISSION_DIR);
+        existingId = provider.writeFile(PERMISSION_DIR + "/old/x", "x".getBytes());
+        provider.reset();
+    }
+
+    @Test
+    public void sharedAncestorsAreResolvedOnce() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            paths.add(ROOT_PATH + "/a/b/f" + i);
+            paths.add(ROOT_PATH + "/a/c/g" + i);
+        }
+        paths.add(ROOT_PATH + "/d/");
+
+        Map<String, DocumentFile> result = safUtil.createAll(paths);
+
+        assertEquals(paths.size(), result.size());
+        // 只列出了已存在的权限目录，a、b、c、d和所有文件都直接创建
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(1, provider.getQueryCount());
+        assertEquals(4 + 2 * FILES, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertTrue(result.get(ROOT_PATH + "/a/b/f0").isFile());
+        assertTrue(result.get(ROOT_PATH + "/d/").isDirectory());
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/a/c/g9"));
+    }
+
+    @Test
+    public void existingChildrenAreReused() {
+        Map<String, DocumentFile> result = safUtil.createAll(Arrays.asList(
+                ROOT_PATH + "/old/x", ROOT_PATH + "/old/y", ROOT_PATH + "/new"));
+
+        assertEquals(3, result.size());
+        assertEquals(existingId, DocumentsContract.getDocumentId(result.get(ROOT_PATH + "/old/x").getUri()));
+        // 权限目录和old各列出一次
+        assertEquals(2, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(2, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/old (1)"));
+    }
+
+    @Test
+    public void failedListingFallsBackToResolvingEachChild() {
+        provider.interruptListing("primary:" + PERMISSION_DIR, 0);
+
+        Map<String, DocumentFile> result = safUtil.createAll(Arrays.asList(
+                ROOT_PATH + "/old/x", ROOT_PATH + "/old/y", ROOT_PATH + "/new"));
+
+        assertEquals(3, result.size());
+        assertEquals(existingId, DocumentsContract.getDocumentId(result.get(ROOT_PATH + "/old/x").getUri()));
+        // 逐个解析时找到了已存在的old，没有重复创建
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/old (1)"));
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/old/y"));
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/new"));
+        assertEquals(2, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+    }
+
+    @Test
+    public void pathsOutsidePermissionDirAreSkipped() {
+        Map<String, DocumentFile> result = safUtil.createAll(Arrays.asList(
+                SAFUtil.PRIMARY_STORAGE + "/Download/a", ROOT_PATH + "/a"));
+
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey(ROOT_PATH + "/a"));
+    }
+}
@@ -0,0 +1,89 @@
+package xyz.xxin.saf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 验证BufferPool复用归还的缓冲区、最多保留maxPooled个，以及拒绝大小不符的缓冲区
+ */
+public class BufferPoolTest {
+    private static final int SIZE = 1024;
+
+    @Test
+    public void releasedBufferIsReused() {
+        BufferPool pool = new BufferPool(SIZE, BufferPool.DEFAULT_MAX_POOLED);
+        byte[] buffer = pool.acquire();
+        assertEquals(SIZE, buffer.length);
+
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire());
+        // 池已空，重新分配
+        assertNotSame(buffer, pool.acquire());
+    }
+
+    @Test
+    public void extraBuffersAreDiscarded() {
+        BufferPool pool = new BufferPool(SIZE, BufferPool.DEFAULT_MAX_POOLED);
+        List<byte[]> acquired = new ArrayList<>();
+        for (int i = 0; i < BufferPool.DEFAULT_MAX_POOLED + 1; i++) {
+            acquired.add(pool.acquire());
+        }
+        for (byte[] buffer : acquired) {
+            pool.release(buffer);
+        }
+
+        // 只保留了前8个，第9个被丢弃
+        Set<byte[]> pooled = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        for (int i = 0; i < BufferPool.DEFAULT_MAX_POOLED; i++) {
+            pooled.add(pool.acquire());
+        }
+        assertEquals(BufferPool.DEFAULT_MAX_POOLED, pooled.size());
+        assertTrue(pooled.containsAll(acquired.subList(0, BufferPool.DEFAULT_MAX_POOLED)));
+        assertFalse(pooled.contains(acquired.get(BufferPool.DEFAULT_MAX_POOLED)));
+
+        byte[] extra = pool.acquire();
+        assertFalse(pooled.contains(extra));
+        assertNotSame(acquired.get(BufferPool.DEFAULT_MAX_POOLED), extra);
+    }
+
+    @Test
+    public void wrongSizedBufferIsRejected() {
+        BufferPool pool = new BufferPool(SIZE, 1);
+        byte[] smaller = new byte[SIZE - 1];
+        byte[] larger = new byte[SIZE + 1];
+        pool.release(smaller);
+        pool.release(larger);
+        pool.release(null);
+
+        byte[] buffer = pool.acquire();
+        assertNotSame(smaller, buffer);
+        assertNotSame(larger, buffer);
+        assertEquals(SIZE, buffer.length);
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected() {
+        try {
+            new BufferPool(0, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new BufferPool(SIZE, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证ChangeScanner的对比结果和列出目录的次数
+ */
+public class ChangeScannerTest extends ProviderTestCase {
+    private static final int DIRS = 20;
+    private static final int FILES = 10;
+
+    private ChangeScanner scanner;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DIRS; i++) {
+            for (int j = 0; j < FILES; j++) {
+                provider.writeFile(PERMISSION_DIR + "/dir" + i + "/file" + j, new byte[j]);
+            }
+        }
+
+        scanner = safUtil.changeScanner(ROOT_PATH);
+    }
+
+    @Test
+    public void firstScanReportsEverythingAsAdded() {
+        ChangeSet changes = scanner.scan();
+
+        assertNotNull(changes);
+        assertEquals(DIRS * (FILES + 1), changes.getAdded().size());
+        assertTrue(changes.getRemoved().isEmpty());
+        assertTrue(changes.getModified().isEmpty());
+        assertTrue(scanner.scan().isEmpty());
+    }
+
+    @Test
+    public void reportsAddedRemovedAndModified() throws Exception {
+        scanner.scan();
+
+        provider.writeFile(PERMISSION_DIR + "/dir0/new", new byte[1]);
+        provider.writeFile(PERMISSION_DIR + "/dir1/file0", new byte[100]);
+        safUtil.deleteFile(SAFUtil.PRIMARY_STORAGE + "/" + PERMISSION_DIR + "/dir2", false);
+        scanner.setSkipUnchangedDirs(false);
+        ChangeSet changes = scanner.scan();
+
+        assertNotNull(changes);
+        assertEquals(paths("dir0/new"), paths(changes.getAdded()));
+        assertEquals(FILES + 1, changes.getRemoved().size());
+        assertEquals("dir2", changes.getRemoved().get(0).getPath());
+        assertEquals(paths("dir1/file0"), paths(changes.getModified()));
+        assertEquals(100, changes.getModified().get(0).length());
+    }
+
+    @Test
+    public void skipsUnchangedDirectories() throws Exception {
+        scanner.scan();
+        provider.writeFile(PERMISSION_DIR + "/dir5/new", new byte[1]);
+        provider.reset();
+
+        ChangeSet changes = scanner.scan();
+
+        assertNotNull(changes);
+        assertEquals(paths("dir5/new"), paths(changes.getAdded()));
+        // 只列出了修改时间变化的dir5，其余目录只做了单行查询
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void fullScanListsEveryDirectory() throws Exception {
+        scanner.setSkipUnchangedDirs(false);
+        scanner.scan();
+        provider.reset();
+
+        assertTrue(scanner.scan().isEmpty());
+        assertEquals(DIRS + 1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void interruptedListingIsNotReportedAgain() {
+        provider.interruptListing("primary:" + PERMISSION_DIR + "/dir0", 4);
+
+        ChangeSet first = scanner.scan();
+
+        assertNotNull(first);
+        assertEquals(DIRS * (FILES + 1) - (FILES - 4), first.getAdded().size());
+
+        provider.reset();
+        ChangeSet second = scanner.scan();
+
+        // 只报告上次未读到的子项，已读出的不会再次视为新增
+        assertNotNull(second);
+        assertEquals(FILES - 4, second.getAdded().size());
+        for (ChangeSet.Change change : second.getAdded()) {
+            assertTrue(change.getPath().startsWith("dir0/"));
+        }
+        assertTrue(scanner.scan().isEmpty());
+    }
+
+    @Test
+    public void interruptedListingDoesNotReportUnreadAsRemoved() throws Exception {
+        scanner.scan();
+        safUtil.deleteFile(ROOT_PATH + "/dir0/file" + (FILES - 1), true);
+        provider.interruptListing("primary:" + PERMISSION_DIR + "/dir0", 4);
+
+        ChangeSet changes = scanner.scan();
+
+        // 未读到的子项无法判断是否已删除
+        assertNotNull(changes);
+        assertTrue(changes.isEmpty());
+
+        provider.reset();
+        changes = scanner.scan();
+
+        assertNotNull(changes);
+        assertEquals(paths("dir0/file" + (FILES - 1)), paths(changes.getRemoved()));
+    }
+
+    @Test
+    public void missingDirectoryIsNotCreated() {
+        assertNull(safUtil.changeScanner(ROOT_PATH + "/missing").scan());
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+
+    @Test
+    public void deletedDirectoryKeepsSnapshot() throws Exception {
+        ChangeScanner dirScanner = safUtil.changeScanner(ROOT_PATH + "/dir0");
+        assertEquals(FILES, dirScanner.scan().getAdded().size());
+        assertTrue(safUtil.deleteFile(ROOT_PATH + "/dir0", false));
+
+        // 目录被删除后不会重新创建空目录，也不会把快照中的文件报告为删除
+        assertNull(dirScanner.scan());
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/dir0"));
+
+        provider.writeFile(PERMISSION_DIR + "/dir0/file0", new byte[0]);
+        ChangeSet changes = dirScanner.scan();
+        assertNotNull(changes);
+        assertEquals(FILES - 1, changes.getRemoved().size());
+    }
+
+    private static List<String> paths(String... paths) {
+        List<String> list = new ArrayList<>();
+        for (String path : paths) list.add(path);
+        return list;
+    }
+
+    private static List<String> paths(List<ChangeSet.Change> changes) {
+        List<String> list = new ArrayList<>();
+        for (ChangeSet.Change change : changes) list.add(change.getPath());
+        return list;
+    }
+}
@@ -0,0 +1,230 @@
+package xyz.xxin.saf;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 验证分块并行复制的结果与源文件逐字节一致、会截掉较大的原目标文件，以及任意线程失败后其他线程停止复制
+ */
+public class ChunkedCopyTest extends ProviderTestCase {
+    // 跨越多个4MiB的块，且最后一块不满
+    private static final int SIZE = 2 * ChunkedCopy.DEFAULT_CHUNK_SIZE + 1234;
+
+    private byte[] content;
+    private File source;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        source = File.createTempFile("chunked", null);
+        write(source, content);
+        safUtil.setChunkedCopy(1024 * 1024, 4);
+    }
+
+    @Test
+    public void copyIsByteExact() throws Exception {
+        DocumentFile target = safUtil.createFile(ROOT_PATH + "/copy.bin");
+
+        assertEquals(CopyMode.CHUNKED, safUtil.copyFile(source, target));
+        assertArrayEquals(content, read(ROOT_PATH + "/copy.bin"));
+    }
+
+    @Test
+    public void largerDocumentTargetIsShrunk() throws Exception {
+        byte[] old = new byte[SIZE + ChunkedCopy.DEFAULT_CHUNK_SIZE];
+        new Random(2).nextBytes(old);
+        provider.writeFile(PERMISSION_DIR + "/copy.bin", old);
+        DocumentFile target = safUtil.getDocumentFile(ROOT_PATH + "/copy.bin", true);
+
+        assertEquals(CopyMode.CHUNKED, safUtil.copyFile(source, target));
+        assertArrayEquals(content, read(ROOT_PATH + "/copy.bin"));
+    }
+
+    @Test
+    public void largerFileTargetIsShrunk() throws Exception {
+        provider.writeFile(PERMISSION_DIR + "/source.bin", content);
+        File target = File.createTempFile("chunked", null);
+        write(target, new byte[SIZE * 2]);
+
+        assertEquals(CopyMode.CHUNKED, safUtil.copyFile(safUtil.getDocumentFile(ROOT_PATH + "/source.bin", true), target));
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void failedTargetDoesNotCopy() throws Exception {
+        DocumentFile target = safUtil.createFile(ROOT_PATH + "/copy.bin");
+        provider.failDocument("primary:" + PERMISSION_DIR + "/copy.bin");
+
+        assertNull(safUtil.copyFile(source, target));
+    }
+
+    @Test
+    public void runtimeFailureStopsOtherWorkers() throws Exception {
+        // failDocument只在打开时失败，中途失败通过读取到指定位置时抛出异常的FileChannel模拟
+        int chunkSize = 1024;
+        int chunks = 64;
+        File input = File.createTempFile("chunked", null);
+        write(input, new byte[chunkSize * chunks]);
+        File output = File.createTempFile("chunked", null);
+
+        try (RandomAccessFile inFile = new RandomAccessFile(input, "r");
+             RandomAccessFile outFile = new RandomAccessFile(output, "rw")) {
+            FailingChannel inChannel = new FailingChannel(inFile.getChannel(), 4L * chunkSize);
+            ChunkedCopy copy = new ChunkedCopy(inChannel, outFile.getChannel(), chunkSize, new BufferPool(chunkSize, 4));
+            try {
+                copy.run(4);
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            // 其他线程最多完成手头的块，不会继续复制剩余的块
+            assertTrue(inChannel.reads.get() < chunks);
+        }
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream inputStream = safUtil.getInputStream(path)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * 按位置读取到failPosition及之后时抛出IllegalStateException，其余操作交给原FileChannel
+     */
+    private static final class FailingChannel extends FileChannel {
+        final AtomicInteger reads = new AtomicInteger();
+        private final FileChannel channel;
+        private final long failPosition;
+
+        FailingChannel(FileChannel channel, long failPosition) {
+            this.channel = channel;
+            this.failPosition = failPosition;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            reads.incrementAndGet();
+            if (position >= failPosition) throw new IllegalStateException("descriptor revoked");
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
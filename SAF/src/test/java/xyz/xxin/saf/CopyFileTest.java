@@ -0,0 +1,106 @@
+package xyz.xxin.saf;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 验证copyFile按两端是否支持随机访问选择复制方式，以及覆盖较大的原目标文件后内容与源文件一致
+ */
+public class CopyFileTest extends ProviderTestCase {
+    private static final String SOURCE_ID = "primary:" + PERMISSION_DIR + "/source.bin";
+
+    private byte[] content;
+    private byte[] longer;      // 比源文件大的原目标内容
+
+    @Before
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        content = new byte[100 * 1024 + 17];
+        random.nextBytes(content);
+        longer = new byte[content.length * 2];
+        random.nextBytes(longer);
+
+        provider.writeFile(PERMISSION_DIR + "/source.bin", content);
+        provider.writeFile(PERMISSION_DIR + "/target.bin", longer);
+    }
+
+    @Test
+    public void fileToSeekableDocumentUsesChannel() throws Exception {
+        File source = localFile(content);
+
+        assertEquals(CopyMode.CHANNEL, safUtil.copyFile(source, target()));
+        assertArrayEquals(content, read(ROOT_PATH + "/target.bin"));
+    }
+
+    @Test
+    public void seekableDocumentToFileUsesChannel() throws Exception {
+        File target = localFile(longer);
+
+        assertEquals(CopyMode.CHANNEL, safUtil.copyFile(source(), target));
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void seekableDocumentsUseChannel() throws Exception {
+        assertEquals(CopyMode.CHANNEL, safUtil.copyFile(source(), target()));
+        assertArrayEquals(content, read(ROOT_PATH + "/target.bin"));
+    }
+
+    @Test
+    public void pipeDocumentToFileUsesStream() throws Exception {
+        provider.pipeDocument(SOURCE_ID);
+        File target = localFile(longer);
+
+        assertEquals(CopyMode.STREAM, safUtil.copyFile(source(), target));
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void pipeDocumentToDocumentUsesStream() throws Exception {
+        provider.pipeDocument(SOURCE_ID);
+
+        assertEquals(CopyMode.STREAM, safUtil.copyFile(source(), target()));
+        assertArrayEquals(content, read(ROOT_PATH + "/target.bin"));
+    }
+
+    private DocumentFile source() {
+        return safUtil.getDocumentFile(ROOT_PATH + "/source.bin", true);
+    }
+
+    private DocumentFile target() {
+        return safUtil.getDocumentFile(ROOT_PATH + "/target.bin", true);
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream inputStream = safUtil.getInputStream(path)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private static File localFile(byte[] bytes) throws IOException {
+        File file = File.createTempFile("copy", null);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,183 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证deleteTree、purge的删除次数、进度和部分失败
+ */
+public class DeleteTreeTest extends ProviderTestCase {
+    private static final int DIRS = 10;
+    private static final int FILES = 10;
+
+    private String treePath;
+    private String treeId;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DIRS; i++) {
+            for (int j = 0; j < FILES; j++) {
+                provider.writeFile(PERMISSION_DIR + "/tree/dir" + i + "/file" + j + (j % 2 == 0 ? ".tmp" : ".sav"), new byte[10]);
+            }
+        }
+        treeId = provider.mkdirs(PERMISSION_DIR + "/tree");
+
+        treePath = ROOT_PATH + "/tree";
+        provider.reset();
+    }
+
+    @Test
+    public void deletesWholeTreeInOneCall() {
+        DeleteResult result = safUtil.deleteTree(treePath, null, null);
+
+        assertTrue(result.isSuccess());
+        assertFalse(provider.exists(treeId));
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.DELETE));
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void reportsProgressPerSubtree() {
+        final List<String> paths = Collections.synchronizedList(new ArrayList<String>());
+        final int[] last = new int[2];
+        DeleteResult result = safUtil.deleteTree(treePath, new DeleteListener() {
+            @Override
+            public void onProgress(String path, Exception error, int deletedFiles, int totalFiles, long deletedBytes, long totalBytes) {
+                paths.add(path);
+                last[0] = deletedFiles;
+                last[1] = totalFiles;
+            }
+        }, null);
+
+        assertTrue(result.isSuccess());
+        assertFalse(provider.exists(treeId));
+        assertEquals(DIRS * FILES, result.getDeletedFiles());
+        assertEquals(DIRS * FILES * 10, result.getDeletedBytes());
+        assertEquals(DIRS * FILES, last[0]);
+        assertEquals(DIRS * FILES, last[1]);
+        // 每个子目录一次删除，最后删除已清空的操作目录
+        assertEquals(DIRS + 1, provider.getCount(FakeDocumentsProvider.Operation.DELETE));
+        assertEquals("", paths.get(paths.size() - 1));
+    }
+
+    @Test
+    public void purgeDeletesOnlySelectedFiles() {
+        DeleteResult result = safUtil.purge(treePath, new DocumentFilter() {
+            @Override
+            public boolean accept(String path, DocumentEntry entry) {
+                return entry.isFile() && path.endsWith(".tmp");
+            }
+        }, null, null);
+
+        assertTrue(result.isSuccess());
+        assertEquals(DIRS * FILES / 2, result.getTotalFiles());
+        assertEquals(DIRS * FILES / 2, provider.getCount(FakeDocumentsProvider.Operation.DELETE));
+        assertTrue(provider.exists(treeId));
+        assertTrue(provider.exists(treeId + "/dir0/file1.sav"));
+        assertFalse(provider.exists(treeId + "/dir0/file0.tmp"));
+    }
+
+    @Test
+    public void reportsPartialFailure() {
+        provider.failDocument(treeId + "/dir3");
+
+        DeleteResult result = safUtil.deleteTree(treePath, new DeleteListener() {
+            @Override
+            public void onProgress(String path, Exception error, int deletedFiles, int totalFiles, long deletedBytes, long totalBytes) {
+            }
+        }, null);
+
+        assertFalse(result.isSuccess());
+        // dir3无法列出也无法删除，操作目录因此无法清空
+        assertEquals(3, result.getFailed().size());
+        assertEquals("dir3", result.getFailed().get(0).getPath());
+        assertEquals("dir3", result.getFailed().get(1).getPath());
+        assertEquals("", result.getFailed().get(2).getPath());
+        assertEquals((DIRS - 1) * FILES, result.getDeletedFiles());
+        assertTrue(provider.exists(treeId));
+        assertFalse(provider.exists(treeId + "/dir0"));
+        assertTrue(provider.exists(treeId + "/dir3"));
+    }
+
+    @Test
+    public void interruptedListingIsNotDeletedWhole() {
+        provider.interruptListing(treeId + "/dir3", 4);
+
+        DeleteResult result = safUtil.deleteTree(treePath, new DeleteListener() {
+            @Override
+            public void onProgress(String path, Exception error, int deletedFiles, int totalFiles, long deletedBytes, long totalBytes) {
+            }
+        }, null);
+
+        assertFalse(result.isSuccess());
+        // dir3只列出了一部分：只删除已列出的子项，dir3和操作目录都无法清空
+        assertEquals(3, result.getFailed().size());
+        assertEquals("dir3", result.getFailed().get(0).getPath());
+        assertEquals("dir3", result.getFailed().get(1).getPath());
+        assertEquals("", result.getFailed().get(2).getPath());
+        assertEquals((DIRS - 1) * FILES + 4, result.getDeletedFiles());
+        assertTrue(provider.exists(treeId));
+        assertFalse(provider.exists(treeId + "/dir0"));
+        assertTrue(provider.exists(treeId + "/dir3"));
+        assertFalse(provider.exists(treeId + "/dir3/file0.tmp"));
+        assertTrue(provider.exists(treeId + "/dir3/file4.tmp"));
+    }
+
+    @Test
+    public void interruptedListingIsNotPurgedWhole() {
+        provider.interruptListing(treeId + "/dir3", 4);
+
+        DeleteResult result = safUtil.purge(treePath, new DocumentFilter() {
+            @Override
+            public boolean accept(String path, DocumentEntry entry) {
+                return path.equals("dir3");
+            }
+        }, null, null);
+
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.getFailed().size());
+        assertEquals("dir3", result.getFailed().get(0).getPath());
+        assertEquals("dir3", result.getFailed().get(1).getPath());
+        assertEquals(4, result.getDeletedFiles());
+        assertTrue(provider.exists(treeId + "/dir3"));
+        assertTrue(provider.exists(treeId + "/dir3/file9.sav"));
+        assertTrue(provider.exists(treeId + "/dir2/file0.tmp"));
+    }
+
+    @Test
+    public void missingDirectoryFails() {
+        DeleteResult result = safUtil.deleteTree(ROOT_PATH + "/missing", null, null);
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getFailed().size());
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.DELETE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+
+    @Test
+    public void listenerExceptionIsRecorded() {
+        DeleteResult result = safUtil.deleteTree(treePath, new DeleteListener() {
+            @Override
+            public void onProgress(String path, Exception error, int deletedFiles, int totalFiles, long deletedBytes, long totalBytes) {
+                if (path.equals("dir3")) throw new IllegalStateException("listener");
+            }
+        }, null);
+
+        // 回调异常不影响其他项的删除
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getFailed().size());
+        assertEquals("dir3", result.getFailed().get(0).getPath());
+        assertTrue(result.getFailed().get(0).getError() instanceof IllegalStateException);
+        assertEquals(DIRS * FILES, result.getDeletedFiles());
+        assertFalse(provider.exists(treeId));
+    }
+}
@@ -0,0 +1,117 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证diskUsage的统计结果和缓存命中时的查询次数
+ */
+public class DiskUsageTest extends ProviderTestCase {
+    private static final int DIRS = 5;
+    private static final int SUBS = 4;
+    private static final int FILES = 3;
+    private static final int ALL_DIRS = 1 + DIRS + DIRS * SUBS;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DIRS; i++) {
+            for (int j = 0; j < SUBS; j++) {
+                for (int k = 0; k < FILES; k++) {
+                    provider.writeFile(PERMISSION_DIR + "/dir" + i + "/sub" + j + "/file" + k, new byte[k + 1]);
+                }
+            }
+            provider.writeFile(PERMISSION_DIR + "/dir" + i + "/top", new byte[10]);
+        }
+
+        safUtil.clearUsageCache();
+        provider.reset();
+    }
+
+    @Test
+    public void aggregatesEveryLevel() {
+        DiskUsage usage = safUtil.diskUsage(ROOT_PATH);
+
+        assertNotNull(usage);
+        assertTrue(usage.isComplete());
+        assertEquals(DIRS * (SUBS * FILES + 1), usage.getFileCount());
+        assertEquals(DIRS * (SUBS * (1 + 2 + 3) + 10), usage.getSize());
+        assertEquals(DIRS + DIRS * SUBS, usage.getDirCount());
+
+        DiskUsage dir = usage.getChild("dir1");
+        assertNotNull(dir);
+        assertEquals("dir1", dir.getPath());
+        assertEquals(SUBS * FILES + 1, dir.getFileCount());
+        assertEquals("dir1/sub2", dir.getChild("sub2").getPath());
+        assertEquals(1 + 2 + 3, dir.getChild("sub2").getSize());
+
+        // 每个目录只列出一次，文件不单独查询
+        assertEquals(ALL_DIRS, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_DOCUMENT));
+    }
+
+    @Test
+    public void unchangedDirectoriesAreNotListedAgain() {
+        DiskUsage first = safUtil.diskUsage(ROOT_PATH);
+        provider.reset();
+
+        DiskUsage second = safUtil.diskUsage(ROOT_PATH);
+
+        assertNotNull(second);
+        assertEquals(first.getSize(), second.getSize());
+        assertEquals(first.getFileCount(), second.getFileCount());
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(ALL_DIRS, provider.getCount(FakeDocumentsProvider.Operation.QUERY_DOCUMENT));
+    }
+
+    @Test
+    public void changedDirectoryIsListedAgain() throws Exception {
+        DiskUsage first = safUtil.diskUsage(ROOT_PATH);
+        provider.writeFile(PERMISSION_DIR + "/dir2/sub3/new", new byte[100]);
+        provider.reset();
+
+        DiskUsage second = safUtil.diskUsage(ROOT_PATH);
+
+        assertNotNull(second);
+        assertEquals(first.getSize() + 100, second.getSize());
+        assertEquals(first.getFileCount() + 1, second.getFileCount());
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void refreshListsEverything() throws Exception {
+        safUtil.diskUsage(ROOT_PATH);
+        // 原地修改文件内容不会改变目录的修改时间
+        provider.writeFile(PERMISSION_DIR + "/dir0/top", new byte[20]);
+        provider.reset();
+
+        assertEquals(DIRS * (SUBS * (1 + 2 + 3) + 10), safUtil.diskUsage(ROOT_PATH).getSize());
+        DiskUsage refreshed = safUtil.diskUsage(ROOT_PATH, true);
+
+        assertEquals(DIRS * (SUBS * (1 + 2 + 3) + 10) + 10, refreshed.getSize());
+        assertEquals(ALL_DIRS, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void failedDirectoryMarksIncomplete() {
+        provider.failDocument("primary:" + PERMISSION_DIR + "/dir3");
+
+        DiskUsage usage = safUtil.diskUsage(ROOT_PATH);
+
+        assertNotNull(usage);
+        assertFalse(usage.isComplete());
+        assertEquals((DIRS - 1) * (SUBS * FILES + 1), usage.getFileCount());
+    }
+
+    @Test
+    public void missingDirectoryIsNotCreated() {
+        assertNull(safUtil.diskUsage(ROOT_PATH + "/missing"));
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+}
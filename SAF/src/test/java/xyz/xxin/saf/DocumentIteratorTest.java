@@ -0,0 +1,127 @@
+package xyz.xxin.saf;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 验证DocumentIterator读完、提前close()和遍历途中游标失效时都会关闭游标
+ */
+public class DocumentIteratorTest extends ProviderTestCase {
+    private static final String DIR_ID = "primary:" + PERMISSION_DIR + "/dir";
+    private static final Uri TREE_URI = DocumentsContract.buildTreeDocumentUri(
+            DocumentQuery.EXTERNAL_STORAGE_AUTHORITY, DIR_ID);
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            provider.writeFile(PERMISSION_DIR + "/dir/file" + i, new byte[i]);
+        }
+    }
+
+    @Test
+    public void cursorIsClosedAtEnd() {
+        MatrixCursor cursor = cursor(3);
+        DocumentIterator iterator = new DocumentIterator(cursor, TREE_URI);
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(3, count);
+        assertTrue(cursor.isClosed());
+    }
+
+    @Test
+    public void cursorIsClosedOnEarlyClose() {
+        MatrixCursor cursor = cursor(3);
+        DocumentIterator iterator = new DocumentIterator(cursor, TREE_URI);
+
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.close();
+
+        assertTrue(cursor.isClosed());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void cursorIsClosedWhenInterrupted() {
+        Cursor cursor = new FailingCursor(cursor(3), 2);
+        DocumentIterator iterator = new DocumentIterator(cursor, TREE_URI);
+
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        try {
+            iterator.hasNext();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertTrue(cursor.isClosed());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void interruptedListingFails() {
+        provider.interruptListing(DIR_ID, 4);
+
+        DocumentIterator iterator = safUtil.iterate(ROOT_PATH + "/dir");
+        assertNotNull(iterator);
+        int count = 0;
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(4, count);
+        // 已关闭，不会再次读取失效的游标
+        assertFalse(iterator.hasNext());
+
+        assertNull(safUtil.list(ROOT_PATH + "/dir"));
+    }
+
+    private static MatrixCursor cursor(int rows) {
+        MatrixCursor cursor = new MatrixCursor(DocumentEntry.PROJECTION);
+        for (int i = 0; i < rows; i++) {
+            cursor.addRow(new Object[]{DIR_ID + "/file" + i, "file" + i, "application/octet-stream", i, 1000L, 0});
+        }
+        return cursor;
+    }
+
+    /**
+     * 移动到第failRow行时抛出IllegalStateException，模拟提供者进程被杀后游标失效
+     */
+    private static final class FailingCursor extends CursorWrapper {
+        private final int failRow;
+
+        FailingCursor(Cursor cursor, int failRow) {
+            super(cursor);
+            this.failRow = failRow;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            if (getPosition() + 1 >= failRow) throw new IllegalStateException("cursor window lost");
+            return super.moveToNext();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package xyz.xxin.saf;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证getDocumentFile的查询次数
+ */
+public class DocumentResolutionTest extends ProviderTestCase {
+    private static final int DEPTH = 4;
+    private static final int SIBLINGS = 50;
+
+    private String filePath;
+
+    @Before
+    public void setUp() throws Exception {
+        provider.mkdirs(PERMISSION_DIR);
+
+        // 每一级的目标目录前都有SIBLINGS个兄弟目录
+        StringBuilder path = new StringBuilder(PERMISSION_DIR);
+        for (int level = 0; level < DEPTH; level++) {
+            for (int i = 0; i < SIBLINGS; i++) {
+                provider.mkdirs(path + "/dir" + i);
+            }
+            path.append("/level").append(level);
+            provider.mkdirs(path.toString());
+        }
+        path.append("/file.txt");
+        provider.writeFile(path.toString(), new byte[16]);
+
+        filePath = SAFUtil.PRIMARY_STORAGE + "/" + path;
+        provider.reset();
+    }
+
+    @Test
+    public void scanCostsDepthTimesSiblings() {
+        safUtil.setDirectLookup(false);
+
+        DocumentFile documentFile = safUtil.getDocumentFile(filePath, true);
+
+        assertNotNull(documentFile);
+        assertEquals("file.txt", documentFile.getName());
+        assertEquals(DEPTH + 1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertTrue(provider.getQueryCount() > (long) DEPTH * SIBLINGS);
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+    }
+
+    @Test
+    public void directLookupCostsOneQueryPerLevel() {
+        safUtil.setDirectLookup(true);
+
+        DocumentFile documentFile = safUtil.getDocumentFile(filePath, true);
+
+        assertNotNull(documentFile);
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(DEPTH + 1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_DOCUMENT));
+    }
+
+    @Test
+    public void directLookupIgnoresSiblingCount() {
+        safUtil.setDirectLookup(true);
+        provider.setPaddingRows(10_000);
+
+        assertNotNull(safUtil.getDocumentFile(filePath, true));
+        assertEquals(DEPTH + 1, provider.getQueryCount());
+    }
+
+    @Test
+    public void cachedPathCostsNoQuery() {
+        safUtil.getDocumentFile(filePath, true);
+        provider.reset();
+
+        assertNotNull(safUtil.getDocumentFile(filePath, true));
+        assertEquals(0, provider.getQueryCount());
+    }
+
+    @Test
+    public void zeroCacheCapacityDisablesCache() {
+        // 缓存按权限目录全局共用，测试结束后恢复默认容量
+        safUtil.setCacheCapacity(0);
+        try {
+            safUtil.getDocumentFile(filePath, true);
+            provider.reset();
+
+            assertNotNull(safUtil.getDocumentFile(filePath, true));
+            assertEquals(DEPTH + 1, provider.getQueryCount());
+        } finally {
+            safUtil.setCacheCapacity(512);
+        }
+    }
+
+    @Test
+    public void scanCostGrowsWithSiblings() {
+        safUtil.setDirectLookup(false);
+        provider.setPaddingRows(200);
+
+        assertNotNull(safUtil.getDocumentFile(filePath, true));
+        assertTrue(provider.getQueryCount() > (long) (DEPTH + 1) * (SIBLINGS + 200));
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+    }
+
+    @Test
+    public void persistentIndexCostsOneQueryAfterRestart() {
+        safUtil.setPersistentIndex(true);
+        safUtil.clearIndex();
+        assertNotNull(safUtil.getDocumentFile(filePath, true));
+
+        // 模拟应用重启：内存缓存为空，索引仍在
+        safUtil.clearCache();
+        provider.reset();
+
+        DocumentFile documentFile = safUtil.getDocumentFile(filePath, true);
+        assertEquals(1, provider.getQueryCount());
+        assertNotNull(documentFile);
+        assertEquals("file.txt", documentFile.getName());
+    }
+
+    @Test
+    public void staleIndexFallsBackToWalk() {
+        safUtil.setPersistentIndex(true);
+        safUtil.clearIndex();
+        assertNotNull(safUtil.getDocumentFile(filePath, true));
+
+        // 在SAFUtil以外删除文件后，索引中的记录已过时
+        assertTrue(safUtil.getDocumentFile(filePath, true).delete());
+        safUtil.clearCache();
+        provider.reset();
+
+        assertNotNull(safUtil.getDocumentFile(filePath, true));
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+    }
+}
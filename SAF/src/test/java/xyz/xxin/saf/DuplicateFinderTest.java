@@ -0,0 +1,113 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 验证DuplicateFinder的分组结果和读取文件的次数
+ */
+public class DuplicateFinderTest extends ProviderTestCase {
+    private static final int LARGE = 100 * 1024;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] large = new byte[LARGE];
+        new Random(1).nextBytes(large);
+        provider.writeFile(PERMISSION_DIR + "/a/copy1.bin", large);
+        provider.writeFile(PERMISSION_DIR + "/b/copy2.bin", large);
+        // 头部不同，头尾哈希即可区分
+        byte[] head = large.clone();
+        head[0]++;
+        provider.writeFile(PERMISSION_DIR + "/b/head.bin", head);
+        // 只有中间不同，需要读取完整内容才能区分
+        byte[] middle = large.clone();
+        middle[LARGE / 2]++;
+        provider.writeFile(PERMISSION_DIR + "/c/middle.bin", middle);
+
+        byte[] small = "duplicate!".getBytes();
+        provider.writeFile(PERMISSION_DIR + "/a/small1.txt", small);
+        provider.writeFile(PERMISSION_DIR + "/b/small2.txt", small);
+        provider.writeFile(PERMISSION_DIR + "/c/small3.txt", small);
+
+        provider.writeFile(PERMISSION_DIR + "/c/unique.bin", new byte[12345]);
+        provider.writeFile(PERMISSION_DIR + "/c/empty1", new byte[0]);
+        provider.writeFile(PERMISSION_DIR + "/c/empty2", new byte[0]);
+
+        HashCache.getInstance().clear();
+        provider.reset();
+    }
+
+    @Test
+    public void findsDuplicatesAndOnlyReadsCollisions() {
+        List<DuplicateGroup> groups = safUtil.duplicateFinder().addDirectory(ROOT_PATH).find(null);
+
+        assertNotNull(groups);
+        assertEquals(2, groups.size());
+        assertEquals(LARGE, groups.get(0).getSize());
+        assertEquals(new HashSet<>(Arrays.asList(ROOT_PATH + "/a/copy1.bin", ROOT_PATH + "/b/copy2.bin")),
+                new HashSet<>(groups.get(0).getPaths()));
+        assertEquals(3, groups.get(1).getPaths().size());
+        assertEquals(20, groups.get(1).getWastedSize());
+
+        // 同大小的4个大文件读取头尾，其中3个头尾相同再读取完整内容；小文件各读取一次；大小唯一的文件不打开
+        assertEquals(4 + 3 + 3, provider.getCount(FakeDocumentsProvider.Operation.OPEN));
+    }
+
+    @Test
+    public void cachedHashesAreNotRecomputed() {
+        safUtil.duplicateFinder().addDirectory(ROOT_PATH).find(null);
+        provider.reset();
+
+        List<DuplicateGroup> groups = safUtil.duplicateFinder().addDirectory(ROOT_PATH).find(null);
+
+        assertNotNull(groups);
+        assertEquals(2, groups.size());
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.OPEN));
+    }
+
+    @Test
+    public void overlappingDirectoriesCountEachFileOnce() {
+        List<DuplicateGroup> groups = safUtil.duplicateFinder()
+                .addDirectory(ROOT_PATH)
+                .addDirectory(ROOT_PATH + "/a")
+                .find(null);
+
+        assertNotNull(groups);
+        assertEquals(2, groups.get(0).getPaths().size());
+        assertEquals(3, groups.get(1).getPaths().size());
+    }
+
+    @Test
+    public void minSizeIncludesEmptyFiles() {
+        List<DuplicateGroup> groups = safUtil.duplicateFinder().addDirectory(ROOT_PATH).setMinSize(0).find(null);
+
+        assertNotNull(groups);
+        assertEquals(3, groups.size());
+        assertEquals(0, groups.get(2).getSize());
+    }
+
+    @Test
+    public void unreadableFilesAreNeverGrouped() throws Exception {
+        // 大小相同但都无法读取的文件没有哈希，不能被当作重复文件
+        String bad1 = provider.writeFile(PERMISSION_DIR + "/d/bad1.bin", new byte[777]);
+        String bad2 = provider.writeFile(PERMISSION_DIR + "/d/bad2.bin", new byte[777]);
+        provider.revokeDocument(bad1);
+        provider.revokeDocument(bad2);
+        provider.revokeDocument("primary:" + PERMISSION_DIR + "/a/copy1.bin");
+
+        List<DuplicateGroup> groups = safUtil.duplicateFinder().addDirectory(ROOT_PATH).find(null);
+
+        assertNotNull(groups);
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).getPaths().size());
+        assertEquals("duplicate!".length(), groups.get(0).getSize());
+    }
+}
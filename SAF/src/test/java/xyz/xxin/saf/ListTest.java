@@ -0,0 +1,76 @@
+package xyz.xxin.saf;
+
+import android.provider.DocumentsContract;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证list()只做一次查询，且正确读出PROJECTION中的所有列
+ */
+public class ListTest extends ProviderTestCase {
+    private static final int FILES = 20;
+
+    private String fileId;
+    private String dirId;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < FILES; i++) {
+            provider.writeFile(PERMISSION_DIR + "/dir/file" + i, new byte[i]);
+        }
+        fileId = provider.writeFile(PERMISSION_DIR + "/dir/data.bin", new byte[1234]);
+        dirId = provider.mkdirs(PERMISSION_DIR + "/dir/sub");
+    }
+
+    @Test
+    public void listCostsOneQuery() {
+        DocumentFile dir = safUtil.getDocumentFile(ROOT_PATH + "/dir", false);
+        provider.reset();
+
+        List<DocumentEntry> entries = safUtil.list(dir);
+
+        assertNotNull(entries);
+        assertEquals(FILES + 2, entries.size());
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(1, provider.getQueryCount());
+    }
+
+    @Test
+    public void listMapsEveryColumn() {
+        DocumentFile dir = safUtil.getDocumentFile(ROOT_PATH + "/dir", false);
+        Map<String, DocumentEntry> entries = new HashMap<>();
+        for (DocumentEntry entry : safUtil.list(dir)) {
+            entries.put(entry.getName(), entry);
+        }
+
+        DocumentEntry file = entries.get("data.bin");
+        DocumentFile fileDocument = file.toDocumentFile(context);
+        assertEquals(fileId, file.getDocumentId());
+        assertEquals(DocumentsContract.buildDocumentUriUsingTree(dir.getUri(), fileId), file.getUri());
+        assertEquals("application/octet-stream", file.getMimeType());
+        assertEquals(1234, file.length());
+        assertEquals(fileDocument.lastModified(), file.lastModified());
+        assertTrue(file.lastModified() > 0);
+        assertTrue(file.isFile());
+        assertTrue((file.getFlags() & DocumentsContract.Document.FLAG_SUPPORTS_WRITE) != 0);
+        assertTrue((file.getFlags() & DocumentsContract.Document.FLAG_SUPPORTS_DELETE) != 0);
+
+        DocumentEntry sub = entries.get("sub");
+        assertEquals(dirId, sub.getDocumentId());
+        assertEquals(DocumentsContract.Document.MIME_TYPE_DIR, sub.getMimeType());
+        assertTrue(sub.isDirectory());
+        assertTrue((sub.getFlags() & DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE) != 0);
+        assertTrue((sub.getFlags() & DocumentsContract.Document.FLAG_SUPPORTS_WRITE) == 0);
+    }
+}
@@ -0,0 +1,108 @@
+package xyz.xxin.saf;
+
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 验证PathCodec的编码结果与DocumentsContract一致，以及解码能还原编码前的路径
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PathCodecTest {
+    private static final String PRIMARY_STORAGE = "/storage/emulated/0";
+    private static final String REMOVABLE_STORAGE = "/storage/6238-3332";
+
+    private final PathCodec codec = new PathCodec(PRIMARY_STORAGE);
+
+    @Test
+    public void encodeMatchesDocumentsContract() {
+        assertEncoded("primary:Android/data", PRIMARY_STORAGE + "/Android/data/");
+        assertEncoded("primary:", PRIMARY_STORAGE);
+        assertEncoded("primary:a b/100%/#[x]?&=+", PRIMARY_STORAGE + "/a b/100%/#[x]?&=+");
+        assertEncoded("primary:下载/音乐 😀", PRIMARY_STORAGE + "/下载/音乐 😀");
+        assertEncoded("emulated:00", "/storage/emulated/00");
+    }
+
+    @Test
+    public void encodeRemovableVolume() {
+        assertEncoded("6238-3332:", REMOVABLE_STORAGE);
+        assertEncoded("6238-3332:", REMOVABLE_STORAGE + "/");
+        assertEncoded("6238-3332:Music", REMOVABLE_STORAGE + "/Music");
+        assertEncoded("6238-3332:Music/a b/下载", REMOVABLE_STORAGE + "/Music/a b/下载");
+    }
+
+    @Test
+    public void encodeIgnoresExtraSlashes() {
+        assertEncoded("primary:Android/data", PRIMARY_STORAGE + "/Android/data///");
+        assertEncoded("primary:Android/data", "//" + PRIMARY_STORAGE.substring(1) + "/Android/data");
+        assertEncoded("primary:", PRIMARY_STORAGE + "/");
+        assertEncoded("6238-3332:Music", REMOVABLE_STORAGE + "/Music//");
+    }
+
+    @Test
+    public void encodeRejectsPathsOutsideStorage() {
+        assertNull(codec.pathToUri("/sdcard/Android"));
+        assertNull(codec.pathToUri("/data/data/xyz.xxin.test"));
+        assertNull(codec.pathToUri("/storagex/emulated/0"));
+        assertNull(codec.pathToUri("/storage"));
+        assertNull(codec.pathToUri("/storage/"));
+        assertNull(codec.pathToUri(""));
+    }
+
+    @Test
+    public void encodeSurrogatePairs() {
+        assertEncoded("primary:😀😀", PRIMARY_STORAGE + "/😀😀");
+        assertEncoded("primary:a𝄞b/𝄞", PRIMARY_STORAGE + "/a𝄞b/𝄞");
+        assertEncoded("6238-3332:😀", REMOVABLE_STORAGE + "/😀");
+    }
+
+    @Test
+    public void decodeRoundTrip() {
+        String[] paths = {
+                PRIMARY_STORAGE + "/Android/data",
+                PRIMARY_STORAGE + "/a b/100%/#[x]?&=+",
+                PRIMARY_STORAGE + "/下载/音乐 😀",
+                PRIMARY_STORAGE + "/😀😀/a𝄞b",
+                REMOVABLE_STORAGE + "/Music",
+                REMOVABLE_STORAGE + "/Music/😀",
+        };
+        for (String path : paths) {
+            assertEquals(path, codec.uriToPath(codec.pathToUri(path)));
+
+            // 由tree Uri构建的document Uri地址
+            boolean primary = path.startsWith(PRIMARY_STORAGE);
+            String volumePath = primary ? PRIMARY_STORAGE : REMOVABLE_STORAGE;
+            String documentId = (primary ? "primary:" : "6238-3332:") + path.substring(volumePath.length() + 1) + "/child";
+            Uri treeUri = Uri.parse(codec.pathToUri(path));
+            Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+            assertEquals(path + "/child", codec.uriToPath(documentUri.toString()));
+        }
+
+        assertEquals(PRIMARY_STORAGE + "/", codec.uriToPath(codec.pathToUri(PRIMARY_STORAGE)));
+        assertEquals(REMOVABLE_STORAGE + "/", codec.uriToPath(codec.pathToUri(REMOVABLE_STORAGE + "/")));
+        assertNull(codec.uriToPath("content://media/external/file/1"));
+    }
+
+    @Test
+    public void malformedEscapesAreKept() {
+        // 不合法的%XX原样保留
+        assertEquals(PRIMARY_STORAGE + "/a%ZZ%E4b", codec.uriToPath(PathCodec.URI_HEAD + "primary%3Aa%ZZ%E4b"));
+        // 字符串末尾不完整的%X、%和被截断的多字节序列
+        assertEquals(PRIMARY_STORAGE + "/a%4", codec.uriToPath(PathCodec.URI_HEAD + "primary%3Aa%4"));
+        assertEquals(PRIMARY_STORAGE + "/a%", codec.uriToPath(PathCodec.URI_HEAD + "primary%3Aa%"));
+        assertEquals(PRIMARY_STORAGE + "/a%E4%B8", codec.uriToPath(PathCodec.URI_HEAD + "primary%3Aa%E4%B8"));
+    }
+
+    private void assertEncoded(String documentId, String path) {
+        Uri expected = DocumentsContract.buildTreeDocumentUri(DocumentQuery.EXTERNAL_STORAGE_AUTHORITY, documentId);
+        assertEquals(expected.toString(), codec.pathToUri(path));
+    }
+}
@@ -0,0 +1,34 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * 在本地JVM上测试SAFUtil的基类
+ * <p>
+ * 每个测试前安装新的FakeDocumentsProvider，并以PERMISSION_DIR为权限目录创建清空了缓存的SAFUtil；
+ * 子类在自己的@Before中准备文件，需要统计操作次数时在准备完成后调用provider.reset()
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public abstract class ProviderTestCase {
+    protected static final String PERMISSION_DIR = "Android/data/xyz.xxin.test";
+    protected static final String ROOT_PATH = SAFUtil.PRIMARY_STORAGE + "/" + PERMISSION_DIR;
+
+    protected Context context;
+    protected FakeDocumentsProvider provider;
+    protected SAFUtil safUtil;
+
+    @Before
+    public void setUpProvider() {
+        context = RuntimeEnvironment.getApplication();
+        provider = FakeDocumentsProvider.install(context);
+        safUtil = SAFUtil.create(context, ROOT_PATH);
+        safUtil.clearCache();
+    }
+}
@@ -0,0 +1,141 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 验证RandomAccessDocument按位置读取、管道时向前读取重新打开，以及close()释放文件描述和缓冲区
+ */
+public class RandomAccessDocumentTest extends ProviderTestCase {
+    private static final int SIZE = 10000;
+    private static final String PATH = ROOT_PATH + "/a.bin";
+    private static final String DOCUMENT_ID = "primary:" + PERMISSION_DIR + "/a.bin";
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        provider.writeFile(PERMISSION_DIR + "/a.bin", content);
+    }
+
+    @Test
+    public void seekableReadsAtPosition() throws Exception {
+        try (RandomAccessDocument document = safUtil.openRandomAccess(PATH)) {
+            assertNotNull(document);
+            assertTrue(document.isSeekable());
+            assertEquals(SIZE, document.size());
+
+            assertArrayEquals(range(5000, 100), readFully(document, 5000, 100));
+            assertArrayEquals(range(10, 100), readFully(document, 10, 100));
+            assertEquals(-1, document.read(SIZE, ByteBuffer.allocate(1)));
+            assertEquals(1, document.map(SIZE - 1, 1).remaining());
+        }
+    }
+
+    @Test
+    public void pipeReopensOnBackwardRead() throws Exception {
+        provider.pipeDocument(DOCUMENT_ID);
+        try (RandomAccessDocument document = safUtil.openRandomAccess(PATH)) {
+            assertNotNull(document);
+            assertFalse(document.isSeekable());
+            provider.reset();
+            provider.pipeDocument(DOCUMENT_ID);
+
+            assertArrayEquals(range(5000, 100), readFully(document, 5000, 100));
+            assertArrayEquals(range(6000, 100), readFully(document, 6000, 100));
+            assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.OPEN));
+
+            // 向前读取时重新打开
+            assertArrayEquals(range(10, 100), readFully(document, 10, 100));
+            assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.OPEN));
+            try {
+                document.map(0, 1);
+                fail();
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void failedReopenFailsCleanly() throws Exception {
+        provider.pipeDocument(DOCUMENT_ID);
+        try (RandomAccessDocument document = safUtil.openRandomAccess(PATH)) {
+            readFully(document, 5000, 100);
+            provider.failDocument(DOCUMENT_ID);
+            try {
+                readFully(document, 10, 100);
+                fail();
+            } catch (IOException expected) {
+            }
+
+            // 不保留已关闭的流，恢复后再次读取时重新打开
+            provider.reset();
+            provider.pipeDocument(DOCUMENT_ID);
+            assertArrayEquals(range(5000, 100), readFully(document, 5000, 100));
+        }
+    }
+
+    @Test
+    public void closeReleasesDescriptor() throws Exception {
+        RandomAccessDocument document = safUtil.openRandomAccess(PATH);
+        assertNotNull(document);
+        document.close();
+
+        assertFalse(document.getChannel().isOpen());
+        try {
+            document.read(0, ByteBuffer.allocate(1));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void pipeBufferIsBorrowedFromPool() throws Exception {
+        BufferPool bufferPool = new BufferPool(1024, 1);
+        byte[] pooled = bufferPool.acquire();
+        bufferPool.release(pooled);
+        safUtil.setBufferPool(bufferPool);
+        provider.pipeDocument(DOCUMENT_ID);
+
+        RandomAccessDocument document = safUtil.openRandomAccess(PATH);
+        assertNotNull(document);
+        assertArrayEquals(range(3000, 2000), readFully(document, 3000, 2000));
+        // 读取时借出了池中的缓冲区
+        byte[] other = bufferPool.acquire();
+        assertNotSame(pooled, other);
+
+        document.close();
+        assertSame(pooled, bufferPool.acquire());
+        try {
+            document.read(0, ByteBuffer.allocate(1));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private byte[] range(int position, int length) {
+        return Arrays.copyOfRange(content, position, position + length);
+    }
+
+    private static byte[] readFully(RandomAccessDocument document, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        document.readFully(position, buffer);
+        return buffer.array();
+    }
+}
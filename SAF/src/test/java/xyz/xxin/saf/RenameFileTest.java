@@ -0,0 +1,71 @@
+package xyz.xxin.saf;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证renameFile后按新路径缓存的是重命名后的实际文件
+ */
+public class RenameFileTest extends ProviderTestCase {
+    private static final byte[] A = {'a'};
+    private static final byte[] B = {'b'};
+
+    @Before
+    public void setUp() throws Exception {
+        provider.writeFile(PERMISSION_DIR + "/a.txt", A);
+        provider.writeFile(PERMISSION_DIR + "/b.txt", B);
+        // 解析并缓存两个路径
+        assertNotNull(safUtil.getDocumentFile(ROOT_PATH + "/a.txt", true));
+        assertNotNull(safUtil.getDocumentFile(ROOT_PATH + "/b.txt", true));
+        provider.reset();
+    }
+
+    @Test
+    public void newPathIsCached() throws Exception {
+        assertTrue(safUtil.renameFile(ROOT_PATH + "/a.txt", true, "c.txt"));
+        provider.reset();
+
+        DocumentFile documentFile = safUtil.getDocumentFile(ROOT_PATH + "/c.txt", true);
+        assertNotNull(documentFile);
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertArrayEquals(A, read(ROOT_PATH + "/c.txt"));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/a.txt"));
+    }
+
+    @Test
+    public void renamedByProviderIsCachedUnderActualName() throws Exception {
+        // b.txt已存在，提供者自动改名
+        assertTrue(safUtil.renameFile(ROOT_PATH + "/a.txt", true, "b.txt"));
+        String actualName = "b.txt (1)";
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/" + actualName));
+
+        // 请求的路径仍是原来的b.txt
+        assertArrayEquals(B, read(ROOT_PATH + "/b.txt"));
+        assertArrayEquals(A, read(ROOT_PATH + "/" + actualName));
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream inputStream = safUtil.getInputStream(path)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package xyz.xxin.saf;
+
+import android.os.CancellationSignal;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 验证断点续传复制被取消后从检查点继续
+ */
+public class ResumableCopyTest extends ProviderTestCase {
+    private static final int SIZE = 10 * 1024 * 1024;
+    private static final int CANCEL_AFTER = 100;    // 第CANCEL_AFTER次检查取消信号时取消
+
+    private SAFMetrics metrics;
+    private byte[] content;
+    private DocumentFile source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        provider.writeFile(PERMISSION_DIR + "/source.bin", content);
+
+        safUtil.clearCheckpoints();
+        metrics = new SAFMetrics();
+        safUtil.setMetrics(metrics);
+        source = safUtil.getDocumentFile(ROOT_PATH + "/source.bin", true);
+        target = File.createTempFile("resumable", null);
+        target.deleteOnExit();
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        assertNull(safUtil.copyFileResumable(source, target, new CancelAfter(CANCEL_AFTER)));
+        long canceledAt = (long) (CANCEL_AFTER - 1) * BufferPool.getDefault().getBufferSize();
+
+        metrics.reset();
+        assertEquals(CopyMode.RESUMABLE, safUtil.copyFileResumable(source, target, null));
+
+        // 只复制了取消之后的部分
+        assertEquals(SIZE - canceledAt, metrics.snapshot().getBytesCopied());
+        assertArrayEquals(content, read(target));
+    }
+
+    @Test
+    public void restartsWhenSourceChanged() throws Exception {
+        assertNull(safUtil.copyFileResumable(source, target, new CancelAfter(CANCEL_AFTER)));
+
+        content[0]++;
+        content[SIZE - 1]++;
+        provider.writeFile(PERMISSION_DIR + "/source.bin", content);
+        metrics.reset();
+        assertEquals(CopyMode.RESUMABLE, safUtil.copyFileResumable(source, target, null));
+
+        assertEquals(SIZE, metrics.snapshot().getBytesCopied());
+        assertArrayEquals(content, read(target));
+    }
+
+    @Test
+    public void restartsWhenTargetChanged() throws Exception {
+        assertNull(safUtil.copyFileResumable(source, target, new CancelAfter(CANCEL_AFTER)));
+
+        // 目标文件被截断，检查点记录的末尾数据已不存在
+        new RandomAccessFile(target, "rw").getChannel().truncate(1024).close();
+        metrics.reset();
+        assertNotNull(safUtil.copyFileResumable(source, target, null));
+
+        assertEquals(SIZE, metrics.snapshot().getBytesCopied());
+        assertArrayEquals(content, read(target));
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int offset = 0;
+            int len;
+            while (offset < bytes.length && (len = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += len;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 第count次检查时取消，模拟复制中途被打断
+     */
+    private static final class CancelAfter extends CancellationSignal {
+        private int remaining;
+
+        CancelAfter(int count) {
+            this.remaining = count;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return --remaining <= 0;
+        }
+    }
+}
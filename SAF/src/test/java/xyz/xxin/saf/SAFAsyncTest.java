@@ -0,0 +1,160 @@
+package xyz.xxin.saf;
+
+import android.os.Looper;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 验证SAFAsync在回调线程中只回调一次结果，以及失败时回调onFailure并由Future抛出
+ */
+public class SAFAsyncTest extends ProviderTestCase {
+    private ExecutorService ioExecutor;
+    private CountingExecutor callbackExecutor;
+
+    @Before
+    public void setUp() {
+        provider.writeFile(PERMISSION_DIR + "/a", "a".getBytes());
+        ioExecutor = Executors.newSingleThreadExecutor();
+        callbackExecutor = new CountingExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        ioExecutor.shutdownNow();
+    }
+
+    @Test
+    public void successIsDeliveredOnCallbackExecutor() throws Exception {
+        Recorder<DocumentFile> recorder = new Recorder<>();
+        SAFAsync async = SAFAsync.create(safUtil, ioExecutor, callbackExecutor);
+
+        DocumentFile result = async.getDocumentFile(ROOT_PATH + "/a", true, recorder).get();
+
+        assertNotNull(result);
+        assertEquals(1, callbackExecutor.count.get());
+        assertEquals(1, recorder.successes.get());
+        assertEquals(0, recorder.failures.get());
+        assertSame(result, recorder.result);
+    }
+
+    @Test
+    public void failureIsDeliveredAndThrownByFuture() throws Exception {
+        provider.revokeDocument("primary:" + PERMISSION_DIR + "/a");
+        Recorder<InputStream> recorder = new Recorder<>();
+        SAFAsync async = SAFAsync.create(safUtil, ioExecutor, callbackExecutor);
+
+        Future<InputStream> future = async.getInputStream(ROOT_PATH + "/a", recorder);
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(e.getCause(), recorder.error);
+        }
+        assertEquals(1, callbackExecutor.count.get());
+        assertEquals(0, recorder.successes.get());
+        assertEquals(1, recorder.failures.get());
+    }
+
+    @Test
+    public void callbackExceptionIsNotDeliveredAsFailure() throws Exception {
+        final IllegalStateException error = new IllegalStateException("callback");
+        Recorder<DocumentFile> recorder = new Recorder<DocumentFile>() {
+            @Override
+            public void onSuccess(DocumentFile result) {
+                super.onSuccess(result);
+                throw error;
+            }
+        };
+        // 回调线程为null时在I/O线程直接回调
+        SAFAsync async = SAFAsync.create(safUtil, ioExecutor, null);
+
+        Future<DocumentFile> future = async.getDocumentFile(ROOT_PATH + "/a", true, recorder);
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+        assertEquals(1, recorder.successes.get());
+        assertEquals(0, recorder.failures.get());
+    }
+
+    @Test
+    public void defaultCallbackRunsOnMainThread() throws Exception {
+        final Thread[] callbackThread = new Thread[1];
+        Recorder<DocumentFile> recorder = new Recorder<DocumentFile>() {
+            @Override
+            public void onSuccess(DocumentFile result) {
+                super.onSuccess(result);
+                callbackThread[0] = Thread.currentThread();
+            }
+        };
+
+        safUtil.async().getDocumentFile(ROOT_PATH + "/a", true, recorder).get();
+        // 结果投递到主线程消息队列，执行队列前不会回调
+        assertNull(callbackThread[0]);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, recorder.successes.get());
+        assertSame(Looper.getMainLooper().getThread(), callbackThread[0]);
+    }
+
+    @Test
+    public void nullCallbackIsAllowed() throws Exception {
+        SAFAsync async = SAFAsync.create(safUtil, ioExecutor, callbackExecutor);
+
+        assertTrue(async.getDocumentFile(ROOT_PATH + "/a", true, null).get().isFile());
+        assertEquals(0, callbackExecutor.count.get());
+    }
+
+    private static class CountingExecutor implements Executor {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            count.incrementAndGet();
+            command.run();
+        }
+    }
+
+    private static class Recorder<T> implements SAFCallback<T> {
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile T result;
+        volatile Exception error;
+
+        @Override
+        public void onSuccess(T result) {
+            this.result = result;
+            successes.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            error = e;
+            failures.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package xyz.xxin.saf;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 验证SAFMetrics的查询、创建次数统计，耗时直方图的分桶边界，以及回调抛出异常时不影响方法本身
+ */
+public class SAFMetricsTest extends ProviderTestCase {
+    private SAFMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            provider.writeFile(PERMISSION_DIR + "/dir/file" + i, new byte[i]);
+        }
+        metrics = new SAFMetrics();
+        safUtil.setMetrics(metrics);
+    }
+
+    @Test
+    public void countsQueries() {
+        DocumentFile dir = safUtil.getDocumentFile(ROOT_PATH + "/dir", false);
+        assertNotNull(dir);
+        metrics.reset();
+
+        assertEquals(5, safUtil.list(dir).size());
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getQueryCount());
+        assertEquals(0, snapshot.getCreateCount());
+        assertEquals(1, snapshot.getLatencies().get("list").getCount());
+    }
+
+    @Test
+    public void countsCreates() {
+        // 依次创建x、y两个文件夹和z.bin
+        assertNotNull(safUtil.getDocumentFile(ROOT_PATH + "/x/y/z.bin", true));
+        assertEquals(3, metrics.snapshot().getCreateCount());
+
+        // 已存在时不再创建
+        safUtil.clearCache();
+        assertNotNull(safUtil.getDocumentFile(ROOT_PATH + "/x/y/z.bin", true));
+        assertEquals(3, metrics.snapshot().getCreateCount());
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().getCreateCount());
+        assertEquals(0, metrics.snapshot().getQueryCount());
+    }
+
+    @Test
+    public void histogramBucketBoundaries() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);           // 负数按0记录
+        histogram.record(999);          // 不足1微秒
+        histogram.record(1000);         // [1, 2)微秒
+        histogram.record(1999);
+        histogram.record(2000);         // [2, 4)微秒
+        histogram.record(3999);
+        histogram.record(4000);         // [4, 8)微秒
+        histogram.record(Long.MAX_VALUE);   // 超出范围的记在最后一个桶
+
+        MetricsSnapshot.Latency latency = histogram.snapshot();
+        long[] buckets = latency.getBuckets();
+        assertEquals(LatencyHistogram.BUCKET_COUNT, buckets.length);
+        assertEquals(2, buckets[0]);
+        assertEquals(2, buckets[1]);
+        assertEquals(2, buckets[2]);
+        assertEquals(1, buckets[3]);
+        assertEquals(1, buckets[LatencyHistogram.BUCKET_COUNT - 1]);
+        assertEquals(8, latency.getCount());
+        assertEquals(Long.MAX_VALUE, latency.getMaxNanos());
+        // 百分位返回所在桶的上限
+        assertEquals(1000, latency.getPercentileNanos(25));
+        assertEquals(2000, latency.getPercentileNanos(50));
+        assertEquals(8000, latency.getPercentileNanos(87.5));
+    }
+
+    @Test
+    public void throwingListenerDoesNotReplaceResult() {
+        final List<String> operations = new ArrayList<>();
+        metrics.addListener(new SAFMetrics.Listener() {
+            @Override
+            public void onOperation(String operation, long durationNanos) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        metrics.addListener(new SAFMetrics.Listener() {
+            @Override
+            public void onOperation(String operation, long durationNanos) {
+                operations.add(operation);
+            }
+        });
+
+        DocumentFile dir = safUtil.getDocumentFile(ROOT_PATH + "/dir", false);
+        operations.clear();
+
+        List<DocumentEntry> entries = safUtil.list(dir);
+        assertNotNull(entries);
+        assertEquals(5, entries.size());
+        // 后面的回调仍然执行
+        assertEquals(Arrays.asList("iterate", "list"), operations);
+    }
+}
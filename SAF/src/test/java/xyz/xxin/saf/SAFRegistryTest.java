@@ -0,0 +1,121 @@
+package xyz.xxin.saf;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证SAFRegistry按最深的权限目录路由、区分读写权限，以及refresh和保存新权限后的更新
+ */
+public class SAFRegistryTest extends ProviderTestCase {
+    private static final String ANDROID_DIR = SAFUtil.PRIMARY_STORAGE + "/Android";
+
+    private SAFRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        // 全局对象持有上一个测试的Context，每个测试重新创建
+        Field instance = SAFRegistry.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+        registry = SAFRegistry.getInstance(context);
+
+        grant("Android", false);
+        grant(PERMISSION_DIR, true);
+    }
+
+    @Test
+    public void nestedGrantRoutesToDeepest() {
+        assertEquals(ROOT_PATH, registry.getPermissionDir(ROOT_PATH + "/a/b.txt"));
+        assertEquals(ROOT_PATH, registry.getPermissionDir(ROOT_PATH));
+        assertEquals(ANDROID_DIR, registry.getPermissionDir(ANDROID_DIR + "/obb/a"));
+        // 只按完整的目录名匹配，名称前缀相同的兄弟目录不属于深层权限目录
+        assertEquals(ANDROID_DIR, registry.getPermissionDir(ROOT_PATH + "ing/a"));
+        assertEquals(new HashSet<>(Arrays.asList(ANDROID_DIR, ROOT_PATH)),
+                new HashSet<>(registry.getPermissionDirs()));
+    }
+
+    @Test
+    public void readOnlyGrantIsNotWritable() {
+        assertTrue(registry.isPermission(ANDROID_DIR + "/obb/a", false));
+        assertFalse(registry.isPermission(ANDROID_DIR + "/obb/a", true));
+        assertTrue(registry.isPermission(ROOT_PATH + "/a", false));
+        assertTrue(registry.isPermission(ROOT_PATH + "/a", true));
+    }
+
+    @Test
+    public void pathOutsideEveryGrantIsNotRouted() {
+        String path = SAFUtil.PRIMARY_STORAGE + "/Download/a";
+
+        assertNull(registry.route(path));
+        assertNull(registry.getPermissionDir(path));
+        assertFalse(registry.isPermission(path, false));
+        assertNull(registry.route(SAFUtil.PRIMARY_STORAGE));
+    }
+
+    @Test
+    public void routeReusesSAFUtilPerGrant() {
+        SAFUtil first = registry.route(ROOT_PATH + "/a");
+
+        assertNotNull(first);
+        assertSame(first, registry.route(ROOT_PATH + "/b/c"));
+        assertNotSame(first, registry.route(ANDROID_DIR + "/obb"));
+    }
+
+    @Test
+    public void refreshReadsReleasedAndNewGrants() {
+        SAFUtil before = registry.route(ROOT_PATH + "/a");
+        context.getContentResolver().releasePersistableUriPermission(treeUri("Android"), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        grant("Download", true);
+
+        // 在SAFUtil以外变更的权限在refresh前不可见
+        assertEquals(ANDROID_DIR, registry.getPermissionDir(ANDROID_DIR + "/obb"));
+        assertNull(registry.getPermissionDir(SAFUtil.PRIMARY_STORAGE + "/Download/a"));
+
+        registry.refresh();
+
+        assertNull(registry.getPermissionDir(ANDROID_DIR + "/obb"));
+        assertTrue(registry.isPermission(SAFUtil.PRIMARY_STORAGE + "/Download/a", true));
+        assertNotSame(before, registry.route(ROOT_PATH + "/a"));
+    }
+
+    @Test
+    public void savedPermissionIsAddedWithoutRefresh() {
+        registry.getPermissionDirs();
+        Uri uri = grant("Download", false);
+
+        SAFRegistry.onPermissionSaved(uri, false);
+
+        assertEquals(SAFUtil.PRIMARY_STORAGE + "/Download", registry.getPermissionDir(SAFUtil.PRIMARY_STORAGE + "/Download/a"));
+        assertTrue(registry.isPermission(SAFUtil.PRIMARY_STORAGE + "/Download/a", false));
+        assertFalse(registry.isPermission(SAFUtil.PRIMARY_STORAGE + "/Download/a", true));
+        assertEquals(3, registry.getPermissionDirs().size());
+    }
+
+    private Uri grant(String dir, boolean writable) {
+        Uri uri = treeUri(dir);
+        int flags = Intent.FLAG_GRANT_READ_URI_PERMISSION;
+        if (writable) flags |= Intent.FLAG_GRANT_WRITE_URI_PERMISSION;
+        context.getContentResolver().takePersistableUriPermission(uri, flags);
+        return uri;
+    }
+
+    private static Uri treeUri(String dir) {
+        return DocumentsContract.buildTreeDocumentUri(DocumentQuery.EXTERNAL_STORAGE_AUTHORITY, "primary:" + dir);
+    }
+}
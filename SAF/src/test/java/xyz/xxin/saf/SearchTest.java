@@ -0,0 +1,106 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证search的匹配、目录剪枝和惰性查询
+ */
+public class SearchTest extends ProviderTestCase {
+    private static final int DIRS = 6;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DIRS; i++) {
+            provider.writeFile(PERMISSION_DIR + "/dir" + i + "/a.sav", new byte[10]);
+            provider.writeFile(PERMISSION_DIR + "/dir" + i + "/b.txt", new byte[100]);
+            provider.writeFile(PERMISSION_DIR + "/dir" + i + "/saves/c.sav", new byte[1000]);
+        }
+
+        provider.reset();
+    }
+
+    @Test
+    public void namePatternMatchesAtAnyDepth() {
+        Set<String> paths = collect(new SearchQuery().glob("*.sav"));
+
+        assertEquals(DIRS * 2, paths.size());
+        assertTrue(paths.contains("dir0/a.sav"));
+        assertTrue(paths.contains("dir0/saves/c.sav"));
+    }
+
+    @Test
+    public void missingDirectoryIsNotCreated() {
+        assertNull(safUtil.search(ROOT_PATH + "/missing", new SearchQuery().glob("*.sav")));
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+
+    @Test
+    public void pathPatternPrunesDirectories() {
+        Set<String> paths = collect(new SearchQuery().glob("dir2/saves/*.sav"));
+
+        assertEquals(1, paths.size());
+        assertTrue(paths.contains("dir2/saves/c.sav"));
+        // 只列出了搜索目录、dir2和dir2/saves
+        assertEquals(3, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void anyDirsPatternAndDirectories() {
+        Set<String> paths = collect(new SearchQuery().glob("**/saves").includeDirectories(true));
+
+        assertEquals(DIRS, paths.size());
+        assertTrue(paths.contains("dir5/saves"));
+    }
+
+    @Test
+    public void mimeTypeAndSizeFilters() {
+        assertEquals(0, collect(new SearchQuery().mimeType("image/*")).size());
+        assertEquals(DIRS * 3, collect(new SearchQuery().mimeType("application/*")).size());
+
+        Set<String> paths = collect(new SearchQuery().size(50, 500));
+        assertEquals(DIRS, paths.size());
+        assertTrue(paths.contains("dir3/b.txt"));
+    }
+
+    @Test
+    public void maxDepthLimitsListing() {
+        Set<String> paths = collect(new SearchQuery().glob("*.sav").maxDepth(2));
+
+        assertEquals(DIRS, paths.size());
+        assertFalse(paths.contains("dir0/saves/c.sav"));
+        assertEquals(1 + DIRS, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void stoppingEarlySkipsRemainingQueries() {
+        try (DocumentSearch search = safUtil.search(ROOT_PATH, new SearchQuery().glob("*.sav"))) {
+            assertNotNull(search);
+            assertTrue(search.hasNext());
+            search.next();
+        }
+
+        assertTrue(provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN) < 1 + DIRS * 2);
+    }
+
+    private Set<String> collect(SearchQuery query) {
+        Set<String> paths = new HashSet<>();
+        try (DocumentSearch search = safUtil.search(ROOT_PATH, query)) {
+            assertNotNull(search);
+            while (search.hasNext()) {
+                paths.add(search.next().getPath());
+            }
+        }
+        return paths;
+    }
+}
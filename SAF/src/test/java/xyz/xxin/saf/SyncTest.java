@@ -0,0 +1,187 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证sync的计划、增量复制和镜像删除
+ */
+public class SyncTest extends ProviderTestCase {
+    private static final int DIRS = 3;
+    private static final int FILES = 4;
+
+    private File localDir;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DIRS; i++) {
+            for (int j = 0; j < FILES; j++) {
+                provider.writeFile(PERMISSION_DIR + "/data/dir" + i + "/file" + j, content(i, j));
+            }
+        }
+        provider.mkdirs(PERMISSION_DIR + "/data/empty");
+
+        localDir = Files.createTempDirectory("sync").toFile();
+        provider.reset();
+    }
+
+    @Test
+    public void backupCopiesOnlyChangedFiles() throws Exception {
+        SyncResult first = safUtil.sync(localDir, ROOT_PATH + "/data", new SyncOptions(SyncDirection.TO_FILE));
+
+        assertNotNull(first);
+        assertTrue(first.isSuccess());
+        assertEquals(DIRS * FILES, first.getPlan().getAdded().size());
+        assertArrayEquals(content(1, 2), Files.readAllBytes(new File(localDir, "dir1/file2").toPath()));
+        assertTrue(new File(localDir, "empty").isDirectory());
+
+        // 没有变化时不复制任何文件
+        SyncResult unchanged = safUtil.sync(localDir, ROOT_PATH + "/data", new SyncOptions(SyncDirection.TO_FILE));
+        assertNotNull(unchanged);
+        assertTrue(unchanged.getPlan().isEmpty());
+
+        provider.writeFile(PERMISSION_DIR + "/data/dir0/file0", "changed".getBytes());
+        provider.writeFile(PERMISSION_DIR + "/data/dir2/new", "new".getBytes());
+        provider.reset();
+        SyncResult changed = safUtil.sync(localDir, ROOT_PATH + "/data", new SyncOptions(SyncDirection.TO_FILE));
+
+        assertNotNull(changed);
+        assertTrue(changed.isSuccess());
+        assertEquals("dir2/new", changed.getPlan().getAdded().get(0).getPath());
+        assertEquals("dir0/file0", changed.getPlan().getUpdated().get(0).getPath());
+        assertEquals(2, changed.getResults().size());
+        assertEquals(2, provider.getCount(FakeDocumentsProvider.Operation.OPEN));
+        assertArrayEquals("changed".getBytes(), Files.readAllBytes(new File(localDir, "dir0/file0").toPath()));
+    }
+
+    @Test
+    public void dryRunOnlyPlans() {
+        SyncOptions options = new SyncOptions(SyncDirection.TO_FILE).dryRun(true);
+        SyncResult result = safUtil.sync(localDir, ROOT_PATH + "/data", options);
+
+        assertNotNull(result);
+        assertTrue(result.isDryRun());
+        assertFalse(result.isSuccess());
+        assertEquals(DIRS * FILES, result.getPlan().getAdded().size());
+        assertTrue(result.getResults().isEmpty());
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.OPEN));
+        assertEquals(0, localDir.list().length);
+    }
+
+    @Test
+    public void dryRunDoesNotCreateMissingTarget() throws Exception {
+        write(new File(localDir, "a.txt"), "aaaa");
+        write(new File(localDir, "sub/b.txt"), "bbbb");
+        SyncOptions options = new SyncOptions(SyncDirection.TO_DOCUMENT).dryRun(true);
+
+        SyncResult result = safUtil.sync(localDir, ROOT_PATH + "/missing/restored", options);
+
+        assertNotNull(result);
+        assertEquals(2, result.getPlan().getAdded().size());
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+
+    @Test
+    public void mirrorDeletionsRemovesExtraTargets() throws Exception {
+        safUtil.sync(localDir, ROOT_PATH + "/data", new SyncOptions(SyncDirection.TO_FILE));
+        write(new File(localDir, "dir0/extra"), "extra");
+        write(new File(localDir, "stale/a"), "a");
+        write(new File(localDir, "stale/sub/b"), "b");
+
+        SyncResult kept = safUtil.sync(localDir, ROOT_PATH + "/data", new SyncOptions(SyncDirection.TO_FILE));
+        assertNotNull(kept);
+        assertTrue(kept.getPlan().isEmpty());
+
+        SyncResult mirrored = safUtil.sync(localDir, ROOT_PATH + "/data",
+                new SyncOptions(SyncDirection.TO_FILE).mirrorDeletions(true));
+
+        assertNotNull(mirrored);
+        assertTrue(mirrored.isSuccess());
+        // 删除的目录下的子项不再单独列出
+        assertEquals(2, mirrored.getPlan().getDeleted().size());
+        assertEquals("dir0/extra", mirrored.getPlan().getDeleted().get(0).getPath());
+        assertEquals("stale", mirrored.getPlan().getDeleted().get(1).getPath());
+        assertFalse(new File(localDir, "dir0/extra").exists());
+        assertFalse(new File(localDir, "stale").exists());
+    }
+
+    @Test
+    public void restoreToDocumentAndCompareContent() throws Exception {
+        write(new File(localDir, "restore/a.txt"), "aaaa");
+        write(new File(localDir, "restore/sub/b.txt"), "bbbb");
+
+        SyncResult first = safUtil.sync(localDir, ROOT_PATH + "/restored", new SyncOptions(SyncDirection.TO_DOCUMENT));
+        assertNotNull(first);
+        assertTrue(first.isSuccess());
+        assertEquals(2, first.getPlan().getAdded().size());
+
+        SyncResult unchanged = safUtil.sync(localDir, ROOT_PATH + "/restored", new SyncOptions(SyncDirection.TO_DOCUMENT));
+        assertNotNull(unchanged);
+        assertTrue(unchanged.getPlan().isEmpty());
+
+        // 大小相同、修改时间更早的修改只能通过内容发现
+        File b = new File(localDir, "restore/sub/b.txt");
+        write(b, "cccc");
+        b.setLastModified(1000);
+        SyncResult byTime = safUtil.sync(localDir, ROOT_PATH + "/restored", new SyncOptions(SyncDirection.TO_DOCUMENT));
+        assertNotNull(byTime);
+        assertTrue(byTime.getPlan().isEmpty());
+
+        SyncResult byContent = safUtil.sync(localDir, ROOT_PATH + "/restored",
+                new SyncOptions(SyncDirection.TO_DOCUMENT).compareContent(true));
+        assertNotNull(byContent);
+        assertTrue(byContent.isSuccess());
+        assertEquals(1, byContent.getPlan().getUpdated().size());
+        assertEquals("restore/sub/b.txt", byContent.getPlan().getUpdated().get(0).getPath());
+    }
+
+    @Test
+    public void unreadableFileCountsAsChanged() throws Exception {
+        write(new File(localDir, "a.txt"), "aaaa");
+        write(new File(localDir, "b.txt"), "bbbb");
+        safUtil.sync(localDir, ROOT_PATH + "/restored", new SyncOptions(SyncDirection.TO_DOCUMENT));
+
+        // 打开时抛出运行时异常的文件不能被当作相同而跳过
+        provider.revokeDocument("primary:" + PERMISSION_DIR + "/restored/b.txt");
+        SyncResult result = safUtil.sync(localDir, ROOT_PATH + "/restored",
+                new SyncOptions(SyncDirection.TO_DOCUMENT).compareContent(true));
+
+        assertNotNull(result);
+        assertEquals(1, result.getPlan().getUpdated().size());
+        assertEquals("b.txt", result.getPlan().getUpdated().get(0).getPath());
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getFailed().size());
+    }
+
+    @Test
+    public void missingSourceReturnsNull() {
+        SyncOptions options = new SyncOptions(SyncDirection.TO_FILE).mirrorDeletions(true);
+
+        assertNull(safUtil.sync(localDir, ROOT_PATH + "/missing", options));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+
+    private static byte[] content(int dir, int file) {
+        return ("content-" + dir + "-" + file).getBytes();
+    }
+
+    private static void write(File file, String text) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(text.getBytes());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package xyz.xxin.saf;
+
+import android.os.CancellationSignal;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证copyTree、moveTree的查询次数、部分失败、取消和移动后的清理
+ */
+public class TreeTransferTest extends ProviderTestCase {
+    private static final int FILES = 30;
+    private static final int SUB_FILES = 5;
+
+    private File localDir;
+
+    @Before
+    public void setUp() throws Exception {
+        localDir = Files.createTempDirectory("transfer").toFile();
+        for (int i = 0; i < FILES; i++) {
+            write(new File(localDir, "file" + i), "file" + i);
+        }
+        for (int i = 0; i < SUB_FILES; i++) {
+            write(new File(localDir, "sub/f" + i), "f" + i);
+        }
+        provider.writeFile(PERMISSION_DIR + "/src/a", "a".getBytes());
+        provider.writeFile(PERMISSION_DIR + "/src/b", "b".getBytes());
+        provider.writeFile(PERMISSION_DIR + "/src/c", "c".getBytes());
+        provider.mkdirs(PERMISSION_DIR + "/target");
+    }
+
+    @Test
+    public void emptyTargetIsListedOnce() {
+        DocumentFile target = safUtil.getDocumentFile(ROOT_PATH + "/target", false);
+        provider.reset();
+
+        TransferResult result = safUtil.copyTree(localDir, target, null, null);
+
+        assertTrue(result.isSuccess());
+        assertEquals(FILES + SUB_FILES, result.getResults().size());
+        // 只列出已存在的目标目录，新创建的sub及所有文件都直接创建
+        assertEquals(1, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(1, provider.getQueryCount());
+        assertEquals(FILES + SUB_FILES + 1, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+    }
+
+    @Test
+    public void existingTargetFilesAreOverwritten() throws Exception {
+        provider.writeFile(PERMISSION_DIR + "/target/file0", "old".getBytes());
+        provider.writeFile(PERMISSION_DIR + "/target/sub/f0", "old".getBytes());
+        DocumentFile target = safUtil.getDocumentFile(ROOT_PATH + "/target", false);
+        provider.reset();
+
+        TransferResult result = safUtil.copyTree(localDir, target, null, null);
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(FILES - 1 + SUB_FILES - 1, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/target/file0 (1)"));
+        assertArrayEquals("file0".getBytes(), read(ROOT_PATH + "/target/file0"));
+        assertArrayEquals("f0".getBytes(), read(ROOT_PATH + "/target/sub/f0"));
+    }
+
+    @Test
+    public void failedFileDoesNotStopOthers() throws Exception {
+        provider.failDocument("primary:" + PERMISSION_DIR + "/src/b");
+        File target = Files.createTempDirectory("copy").toFile();
+
+        TransferResult result = safUtil.copyTree(safUtil.getDocumentFile(ROOT_PATH + "/src", false), target, null, null);
+
+        assertFalse(result.isSuccess());
+        assertEquals(3, result.getTotal());
+        assertEquals(3, result.getResults().size());
+        assertEquals(1, result.getFailed().size());
+        assertEquals("b", result.getFailed().get(0).getPath());
+        assertArrayEquals("a".getBytes(), Files.readAllBytes(new File(target, "a").toPath()));
+        assertArrayEquals("c".getBytes(), Files.readAllBytes(new File(target, "c").toPath()));
+    }
+
+    @Test
+    public void listenerFailureIsRecorded() throws Exception {
+        File target = Files.createTempDirectory("copy").toFile();
+
+        TransferResult result = safUtil.copyTree(safUtil.getDocumentFile(ROOT_PATH + "/src", false), target,
+                new TransferListener() {
+                    @Override
+                    public void onProgress(TransferResult.FileResult result, int finished, int total,
+                                           long finishedBytes, long totalBytes) {
+                        if (result.getPath().equals("a")) throw new IllegalStateException("listener");
+                    }
+                }, null);
+
+        assertFalse(result.isSuccess());
+        assertEquals(3, result.getResults().size());
+        assertEquals(1, result.getFailed().size());
+        assertTrue(result.getFailed().get(0).getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void cancelStopsRemainingFiles() {
+        safUtil.setTransferThreads(1);
+        final CancellationSignal signal = new CancellationSignal();
+        DocumentFile target = safUtil.getDocumentFile(ROOT_PATH + "/target", false);
+
+        TransferResult result = safUtil.copyTree(localDir, target, new TransferListener() {
+            @Override
+            public void onProgress(TransferResult.FileResult result, int finished, int total,
+                                   long finishedBytes, long totalBytes) {
+                signal.cancel();
+            }
+        }, signal);
+
+        assertTrue(result.isCancelled());
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getResults().size());
+        assertEquals(FILES + SUB_FILES, result.getTotal());
+    }
+
+    @Test
+    public void moveDeletesSourceDirectory() throws Exception {
+        File target = Files.createTempDirectory("move").toFile();
+
+        TransferResult result = safUtil.moveTree(safUtil.getDocumentFile(ROOT_PATH + "/src", false), target, null, null);
+
+        assertTrue(result.isSuccess());
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/src"));
+        assertArrayEquals("b".getBytes(), Files.readAllBytes(new File(target, "b").toPath()));
+    }
+
+    @Test
+    public void failedMoveKeepsUnmovedFiles() throws Exception {
+        provider.failDocument("primary:" + PERMISSION_DIR + "/src/b");
+        File target = Files.createTempDirectory("move").toFile();
+
+        TransferResult result = safUtil.moveTree(safUtil.getDocumentFile(ROOT_PATH + "/src", false), target, null, null);
+
+        assertFalse(result.isSuccess());
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/src"));
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/src/b"));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/src/a"));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/src/c"));
+    }
+
+    @Test
+    public void movedPathIsNotServedFromCache() throws Exception {
+        // 先解析一次，使源文件的路径进入缓存
+        safUtil.getDocumentFile(ROOT_PATH + "/src/a", true);
+        File target = Files.createTempDirectory("move").toFile();
+
+        assertTrue(safUtil.moveTree(safUtil.getDocumentFile(ROOT_PATH + "/src", false), target, null, null).isSuccess());
+        provider.reset();
+
+        DocumentFile moved = safUtil.getDocumentFile(ROOT_PATH + "/src/a", true);
+
+        // 缓存已失效，重新创建而不是返回已删除的文档
+        assertTrue(moved.exists());
+        assertEquals(2, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/src/a"));
+    }
+
+    @Test
+    public void failedSourceDirectoryDeleteIsRecorded() throws Exception {
+        provider.mkdirs(PERMISSION_DIR + "/empty/sub");
+        provider.setFailureRate(FakeDocumentsProvider.Operation.DELETE, 1);
+        File target = Files.createTempDirectory("move").toFile();
+
+        TransferResult result = safUtil.moveTree(safUtil.getDocumentFile(ROOT_PATH + "/empty", false), target, null, null);
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getFailed().size());
+        assertEquals("", result.getFailed().get(0).getPath());
+        assertTrue(provider.exists("primary:" + PERMISSION_DIR + "/empty"));
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream inputStream = safUtil.getInputStream(path)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(text.getBytes());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package xyz.xxin.saf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 验证TreeWalker的回调顺序、跳过和终止
+ */
+public class TreeWalkerTest extends ProviderTestCase {
+    private static final int DIRS = 8;
+    private static final int FILES = 5;
+
+    private TreeWalker walker;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < DIRS; i++) {
+            for (int j = 0; j < DIRS; j++) {
+                for (int k = 0; k < FILES; k++) {
+                    provider.writeFile(PERMISSION_DIR + "/dir" + i + "/sub" + j + "/file" + k, new byte[k]);
+                }
+            }
+        }
+
+        walker = safUtil.treeWalker(ROOT_PATH).setThreads(4).setMaxQueries(2);
+        provider.reset();
+    }
+
+    @Test
+    public void visitsEveryEntryAndPostVisitsAfterChildren() {
+        Recorder recorder = new Recorder(null);
+
+        assertTrue(walker.walk(recorder, null));
+
+        assertEquals(DIRS * DIRS * FILES, recorder.files.size());
+        assertEquals(1 + DIRS + DIRS * DIRS, recorder.postVisited.size());
+        assertEquals("", recorder.postVisited.get(recorder.postVisited.size() - 1));
+        assertEquals(1 + DIRS + DIRS * DIRS, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+        assertEquals(0, recorder.violations);
+    }
+
+    @Test
+    public void skipSubtreeDoesNotListDirectory() {
+        Recorder recorder = new Recorder("dir3");
+
+        assertTrue(walker.walk(recorder, null));
+
+        assertEquals((DIRS - 1) * DIRS * FILES, recorder.files.size());
+        assertFalse(recorder.postVisited.contains("dir3"));
+        assertEquals(1 + (DIRS - 1) + (DIRS - 1) * DIRS, provider.getCount(FakeDocumentsProvider.Operation.QUERY_CHILDREN));
+    }
+
+    @Test
+    public void terminateStopsWalk() {
+        final int[] files = new int[1];
+        boolean completed = walker.walk(new TreeVisitor() {
+            @Override
+            public VisitResult preVisitDirectory(String path, DocumentEntry dir) {
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult visitFile(String path, DocumentEntry file) {
+                return ++files[0] == 3 ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisitDirectory(String path, DocumentEntry dir, IOException error) {
+                return VisitResult.CONTINUE;
+            }
+        }, null);
+
+        assertFalse(completed);
+        assertEquals(3, files[0]);
+    }
+
+    @Test
+    public void missingDirectoryIsNotCreated() {
+        boolean completed = safUtil.treeWalker(ROOT_PATH + "/missing").walk(new Recorder(null), null);
+
+        assertFalse(completed);
+        assertEquals(0, provider.getCount(FakeDocumentsProvider.Operation.CREATE));
+        assertFalse(provider.exists("primary:" + PERMISSION_DIR + "/missing"));
+    }
+
+    @Test
+    public void visitorExceptionIsRethrownToCaller() {
+        final IllegalStateException thrown = new IllegalStateException("visitor");
+        try {
+            walker.walk(new Recorder(null) {
+                @Override
+                public VisitResult visitFile(String path, DocumentEntry file) {
+                    if (path.equals("dir5/sub5/file3")) throw thrown;
+                    return super.visitFile(path, file);
+                }
+            }, null);
+            fail("visitor exception was swallowed");
+        } catch (IllegalStateException e) {
+            assertSame(thrown, e);
+        }
+    }
+
+    /**
+     * 记录回调，跳过名为skip的目录
+     */
+    private static class Recorder implements TreeVisitor {
+        private final String skip;
+        private final Set<String> preVisited = new HashSet<>();
+        private final List<String> postVisited = new ArrayList<>();
+        private final List<String> files = new ArrayList<>();
+        private int violations;     // 回调顺序错误的次数，回调在工作线程中执行，不能直接断言
+
+        Recorder(String skip) {
+            this.skip = skip;
+        }
+
+        @Override
+        public VisitResult preVisitDirectory(String path, DocumentEntry dir) {
+            preVisited.add(path);
+            return path.equals(skip) ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+        }
+
+        @Override
+        public VisitResult visitFile(String path, DocumentEntry file) {
+            // 所在目录已回调过preVisitDirectory，且尚未完成
+            String parent = path.substring(0, path.lastIndexOf('/'));
+            if (!preVisited.contains(parent) || postVisited.contains(parent)) violations++;
+            files.add(path);
+            return VisitResult.CONTINUE;
+        }
+
+        @Override
+        public VisitResult postVisitDirectory(String path, DocumentEntry dir, IOException error) {
+            if (error != null) violations++;
+            // 子目录都已完成
+            for (String visited : preVisited) {
+                boolean child = path.isEmpty() ? !visited.isEmpty() : visited.startsWith(path + "/");
+                if (child && !visited.equals(skip) && !postVisited.contains(visited)) {
+                    violations++;
+                }
+            }
+            postVisited.add(path);
+            return VisitResult.CONTINUE;
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package xyz.xxin.saf;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ProviderInfo;
+import android.content.pm.ResolveInfo;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import org.robolectric.Robolectric;
+import org.robolectric.Shadows;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 运行在本地JVM上的com.android.externalstorage.documents替身
+ * <p>
+ * 目录结构保存在内存中，文件内容保存在临时目录下的真实文件中（因此打开的文件描述可以走FileChannel）；
+ * document id的规则与真实的externalstorage提供者一致：primary:Android/data/...
+ * <p>
+ * 可以注入每类操作的延迟（模拟跨进程调用的开销）、额外的子文件行数（模拟巨大的目录）和失败，
+ * 并统计每类操作的次数，用于验证SAFUtil的查询次数
+ */
+public class FakeDocumentsProvider extends ContentProvider {
+    public static final String AUTHORITY = DocumentQuery.EXTERNAL_STORAGE_AUTHORITY;
+    public static final String ROOT_ID = "primary:";
+
+    // DocumentsContract中隐藏的常量
+    private static final String METHOD_CREATE_DOCUMENT = "android:createDocument";
+    private static final String METHOD_RENAME_DOCUMENT = "android:renameDocument";
+    private static final String METHOD_DELETE_DOCUMENT = "android:deleteDocument";
+    private static final String EXTRA_URI = "uri";
+
+    private static final String[] DEFAULT_PROJECTION = {
+            Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME,
+            Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_SIZE,
+            Document.COLUMN_LAST_MODIFIED,
+            Document.COLUMN_FLAGS
+    };
+
+    /**
+     * 可注入延迟、失败并统计次数的操作类型
+     */
+    public enum Operation {
+        QUERY_DOCUMENT,     // 查询单个文档
+        QUERY_CHILDREN,     // 查询子文件列表
+        CREATE,             // 创建文档
+        RENAME,             // 重命名文档
+        DELETE,             // 删除文档
+        OPEN                // 打开文件描述
+    }
+
+    private final Map<String, Doc> docs = new ConcurrentHashMap<>();
+    private File storageDir;
+
+    private final Map<Operation, AtomicLong> counts = new EnumMap<>(Operation.class);
+    private final Map<Operation, Long> latencies = new EnumMap<>(Operation.class);     // 纳秒
+    private final Map<Operation, Double> failureRates = new EnumMap<>(Operation.class);
+    private final Set<String> failingDocuments = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> revokedDocuments = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> pipeDocuments = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<String, Integer> interruptedListings = new ConcurrentHashMap<>();   // document id => 失败前返回的行数
+    private final Random random = new Random(0);
+    private volatile int paddingRows;       // 每次查询子文件列表时额外返回的行数
+
+    /**
+     * 注册到Robolectric，并让DocumentsContract.isDocumentUri认出该提供者
+     *
+     * @param context 上下文
+     */
+    public static FakeDocumentsProvider install(Context context) {
+        ProviderInfo providerInfo = new ProviderInfo();
+        providerInfo.authority = AUTHORITY;
+        providerInfo.packageName = context.getPackageName();
+        providerInfo.name = FakeDocumentsProvider.class.getName();
+        providerInfo.exported = true;
+        providerInfo.grantUriPermissions = true;
+
+        ResolveInfo resolveInfo = new ResolveInfo();
+        resolveInfo.providerInfo = providerInfo;
+        Shadows.shadowOf(context.getPackageManager())
+                .addResolveInfoForIntent(new Intent(DocumentsContract.PROVIDER_INTERFACE), resolveInfo);
+
+        return Robolectric.buildContentProvider(FakeDocumentsProvider.class).create(providerInfo).get();
+    }
+
+    @Override
+    public boolean onCreate() {
+        try {
+            storageDir = Files.createTempDirectory("fake-documents").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        docs.put(ROOT_ID, new Doc(ROOT_ID, "primary", Document.MIME_TYPE_DIR, null));
+        for (Operation operation : Operation.values()) {
+            counts.put(operation, new AtomicLong());
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // 注入与统计
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * 设置某类操作的固定延迟，模拟跨进程调用的开销
+     *
+     * @param operation 操作类型
+     * @param nanos     延迟，单位纳秒
+     */
+    public synchronized void setLatency(Operation operation, long nanos) {
+        latencies.put(operation, nanos);
+    }
+
+    /**
+     * 设置某类操作的失败概率，失败时抛出与真实提供者相同类型的异常
+     *
+     * @param operation 操作类型
+     * @param rate      失败概率，0~1
+     */
+    public synchronized void setFailureRate(Operation operation, double rate) {
+        failureRates.put(operation, rate);
+    }
+
+    /**
+     * 对某个文档的所有操作都失败
+     *
+     * @param documentId document id
+     */
+    public void failDocument(String documentId) {
+        failingDocuments.add(documentId);
+    }
+
+    /**
+     * 模拟权限被撤销：打开该文档时抛出SecurityException，而不是FileNotFoundException
+     *
+     * @param documentId document id
+     */
+    public void revokeDocument(String documentId) {
+        revokedDocuments.add(documentId);
+    }
+
+    /**
+     * 模拟提供者以管道返回该文档：只能通过openInputStream顺序读取，以openFileDescriptor打开时失败，无法随机访问
+     *
+     * @param documentId document id
+     */
+    public void pipeDocument(String documentId) {
+        pipeDocuments.add(documentId);
+    }
+
+    /**
+     * 模拟列出目录时中途失败：子文件列表游标读出指定行数后，再移动游标时抛出IllegalStateException
+     *
+     * @param documentId 目录的document id
+     * @param rows       失败前能读出的行数
+     */
+    public void interruptListing(String documentId, int rows) {
+        interruptedListings.put(documentId, rows);
+    }
+
+    /**
+     * 每次查询子文件列表时额外返回的行数，模拟兄弟节点巨多的目录而无需真正创建；
+     * 这些行的document id不存在，对它们的单独查询会失败
+     *
+     * @param rows 行数
+     */
+    public void setPaddingRows(int rows) {
+        this.paddingRows = rows;
+    }
+
+    /**
+     * 某类操作的执行次数
+     *
+     * @param operation 操作类型
+     */
+    public long getCount(Operation operation) {
+        return counts.get(operation).get();
+    }
+
+    /**
+     * 查询次数（单个文档和子文件列表）
+     */
+    public long getQueryCount() {
+        return getCount(Operation.QUERY_DOCUMENT) + getCount(Operation.QUERY_CHILDREN);
+    }
+
+    /**
+     * 清空统计次数、延迟、失败设置
+     */
+    public synchronized void reset() {
+        for (AtomicLong count : counts.values()) {
+            count.set(0);
+        }
+        latencies.clear();
+        failureRates.clear();
+        failingDocuments.clear();
+        revokedDocuments.clear();
+        pipeDocuments.clear();
+        interruptedListings.clear();
+        paddingRows = 0;
+    }
+
+    /**
+     * 每次操作前调用：计数、模拟延迟、按设置抛出失败
+     */
+    private void onOperation(Operation operation, String documentId) {
+        counts.get(operation).incrementAndGet();
+
+        Long latency;
+        Double failureRate;
+        synchronized (this) {
+            latency = latencies.get(operation);
+            failureRate = failureRates.get(operation);
+        }
+        if (latency != null && latency > 0) {
+            long deadline = System.nanoTime() + latency;
+            while (System.nanoTime() < deadline) {
+                // 忙等，sleep的精度不足以模拟微秒级延迟
+                Thread.yield();
+            }
+        }
+
+        boolean fail = failingDocuments.contains(documentId);
+        if (!fail && failureRate != null) {
+            synchronized (random) {
+                fail = random.nextDouble() < failureRate;
+            }
+        }
+        if (fail) throw new IllegalStateException("Injected failure: " + operation + " " + documentId);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // 测试准备
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * 创建目录及其所有上级目录
+     *
+     * @param relativePath 相对于主储存目录的路径，如：Android/data/test
+     * @return 目录的document id
+     */
+    public String mkdirs(String relativePath) {
+        Doc doc = docs.get(ROOT_ID);
+        for (String name : relativePath.split("/")) {
+            if (name.isEmpty()) continue;
+            Doc child = doc.children.get(name);
+            if (child == null) child = addChild(doc, name, Document.MIME_TYPE_DIR);
+            doc = child;
+        }
+        return doc.id;
+    }
+
+    /**
+     * 创建文件并写入内容，上级目录不存在时自动创建
+     *
+     * @param relativePath 相对于主储存目录的路径
+     * @param content      文件内容
+     * @return 文件的document id
+     */
+    public String writeFile(String relativePath, byte[] content) throws IOException {
+        int index = relativePath.lastIndexOf('/');
+        Doc parent = docs.get(index < 0 ? ROOT_ID : mkdirs(relativePath.substring(0, index)));
+        String name = relativePath.substring(index + 1);
+
+        Doc doc = parent.children.get(name);
+        if (doc == null) doc = addChild(parent, name, "application/octet-stream");
+        try (FileOutputStream outputStream = new FileOutputStream(doc.file)) {
+            outputStream.write(content);
+        }
+        doc.touch();
+        return doc.id;
+    }
+
+    /**
+     * 文档是否存在
+     *
+     * @param documentId document id
+     */
+    public boolean exists(String documentId) {
+        return docs.containsKey(documentId);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // ContentProvider
+    // ---------------------------------------------------------------------------------------------
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        List<String> segments = uri.getPathSegments();
+        boolean children = "children".equals(segments.get(segments.size() - 1));
+        String documentId = documentId(uri);
+        onOperation(children ? Operation.QUERY_CHILDREN : Operation.QUERY_DOCUMENT, documentId);
+        Doc doc = requireDoc(documentId);
+
+        MatrixCursor cursor = new MatrixCursor(projection != null ? projection : DEFAULT_PROJECTION);
+        if (children) {
+            // 额外的行排在真实子文件之前，逐个比较文件名时必须先经过它们
+            int padding = paddingRows;
+            for (int i = 0; i < padding; i++) {
+                addRow(cursor, new Doc(doc.id + (doc.id.endsWith(":") ? "" : "/") + "padding-" + i,
+                        "padding-" + i, Document.MIME_TYPE_DIR, null));
+            }
+            for (Doc child : doc.childList()) {
+                addRow(cursor, child);
+            }
+            Integer rows = interruptedListings.get(documentId);
+            if (rows != null) return new InterruptedCursor(cursor, rows, documentId);
+        } else {
+            addRow(cursor, doc);
+        }
+        return cursor;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (extras == null) return super.call(method, arg, extras);
+        Uri uri = extras.getParcelable(EXTRA_URI);
+        Bundle out = new Bundle();
+        switch (method) {
+            case METHOD_CREATE_DOCUMENT: {
+                onOperation(Operation.CREATE, DocumentsContract.getDocumentId(uri));
+                Doc parent = requireDoc(DocumentsContract.getDocumentId(uri));
+                Doc child = addChild(parent, uniqueName(parent, extras.getString(Document.COLUMN_DISPLAY_NAME)),
+                        extras.getString(Document.COLUMN_MIME_TYPE));
+                out.putParcelable(EXTRA_URI, DocumentsContract.buildDocumentUriUsingTree(uri, child.id));
+                return out;
+            }
+            case METHOD_RENAME_DOCUMENT: {
+                onOperation(Operation.RENAME, DocumentsContract.getDocumentId(uri));
+                Doc doc = requireDoc(DocumentsContract.getDocumentId(uri));
+                rename(doc, extras.getString(Document.COLUMN_DISPLAY_NAME));
+                out.putParcelable(EXTRA_URI, DocumentsContract.buildDocumentUriUsingTree(uri, doc.id));
+                return out;
+            }
+            case METHOD_DELETE_DOCUMENT: {
+                onOperation(Operation.DELETE, DocumentsContract.getDocumentId(uri));
+                Doc doc = requireDoc(DocumentsContract.getDocumentId(uri));
+                delete(doc);
+                return out;
+            }
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    @Override
+    public AssetFileDescriptor openAssetFile(Uri uri, String mode) throws FileNotFoundException {
+        ParcelFileDescriptor descriptor = openFile(uri, mode);
+        if (!mode.contains("w") && pipeDocuments.contains(documentId(uri))) {
+            // 声明了长度的AssetFileDescriptor只能通过openInputStream读取，openFileDescriptor会因不是完整文件而失败
+            return new AssetFileDescriptor(descriptor, 0, descriptor.getStatSize());
+        }
+        return new AssetFileDescriptor(descriptor, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        String documentId = documentId(uri);
+        if (revokedDocuments.contains(documentId)) throw new SecurityException("Permission revoked: " + documentId);
+        try {
+            onOperation(Operation.OPEN, documentId);
+        } catch (IllegalStateException e) {
+            throw new FileNotFoundException(e.getMessage());
+        }
+        Doc doc = docs.get(documentId);
+        if (doc == null || doc.file == null) throw new FileNotFoundException(uri.toString());
+        if (mode.contains("w")) doc.touch();
+        return ParcelFileDescriptor.open(doc.file, ParcelFileDescriptor.parseMode(mode));
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        Doc doc = docs.get(documentId(uri));
+        return doc != null ? doc.mimeType : null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // 内部实现
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * 从tree/{id}/document/{id}[/children]或document/{id}[/children]中取出document id
+     */
+    private static String documentId(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if ("tree".equals(segments.get(0))) {
+            return segments.size() >= 4 ? segments.get(3) : segments.get(1);
+        }
+        return segments.get(1);
+    }
+
+    private Doc requireDoc(String documentId) {
+        Doc doc = docs.get(documentId);
+        if (doc == null) throw new IllegalArgumentException("No such document: " + documentId);
+        return doc;
+    }
+
+    private Doc addChild(Doc parent, String name, String mimeType) {
+        String id = parent.id.endsWith(":") ? parent.id + name : parent.id + "/" + name;
+        File file = null;
+        if (!Document.MIME_TYPE_DIR.equals(mimeType)) {
+            try {
+                file = File.createTempFile("doc", null, storageDir);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        Doc child = new Doc(id, name, mimeType, file);
+        synchronized (parent) {
+            parent.children.put(name, child);
+        }
+        parent.touch();
+        docs.put(id, child);
+        return child;
+    }
+
+    /**
+     * 与真实提供者一样，重名时自动在文件名后加上序号
+     */
+    private static String uniqueName(Doc parent, String name) {
+        synchronized (parent) {
+            if (!parent.children.containsKey(name)) return name;
+            for (int i = 1; ; i++) {
+                String candidate = name + " (" + i + ")";
+                if (!parent.children.containsKey(candidate)) return candidate;
+            }
+        }
+    }
+
+    private void rename(Doc doc, String name) {
+        Doc parent = docs.get(parentId(doc.id));
+        String newName;
+        synchronized (parent) {
+            parent.children.remove(doc.name);
+            // 与真实提供者一样，新名称已存在时自动加上序号
+            newName = uniqueName(parent, name);
+            parent.children.put(newName, doc);
+        }
+        parent.touch();
+        doc.name = newName;
+        reId(doc, parent.id.endsWith(":") ? parent.id + newName : parent.id + "/" + newName);
+    }
+
+    /**
+     * 重命名后，该文档及其所有子文档的id都会改变
+     */
+    private void reId(Doc doc, String newId) {
+        docs.remove(doc.id);
+        doc.id = newId;
+        docs.put(newId, doc);
+        for (Doc child : doc.childList()) {
+            reId(child, newId + "/" + child.name);
+        }
+    }
+
+    private void delete(Doc doc) {
+        for (Doc child : doc.childList()) {
+            delete(child);
+        }
+        Doc parent = docs.get(parentId(doc.id));
+        if (parent != null) {
+            synchronized (parent) {
+                parent.children.remove(doc.name);
+            }
+            parent.touch();
+        }
+        docs.remove(doc.id);
+        if (doc.file != null) doc.file.delete();
+    }
+
+    private static String parentId(String id) {
+        int index = id.lastIndexOf('/');
+        return index < 0 ? id.substring(0, id.indexOf(':') + 1) : id.substring(0, index);
+    }
+
+    private static void addRow(MatrixCursor cursor, Doc doc) {
+        String[] columns = cursor.getColumnNames();
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case Document.COLUMN_DOCUMENT_ID:
+                    row[i] = doc.id;
+                    break;
+                case Document.COLUMN_DISPLAY_NAME:
+                    row[i] = doc.name;
+                    break;
+                case Document.COLUMN_MIME_TYPE:
+                    row[i] = doc.mimeType;
+                    break;
+                case Document.COLUMN_SIZE:
+                    row[i] = doc.file != null ? doc.file.length() : null;
+                    break;
+                case Document.COLUMN_LAST_MODIFIED:
+                    row[i] = doc.lastModified;
+                    break;
+                case Document.COLUMN_FLAGS:
+                    row[i] = doc.flags();
+                    break;
+                default:
+                    row[i] = null;
+            }
+        }
+        cursor.addRow(row);
+    }
+
+    /**
+     * 文档
+     */
+    static final class Doc {
+        volatile String id;
+        volatile String name;
+        final String mimeType;
+        final File file;                                            // 目录为null
+        final Map<String, Doc> children = new LinkedHashMap<>();    // 访问时需对Doc加锁
+        volatile long lastModified = System.currentTimeMillis();
+
+        Doc(String id, String name, String mimeType, File file) {
+            this.id = id;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.file = file;
+        }
+
+        /**
+         * 更新修改时间，保证严格递增；与文件系统一样，目录只在直接子项新增、删除、重命名时更新
+         */
+        void touch() {
+            lastModified = Math.max(System.currentTimeMillis(), lastModified + 1);
+        }
+
+        synchronized List<Doc> childList() {
+            return new ArrayList<>(children.values());
+        }
+
+        int flags() {
+            int flags = Document.FLAG_SUPPORTS_DELETE | Document.FLAG_SUPPORTS_RENAME;
+            if (file == null) {
+                flags |= Document.FLAG_DIR_SUPPORTS_CREATE;
+            } else {
+                flags |= Document.FLAG_SUPPORTS_WRITE;
+            }
+            return flags;
+        }
+    }
+
+    /**
+     * 读出指定行数后再移动时抛出异常的游标
+     */
+    private static final class InterruptedCursor extends CursorWrapper {
+        private final int rows;
+        private final String documentId;
+
+        InterruptedCursor(Cursor cursor, int rows, String documentId) {
+            super(cursor);
+            this.rows = rows;
+            this.documentId = documentId;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            if (getPosition() + 1 >= rows) throw new IllegalStateException("Injected failure: listing " + documentId);
+            return super.moveToNext();
+        }
+    }
+}
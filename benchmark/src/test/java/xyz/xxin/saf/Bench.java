@@ -0,0 +1,130 @@
+package xyz.xxin.saf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 简单的微基准测试工具：先预热，再测量每次操作的耗时、吞吐量、内存分配量和ContentResolver查询次数
+ * <p>
+ * 测量结果追加到benchmark.outputDir/results.csv，若benchmark.baseline指向的基准文件存在，同时输出与基准的对比
+ */
+final class Bench {
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final String HEADER = "name,opsPerSecond,nanosPerOp,bytesPerOp,queriesPerOp";
+
+    private static Map<String, double[]> baseline;
+
+    interface Op {
+        void run() throws Exception;
+    }
+
+    private Bench() {
+    }
+
+    /**
+     * 默认测量次数，可通过-Pbenchmark.iterations修改
+     */
+    static int iterations() {
+        return Integer.getInteger("benchmark.iterations", 200);
+    }
+
+    /**
+     * 测量
+     *
+     * @param name       名称
+     * @param iterations 测量次数，预热次数为其一半
+     * @param metrics    用于统计查询次数，可为null
+     * @param op         被测操作
+     */
+    static Result run(String name, int iterations, SAFMetrics metrics, Op op) throws Exception {
+        for (int i = 0; i < Math.max(iterations / 2, 1); i++) {
+            op.run();
+        }
+        if (metrics != null) metrics.reset();
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        double nanosPerOp = (double) elapsed / iterations;
+        double queriesPerOp = metrics != null ? (double) metrics.snapshot().getQueryCount() / iterations : 0;
+        Result result = new Result(name, 1e9 / nanosPerOp, nanosPerOp, (double) allocated / iterations, queriesPerOp);
+        report(result);
+        return result;
+    }
+
+    private static synchronized void report(Result result) throws IOException {
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT,
+                "%-48s %14.1f ops/s %14.1f ns/op %12.1f B/op %8.2f queries/op",
+                result.name, result.opsPerSecond, result.nanosPerOp, result.bytesPerOp, result.queriesPerOp));
+
+        double[] base = loadBaseline().get(result.name);
+        if (base != null) {
+            line.append(String.format(Locale.ROOT, "   (baseline %.1f ns/op, %+.1f%%)",
+                    base[0], (result.nanosPerOp - base[0]) * 100 / base[0]));
+        }
+        System.out.println(line);
+
+        String outputDir = System.getProperty("benchmark.outputDir");
+        if (outputDir == null) return;
+        File output = new File(outputDir, "results.csv");
+        output.getParentFile().mkdirs();
+        boolean exists = output.exists();
+        try (PrintWriter writer = new PrintWriter(new FileWriter(output, true))) {
+            if (!exists) writer.println(HEADER);
+            writer.println(String.format(Locale.ROOT, "%s,%.1f,%.1f,%.1f,%.2f",
+                    result.name, result.opsPerSecond, result.nanosPerOp, result.bytesPerOp, result.queriesPerOp));
+        }
+    }
+
+    /**
+     * 读取基准文件，格式与results.csv相同，同名的多行以最后一行为准
+     */
+    private static Map<String, double[]> loadBaseline() throws IOException {
+        if (baseline != null) return baseline;
+        baseline = new HashMap<>();
+
+        String path = System.getProperty("benchmark.baseline");
+        if (path == null || !new File(path).exists()) return baseline;
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",");
+                if (columns.length < 4 || HEADER.startsWith(columns[0])) continue;
+                baseline.put(columns[0], new double[]{Double.parseDouble(columns[2]), Double.parseDouble(columns[3])});
+            }
+        }
+        return baseline;
+    }
+
+    static final class Result {
+        final String name;
+        final double opsPerSecond;
+        final double nanosPerOp;
+        final double bytesPerOp;
+        final double queriesPerOp;
+
+        Result(String name, double opsPerSecond, double nanosPerOp, double bytesPerOp, double queriesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.queriesPerOp = queriesPerOp;
+        }
+    }
+}
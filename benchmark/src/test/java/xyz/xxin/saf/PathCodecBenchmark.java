@@ -0,0 +1,104 @@
+package xyz.xxin.saf;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * PathCodec与原先基于String.replaceAll实现的对比基准测试，编码结果的正确性见SAF模块的PathCodecTest
+ * <p>
+ * 运行：./gradlew :benchmark:testDebugUnitTest --tests xyz.xxin.saf.PathCodecBenchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PathCodecBenchmark {
+    private static final String PRIMARY_STORAGE = "/storage/emulated/0";
+    private static final String PATH = PRIMARY_STORAGE + "/Android/data/xyz.xxin.benchmark/level0/level1/level2/file.txt";
+
+    private final PathCodec codec = new PathCodec(PRIMARY_STORAGE);
+
+    private long sink;      // 防止被测操作的结果被优化掉
+
+    @Test
+    public void pathToUri() throws Exception {
+        Bench.run("codec.pathToUri", Bench.iterations() * 100, null, new Bench.Op() {
+            @Override
+            public void run() {
+                sink += codec.pathToUri(PATH).length();
+            }
+        });
+    }
+
+    @Test
+    public void pathToUriReplaceAll() throws Exception {
+        Bench.run("codec.pathToUri.replaceAll", Bench.iterations() * 100, null, new Bench.Op() {
+            @Override
+            public void run() {
+                sink += legacyPathToUri(PATH).length();
+            }
+        });
+    }
+
+    @Test
+    public void uriToPath() throws Exception {
+        final String uri = codec.pathToUri(PATH);
+        Bench.run("codec.uriToPath", Bench.iterations() * 100, null, new Bench.Op() {
+            @Override
+            public void run() {
+                sink += codec.uriToPath(uri).length();
+            }
+        });
+    }
+
+    @Test
+    public void uriToPathReplaceAll() throws Exception {
+        final String uri = codec.pathToUri(PATH);
+        Bench.run("codec.uriToPath.replaceAll", Bench.iterations() * 100, null, new Bench.Op() {
+            @Override
+            public void run() {
+                sink += legacyUriToPath(uri).length();
+            }
+        });
+    }
+
+    /**
+     * 原先的实现，作为对比基准
+     */
+    private static String legacyPathToUri(String path) {
+        if (!path.startsWith("/")) path = "/" + path;
+        if (!path.endsWith("/")) path = path + "/";
+
+        String pathHead = PRIMARY_STORAGE.substring(0, PRIMARY_STORAGE.indexOf("/", 1) + 1);
+        if (!path.startsWith(pathHead)) return null;
+        String pathContent = path.substring(pathHead.length());
+        String primaryPath = PRIMARY_STORAGE.substring(pathHead.length());
+        if (pathContent.startsWith(primaryPath))
+            pathContent = "primary" + pathContent.substring(primaryPath.length());
+        String rootPathName = pathContent.substring(0, pathContent.indexOf("/"));
+        pathContent = pathContent.substring(rootPathName.length() + 1);
+        if (pathContent.endsWith("/"))
+            pathContent = pathContent.substring(0, pathContent.length() - 1);
+        pathContent = pathContent.replaceAll("/", "%2F");
+        return PathCodec.URI_HEAD + rootPathName + "%3A" + pathContent;
+    }
+
+    /**
+     * 原先的实现，作为对比基准
+     */
+    private static String legacyUriToPath(String uriStr) {
+        String colon = "%3A";
+        String slash = "%2F";
+        String dirBranch = uriStr.substring(PathCodec.URI_HEAD.length(), uriStr.indexOf(colon));
+        String branchPath;
+        String dirBranchHead = "/document/" + dirBranch + colon;
+        if (uriStr.contains(dirBranchHead)) {
+            branchPath = uriStr.substring(uriStr.indexOf(dirBranchHead) + dirBranchHead.length()).replaceAll(slash, "/");
+        } else {
+            branchPath = uriStr.substring(uriStr.indexOf(colon) + colon.length()).replaceAll(slash, "/");
+        }
+        if (dirBranch.equals("primary"))
+            dirBranch = "emulated/0";
+        return "/storage/" + dirBranch + "/" + branchPath;
+    }
+}
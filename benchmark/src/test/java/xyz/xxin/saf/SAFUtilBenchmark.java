@@ -0,0 +1,380 @@
+package xyz.xxin.saf;
+
+import android.content.Context;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SAFUtil热点路径的基准测试
+ * <p>
+ * 运行：./gradlew :benchmark:testDebugUnitTest --tests xyz.xxin.saf.SAFUtilBenchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SAFUtilBenchmark {
+    private static final String PERMISSION_DIR = "Android/data/xyz.xxin.benchmark";
+    private static final int DEPTH = 5;                     // 逐级解析的层级数
+    private static final int SIBLINGS = 100;                // 每一级的兄弟目录数
+    private static final int LIST_SIZE = 1000;              // 列出目录时的文件数
+    private static final int COPY_SIZE = 8 * 1024 * 1024;   // 复制的文件大小
+    private static final int FOOTER_SIZE = 64 * 1024;       // 随机读取的文件末尾大小
+    private static final int WALK_DIRS = 10;                // 遍历的目录树每层的目录数
+    private static final int WALK_FILES = 10;               // 遍历的目录树每个叶子目录的文件数
+    private static final long WALK_LATENCY_NANOS = 200_000; // 遍历时每次列出目录的模拟延迟
+
+    private Context context;
+    private FakeDocumentsProvider provider;
+    private SAFMetrics metrics;
+    private SAFUtil safUtil;
+    private String rootPath;
+
+    private long sink;      // 防止被测操作的结果被优化掉
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        provider = FakeDocumentsProvider.install(context);
+        provider.mkdirs(PERMISSION_DIR);
+
+        rootPath = SAFUtil.PRIMARY_STORAGE + "/" + PERMISSION_DIR;
+        safUtil = SAFUtil.create(context, rootPath);
+        safUtil.clearCache();
+        metrics = new SAFMetrics();
+        safUtil.setMetrics(metrics);
+    }
+
+    @Test
+    public void pathToUri() throws Exception {
+        final String path = rootPath + "/level0/level1/level2/file.txt";
+        Bench.run("pathToUri", Bench.iterations() * 100, null, new Bench.Op() {
+            @Override
+            public void run() {
+                sink += safUtil.pathToUri(path).length();
+            }
+        });
+    }
+
+    @Test
+    public void uriToPath() throws Exception {
+        final String uri = safUtil.pathToUri(rootPath + "/level0/level1/level2/file.txt");
+        Bench.run("uriToPath", Bench.iterations() * 100, null, new Bench.Op() {
+            @Override
+            public void run() {
+                sink += safUtil.uriToPath(uri).length();
+            }
+        });
+    }
+
+    @Test
+    public void getDocumentFileScan() throws Exception {
+        final String path = buildDeepTree();
+        safUtil.setDirectLookup(false);
+        Bench.run("getDocumentFile.scan", Bench.iterations() / 10, metrics, new Bench.Op() {
+            @Override
+            public void run() {
+                safUtil.clearCache();
+                assertNotNull(safUtil.getDocumentFile(path, true));
+            }
+        });
+    }
+
+    @Test
+    public void getDocumentFileDirect() throws Exception {
+        final String path = buildDeepTree();
+        safUtil.setDirectLookup(true);
+        Bench.run("getDocumentFile.direct", Bench.iterations(), metrics, new Bench.Op() {
+            @Override
+            public void run() {
+                safUtil.clearCache();
+                assertNotNull(safUtil.getDocumentFile(path, true));
+            }
+        });
+    }
+
+    @Test
+    public void getDocumentFileCached() throws Exception {
+        final String path = buildDeepTree();
+        safUtil.getDocumentFile(path, true);
+        Bench.run("getDocumentFile.cached", Bench.iterations() * 100, metrics, new Bench.Op() {
+            @Override
+            public void run() {
+                assertNotNull(safUtil.getDocumentFile(path, true));
+            }
+        });
+    }
+
+    @Test
+    public void listFiles() throws Exception {
+        final DocumentFile dir = buildLargeDir();
+        Bench.run("listFiles+getName+length", Math.max(Bench.iterations() / 100, 1), null, new Bench.Op() {
+            @Override
+            public void run() {
+                DocumentFile[] files = dir.listFiles();
+                assertEquals(LIST_SIZE, files.length);
+                for (DocumentFile file : files) {
+                    sink += file.getName().length() + file.length();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void list() throws Exception {
+        final DocumentFile dir = buildLargeDir();
+        Bench.run("list", Bench.iterations() / 10, metrics, new Bench.Op() {
+            @Override
+            public void run() {
+                List<DocumentEntry> entries = safUtil.list(dir);
+                assertEquals(LIST_SIZE, entries.size());
+                for (DocumentEntry entry : entries) {
+                    sink += entry.getName().length() + entry.length();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void copyLoop() throws Exception {
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[COPY_SIZE]);
+        final OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+                sink += b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                sink += len;
+            }
+        };
+        Bench.run("copy.stream.8MiB", Bench.iterations() / 10, null, new Bench.Op() {
+            @Override
+            public void run() throws IOException {
+                inputStream.reset();
+                safUtil.copy(inputStream, discard);
+            }
+        });
+    }
+
+    @Test
+    public void copyFile() throws Exception {
+        final File source = File.createTempFile("benchmark", null);
+        source.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(source)) {
+            outputStream.write(new byte[COPY_SIZE]);
+        }
+        final DocumentFile target = safUtil.createFile(rootPath + "/copy.bin");
+        Bench.run("copyFile.File->DocumentFile.8MiB", Bench.iterations() / 10, null, new Bench.Op() {
+            @Override
+            public void run() {
+                assertNotNull(safUtil.copyFile(source, target));
+            }
+        });
+    }
+
+    @Test
+    public void copyFileChunked() throws Exception {
+        final File source = File.createTempFile("benchmark", null);
+        source.deleteOnExit();
+        byte[] content = new byte[COPY_SIZE];
+        new Random(1).nextBytes(content);
+        try (FileOutputStream outputStream = new FileOutputStream(source)) {
+            outputStream.write(content);
+        }
+        final DocumentFile target = safUtil.createFile(rootPath + "/copy.bin");
+        safUtil.setChunkedCopy(1024 * 1024, 4);
+        Bench.run("copyFile.File->DocumentFile.chunked.8MiB", Bench.iterations() / 10, null, new Bench.Op() {
+            @Override
+            public void run() {
+                assertEquals(CopyMode.CHUNKED, safUtil.copyFile(source, target));
+            }
+        });
+
+        // 校验内容
+        byte[] copied = new byte[COPY_SIZE];
+        try (InputStream inputStream = safUtil.getInputStream(target)) {
+            int offset = 0;
+            int len;
+            while (offset < copied.length && (len = inputStream.read(copied, offset, copied.length - offset)) != -1) {
+                offset += len;
+            }
+            assertEquals(-1, inputStream.read());
+        }
+        assertArrayEquals(content, copied);
+    }
+
+    @Test
+    public void readFooterRandomAccess() throws Exception {
+        final DocumentFile file = buildLargeFile();
+        final ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        Bench.run("readFooter.randomAccess.8MiB", Bench.iterations() / 10, null, new Bench.Op() {
+            @Override
+            public void run() throws IOException {
+                try (RandomAccessDocument document = safUtil.openRandomAccess(file)) {
+                    assertTrue(document.isSeekable());
+                    footer.clear();
+                    document.readFully(document.size() - FOOTER_SIZE, footer);
+                    sink += footer.get(0);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void readFooterStream() throws Exception {
+        final DocumentFile file = buildLargeFile();
+        final byte[] buffer = new byte[FOOTER_SIZE];
+        Bench.run("readFooter.stream.8MiB", Bench.iterations() / 10, null, new Bench.Op() {
+            @Override
+            public void run() throws IOException {
+                try (InputStream inputStream = safUtil.getInputStream(file)) {
+                    int len;
+                    while ((len = inputStream.read(buffer)) != -1) {
+                        sink += len;
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void walkTreeSerial() throws Exception {
+        walkTree("walk.serial", 1);
+    }
+
+    @Test
+    public void walkTreeParallel() throws Exception {
+        walkTree("walk.parallel", 4);
+    }
+
+    private void walkTree(String name, int threads) throws Exception {
+        final String treePath = buildWideTree();
+        final TreeWalker walker = safUtil.treeWalker(treePath).setThreads(threads).setMaxQueries(threads);
+        final int[] files = new int[1];
+        final TreeVisitor visitor = new TreeVisitor() {
+            @Override
+            public VisitResult preVisitDirectory(String path, DocumentEntry dir) {
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult visitFile(String path, DocumentEntry file) {
+                files[0]++;
+                return VisitResult.CONTINUE;
+            }
+
+            @Override
+            public VisitResult postVisitDirectory(String path, DocumentEntry dir, IOException error) {
+                return VisitResult.CONTINUE;
+            }
+        };
+        // 模拟每次列出目录的跨进程开销
+        provider.setLatency(FakeDocumentsProvider.Operation.QUERY_CHILDREN, WALK_LATENCY_NANOS);
+        Bench.run(name, Bench.iterations() / 10, metrics, new Bench.Op() {
+            @Override
+            public void run() {
+                files[0] = 0;
+                assertTrue(walker.walk(visitor, null));
+                assertEquals(WALK_DIRS * WALK_DIRS * WALK_FILES, files[0]);
+            }
+        });
+    }
+
+    @Test
+    public void diskUsageRefresh() throws Exception {
+        diskUsage("diskUsage.refresh", true);
+    }
+
+    @Test
+    public void diskUsageCached() throws Exception {
+        diskUsage("diskUsage.cached", false);
+    }
+
+    private void diskUsage(String name, final boolean refresh) throws Exception {
+        final String treePath = buildWideTree();
+        safUtil.clearUsageCache();
+        safUtil.diskUsage(treePath);
+        // 模拟每次查询的跨进程开销
+        provider.setLatency(FakeDocumentsProvider.Operation.QUERY_CHILDREN, WALK_LATENCY_NANOS);
+        provider.setLatency(FakeDocumentsProvider.Operation.QUERY_DOCUMENT, WALK_LATENCY_NANOS);
+        Bench.run(name, Bench.iterations() / 10, metrics, new Bench.Op() {
+            @Override
+            public void run() {
+                DiskUsage usage = safUtil.diskUsage(treePath, refresh);
+                assertEquals(WALK_DIRS * WALK_DIRS * WALK_FILES, usage.getFileCount());
+            }
+        });
+    }
+
+    /**
+     * 创建DEPTH层目录，每一层有SIBLINGS个兄弟目录，返回最深处的文件路径
+     */
+    private String buildDeepTree() throws IOException {
+        StringBuilder path = new StringBuilder(PERMISSION_DIR);
+        for (int level = 0; level < DEPTH; level++) {
+            for (int i = 0; i < SIBLINGS; i++) {
+                provider.mkdirs(path + "/dir" + i);
+            }
+            // 目标目录排在兄弟目录的最后，模拟最坏情况
+            path.append("/level").append(level);
+            provider.mkdirs(path.toString());
+        }
+        path.append("/file.txt");
+        provider.writeFile(path.toString(), new byte[16]);
+        return SAFUtil.PRIMARY_STORAGE + "/" + path;
+    }
+
+    /**
+     * 创建两层、每层WALK_DIRS个目录的目录树，每个叶子目录有WALK_FILES个文件，返回目录树的路径
+     */
+    private String buildWideTree() throws IOException {
+        for (int i = 0; i < WALK_DIRS; i++) {
+            for (int j = 0; j < WALK_DIRS; j++) {
+                for (int k = 0; k < WALK_FILES; k++) {
+                    provider.writeFile(PERMISSION_DIR + "/wide/dir" + i + "/dir" + j + "/file" + k, new byte[k]);
+                }
+            }
+        }
+        return rootPath + "/wide";
+    }
+
+    /**
+     * 创建COPY_SIZE大小的文件
+     */
+    private DocumentFile buildLargeFile() throws IOException {
+        provider.writeFile(PERMISSION_DIR + "/large.bin", new byte[COPY_SIZE]);
+        return safUtil.getDocumentFile(rootPath + "/large.bin", true);
+    }
+
+    /**
+     * 创建包含LIST_SIZE个文件的目录
+     */
+    private DocumentFile buildLargeDir() throws IOException {
+        for (int i = 0; i < LIST_SIZE; i++) {
+            provider.writeFile(PERMISSION_DIR + "/large/file" + i + ".bin", new byte[i % 64]);
+        }
+        return safUtil.getDocumentFile(rootPath + "/large", false);
+    }
+}